@@ -0,0 +1,302 @@
+package Parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import SnomedQuery.Collections.LongIntHashMap;
+import SnomedQuery.Collections.LongObjectHashMap;
+import SnomedQuery.Model.ModelReader;
+import SnomedQuery.Model.ModelWriter;
+import SnomedQuery.Model.SnomedModelManager;
+
+/**
+ * <p>
+ * Ids of the descriptions each concept of the serialized model was built
+ * from. The model itself only keeps terms, so a delta update needs these to
+ * find the term a changed description replaces. Per concept, [0] is the id
+ * of the fully specified name (-1 if none) and the rest are the synonym ids
+ * in the order of the concept's synonyms. The position in those ids of the
+ * concept's preferred term is kept as well, for concepts that have one.
+ * The map also records which concepts have a fully specified name that is
+ * not english, and the ids of the inactive concepts of the release, which
+ * are not in the model.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+public class DescriptionIdMap {
+	/**
+	 * <p>
+	 * Name of the file the map is serialized to.
+	 * </p>
+	 */
+	public static final String fileName = "SnomedQueryConcepts.DescriptionIds.ser";
+
+	/**
+	 * <p>
+	 * Description ids of each concept.
+	 * </p>
+	 */
+	private final LongObjectHashMap<long[]> descriptionIds = new LongObjectHashMap<long[]>();
+
+	/**
+	 * <p>
+	 * Position in the description ids of the preferred synonym of each
+	 * concept that has one.
+	 * </p>
+	 */
+	private final LongIntHashMap preferred = new LongIntHashMap();
+
+	/**
+	 * <p>
+	 * Ids of the concepts whose fully specified name is not english, as
+	 * keys.
+	 * </p>
+	 */
+	private final LongIntHashMap nonEnglishNames = new LongIntHashMap();
+
+	/**
+	 * <p>
+	 * Ids of the inactive concepts, as keys.
+	 * </p>
+	 */
+	private final LongIntHashMap inactive = new LongIntHashMap();
+
+	/**
+	 * <p>
+	 * Constructor.
+	 * </p>
+	 */
+	public DescriptionIdMap() {
+	}
+
+	/**
+	 * <p>
+	 * Return description ids of concept, or null if there are none.
+	 * </p>
+	 *
+	 * @param conceptId
+	 * @return
+	 */
+	public final long[] get(long conceptId) {
+		return this.descriptionIds.get(conceptId);
+	}
+
+	/**
+	 * <p>
+	 * Set description ids of concept.
+	 * </p>
+	 *
+	 * @param conceptId
+	 * @param ids
+	 *            Fully specified name id followed by synonym ids.
+	 */
+	public final void put(long conceptId, long[] ids) {
+		this.descriptionIds.put(conceptId, ids);
+	}
+
+	/**
+	 * <p>
+	 * Remove description ids of concept.
+	 * </p>
+	 *
+	 * @param conceptId
+	 */
+	public final void remove(long conceptId) {
+		this.descriptionIds.remove(conceptId);
+		this.preferred.remove(conceptId);
+		this.nonEnglishNames.remove(conceptId);
+	}
+
+	/**
+	 * <p>
+	 * Return the ids of all concepts in the map.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public final long[] getConceptIds() {
+		return this.descriptionIds.keys();
+	}
+
+	/**
+	 * <p>
+	 * Return the position in the description ids of the concept's preferred
+	 * synonym, or -1 if it has none.
+	 * </p>
+	 *
+	 * @param conceptId
+	 * @return
+	 */
+	public final int getPreferred(long conceptId) {
+		return this.preferred.get(conceptId, -1);
+	}
+
+	/**
+	 * <p>
+	 * Set the position in the description ids of the concept's preferred
+	 * synonym, -1 for none.
+	 * </p>
+	 *
+	 * @param conceptId
+	 * @param index
+	 */
+	public final void setPreferred(long conceptId, int index) {
+		if (index < 0) {
+			this.preferred.remove(conceptId);
+		} else {
+			this.preferred.put(conceptId, index);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Return true if the fully specified name of the concept is english, or
+	 * the concept has none.
+	 * </p>
+	 *
+	 * @param conceptId
+	 * @return
+	 */
+	public final boolean isEnglishName(long conceptId) {
+		return !this.nonEnglishNames.containsKey(conceptId);
+	}
+
+	/**
+	 * <p>
+	 * Set whether the fully specified name of the concept is english.
+	 * </p>
+	 *
+	 * @param conceptId
+	 * @param english
+	 */
+	public final void setEnglishName(long conceptId, boolean english) {
+		if (english) {
+			this.nonEnglishNames.remove(conceptId);
+		} else {
+			this.nonEnglishNames.put(conceptId, 0);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Return true if the concept is inactive in the release the model was
+	 * built from.
+	 * </p>
+	 *
+	 * @param conceptId
+	 * @return
+	 */
+	public final boolean isInactive(long conceptId) {
+		return this.inactive.containsKey(conceptId);
+	}
+
+	/**
+	 * <p>
+	 * Record that the concept is inactive.
+	 * </p>
+	 *
+	 * @param conceptId
+	 */
+	public final void addInactive(long conceptId) {
+		this.inactive.put(conceptId, 0);
+	}
+
+	/**
+	 * <p>
+	 * Write the map to <i>path</i>, after the model file header. The map is
+	 * written to a temporary file that is renamed into place, so that a
+	 * failed write leaves no truncated map behind.
+	 * </p>
+	 *
+	 * @param path
+	 */
+	public final void write(String path) {
+		String temporaryPath = path + ".tmp";
+		try {
+			try (ModelWriter output = new ModelWriter(temporaryPath,
+					SnomedModelManager.formatVersion)) {
+				long[] conceptIds = this.descriptionIds.keys();
+				output.putInt(conceptIds.length);
+				for (long conceptId : conceptIds) {
+					long[] ids = this.descriptionIds.get(conceptId);
+					output.putLong(conceptId);
+					output.putInt(ids.length);
+					for (long id : ids) {
+						output.putLong(id);
+					}
+				}
+				long[] preferredIds = this.preferred.keys();
+				output.putInt(preferredIds.length);
+				for (long conceptId : preferredIds) {
+					output.putLong(conceptId);
+					output.putInt(this.preferred.get(conceptId, -1));
+				}
+				for (LongIntHashMap conceptIdSet : new LongIntHashMap[]{
+						this.nonEnglishNames, this.inactive}) {
+					long[] keys = conceptIdSet.keys();
+					output.putInt(keys.length);
+					for (long conceptId : keys) {
+						output.putLong(conceptId);
+					}
+				}
+			}
+			Files.move(Paths.get(temporaryPath), Paths.get(path),
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			throw new RuntimeException(String.format(
+					"Unable to write description ids to %1$s", path), e);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Read map written by <i>write</i> from <i>path</i>. Files without the
+	 * model file header, or of another format version, are rejected.
+	 * </p>
+	 *
+	 * @param path
+	 * @return
+	 */
+	public static DescriptionIdMap read(String path) {
+		DescriptionIdMap retVal = new DescriptionIdMap();
+		try {
+			ByteBuffer buffer = ModelReader.readFile(path);
+			if (ModelReader.readFormatVersion(buffer,
+					path) != SnomedModelManager.formatVersion) {
+				throw new IOException("No model file header");
+			}
+			ModelReader reader = new ModelReader(buffer);
+			int conceptCount = reader.getInt();
+			for (int i = 0; i < conceptCount; i++) {
+				long conceptId = reader.getLong();
+				long[] ids = new long[reader.getInt()];
+				for (int j = 0; j < ids.length; j++) {
+					ids[j] = reader.getLong();
+				}
+				retVal.descriptionIds.put(conceptId, ids);
+			}
+			int preferredCount = reader.getInt();
+			for (int i = 0; i < preferredCount; i++) {
+				long conceptId = reader.getLong();
+				retVal.preferred.put(conceptId, reader.getInt());
+			}
+			for (LongIntHashMap conceptIdSet : new LongIntHashMap[]{
+					retVal.nonEnglishNames, retVal.inactive}) {
+				int count = reader.getInt();
+				for (int i = 0; i < count; i++) {
+					conceptIdSet.put(reader.getLong(), 0);
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			// Also a file of another format version.
+			throw new RuntimeException(String.format(
+					"Unable to read description ids from %1$s, re-run the full parse",
+					path), e);
+		}
+		return retVal;
+	}
+}
@@ -22,10 +22,11 @@ public class FileReader {
 
 	/**
 	 * <p>
-	 * accessable Scanner Object.
+	 * accessable Scanner Object. Each FileReader has its own Scanner so that
+	 * several files can be read at the same time.
 	 * </p>
 	 */
-	private static Scanner reader;
+	private Scanner reader;
 
 	/**
 	 * <p>
@@ -68,7 +69,7 @@ public class FileReader {
 	 * Closes the file.
 	 * </p>
 	 */
-	public static void closeFile() {
+	public final void closeFile() {
 		if (reader == null) {
 			return;
 		}
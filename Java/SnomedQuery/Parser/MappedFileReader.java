@@ -0,0 +1,299 @@
+package Parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <p>
+ * Reads RF2 files by memory mapping them and tokenizing each line directly
+ * from the mapped bytes. Files larger than the mapping window are mapped one
+ * window at a time, each window starting at a line boundary.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+public class MappedFileReader extends RF2LineReader {
+	/**
+	 * <p>
+	 * Default size in bytes of each mapped window of the file.
+	 * </p>
+	 */
+	public static final int defaultWindowSize = 256 * 1024 * 1024;
+
+	/**
+	 * <p>
+	 * Size in bytes of each mapped window of the file.
+	 * </p>
+	 */
+	private final int windowSize;
+
+	/**
+	 * <p>
+	 * Channel of the open file.
+	 * </p>
+	 */
+	private FileChannel channel;
+
+	/**
+	 * <p>
+	 * Position in the file at which reading stops.
+	 * </p>
+	 */
+	private long end;
+
+	/**
+	 * <p>
+	 * Position in the file of the first byte of the mapped window.
+	 * </p>
+	 */
+	private long windowStart;
+
+	/**
+	 * <p>
+	 * Offset into the mapped window of the start of the next line.
+	 * </p>
+	 */
+	private int position;
+
+	/**
+	 * <p>
+	 * Constructor.
+	 * </p>
+	 */
+	public MappedFileReader() {
+		this(defaultWindowSize);
+	}
+
+	/**
+	 * <p>
+	 * Constructor.
+	 * </p>
+	 *
+	 * @param windowSize
+	 *            Size in bytes of each mapped window of the file.
+	 */
+	public MappedFileReader(int windowSize) {
+		this.windowSize = windowSize;
+	}
+
+	/**
+	 * <p>
+	 * Opens target file.
+	 * </p>
+	 *
+	 * @param path
+	 * @return
+	 */
+	public final boolean openFile(final String path) {
+		return this.openFile(path, 0, -1);
+	}
+
+	/**
+	 * <p>
+	 * Opens the range of the target file from <i>start</i> (inclusive) to
+	 * <i>end</i> (exclusive). Both positions must be at line boundaries. An
+	 * end of -1 reads to the end of the file.
+	 * </p>
+	 *
+	 * @param path
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	public final boolean openFile(final String path, long start, long end) {
+		try {
+			this.channel = FileChannel.open(Paths.get(path),
+					StandardOpenOption.READ);
+			this.end = (end < 0) ? this.channel.size() : end;
+			this.map(start);
+			if (start == 0) {
+				this.skipByteOrderMark();
+			}
+			return true;
+		} catch (IOException e) {
+			this.closeFile();
+			return false;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Gets the position in the file of the start of the next line.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public final long getPosition() {
+		return this.windowStart + this.position;
+	}
+
+	/**
+	 * <p>
+	 * Split the target file from <i>start</i> to its end into at most
+	 * <i>count</i> ranges of about equal size. Each range boundary is
+	 * moved forward to the start of the next line.
+	 * </p>
+	 *
+	 * @param path
+	 * @param start
+	 * @param count
+	 * @return Range boundaries, range i runs from [i] to [i + 1].
+	 */
+	public static long[] splitLines(final String path, long start,
+			int count) {
+		try (FileChannel channel = FileChannel.open(Paths.get(path),
+				StandardOpenOption.READ)) {
+			long size = channel.size();
+			long[] bounds = new long[count + 1];
+			int boundCount = 0;
+			bounds[boundCount++] = start;
+			ByteBuffer block = ByteBuffer.allocate(64 * 1024);
+			for (int i = 1; i < count; i++) {
+				long position = Math.max(start + ((size - start) * i) / count,
+						bounds[boundCount - 1]);
+				position = nextLineStart(channel, block, position, size);
+				if (position > bounds[boundCount - 1] && position < size) {
+					bounds[boundCount++] = position;
+				}
+			}
+			bounds[boundCount++] = size;
+			long[] retVal = new long[boundCount];
+			System.arraycopy(bounds, 0, retVal, 0, boundCount);
+			return retVal;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Return position of the first line starting at or after
+	 * <i>position</i>.
+	 * </p>
+	 *
+	 * @param channel
+	 * @param block
+	 * @param position
+	 * @param size
+	 * @return
+	 * @throws IOException
+	 */
+	private static long nextLineStart(FileChannel channel, ByteBuffer block,
+			long position, long size) throws IOException {
+		if (position == 0) {
+			return 0;
+		}
+		// Start one byte back, so a position right after a line end is kept.
+		position -= 1;
+		while (position < size) {
+			block.clear();
+			int read = channel.read(block, position);
+			if (read <= 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				if (block.get(i) == newLine) {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+
+	/**
+	 * <p>
+	 * Map the window of the file starting at <i>start</i>.
+	 * </p>
+	 *
+	 * @param start
+	 * @throws IOException
+	 */
+	private void map(long start) throws IOException {
+		long size = Math.min(this.windowSize, this.end - start);
+		MappedByteBuffer mapped = this.channel
+				.map(FileChannel.MapMode.READ_ONLY, start, size);
+		this.buffer = mapped;
+		this.windowStart = start;
+		this.position = 0;
+	}
+
+	/**
+	 * <p>
+	 * Skip the UTF-8 byte order mark if the file starts with one.
+	 * </p>
+	 */
+	private void skipByteOrderMark() {
+		if ((this.buffer.limit() >= 3) && (this.buffer.get(0) == (byte) 0xEF)
+				&& (this.buffer.get(1) == (byte) 0xBB)
+				&& (this.buffer.get(2) == (byte) 0xBF)) {
+			this.position = 3;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Advances to the next line of the file and tokenizes it.
+	 * </p>
+	 *
+	 * @return false if there are no more lines.
+	 */
+	@Override
+	public final boolean readLine() {
+		if (this.channel == null) {
+			return false;
+		}
+		while (true) {
+			int limit = this.buffer.limit();
+			for (int i = this.position; i < limit; i++) {
+				if (this.buffer.get(i) == newLine) {
+					this.tokenize(this.position, i);
+					this.position = i + 1;
+					return true;
+				}
+			}
+
+			// No line end in the rest of the window.
+			if (this.windowStart + limit >= this.end) {
+				if (this.position >= limit) {
+					return false;
+				}
+				this.tokenize(this.position, limit);
+				this.position = limit;
+				return true;
+			}
+			if (this.position == 0) {
+				throw new RuntimeException(
+						"RF2 line is longer than the mapping window");
+			}
+			try {
+				this.map(this.windowStart + this.position);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Closes the file.
+	 * </p>
+	 */
+	@Override
+	public final void closeFile() {
+		this.buffer = null;
+		if (this.channel == null) {
+			return;
+		}
+		try {
+			this.channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		this.channel = null;
+	}
+}
@@ -7,12 +7,21 @@ package Parser;
 public class Program {
 	/**
 	 * <p>
-	 * Main method of program.
+	 * Main method of program. With arguments "-delta &lt;dir&gt;" the Delta
+	 * files in dir are applied to the serialized model instead of parsing
+	 * the Full release. With argument "-force" the Full release is parsed
+	 * even if the serialized model was parsed from the same files.
 	 * </p>
 	 * @param args
 	 */
 	public static void main(final String[] args) {
+		if ((args.length == 2) && args[0].equals("-delta")) {
+			SnomedDeltaParser dp = new SnomedDeltaParser(FileReader
+					.comboPaths(new String[]{"..", "..", "Data"}));
+			dp.applyDeltaDirectory(args[1]);
+			return;
+		}
 		SnomedParser sp = new SnomedParser();
-		sp.parseAndSerialize();
+		sp.parseAndSerialize((args.length == 1) && args[0].equals("-force"));
 	}
 }
\ No newline at end of file
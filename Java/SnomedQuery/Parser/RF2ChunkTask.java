@@ -0,0 +1,129 @@
+package Parser;
+
+import java.util.ArrayList;
+import java.util.concurrent.RecursiveTask;
+
+import SnomedQuery.Collections.LongIntHashMap;
+
+/**
+ * <p>
+ * Fork join task that parses one newline aligned byte range of an RF2 file.
+ * The items are returned in file order so that results of consecutive
+ * chunks can be merged as if the file had been read sequentially.
+ * </p>
+ *
+ * @author Travis Lukach
+ *
+ * @param <T>
+ */
+public class RF2ChunkTask<T extends RF2ItemSingle>
+		extends RecursiveTask<ArrayList<T>> {
+	/**
+	 * <p>
+	 * Serialization version.
+	 * </p>
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * <p>
+	 * Parser that the items are created for.
+	 * </p>
+	 */
+	private final RF2Parser parser;
+
+	/**
+	 * <p>
+	 * Path of the RF2 file.
+	 * </p>
+	 */
+	private final String path;
+
+	/**
+	 * <p>
+	 * Start of the range in the file (inclusive).
+	 * </p>
+	 */
+	private final long start;
+
+	/**
+	 * <p>
+	 * End of the range in the file (exclusive).
+	 * </p>
+	 */
+	private final long end;
+
+	/**
+	 * <p>
+	 * Line parser for the RF2 file type.
+	 * </p>
+	 */
+	private final RF2LineParser<T> lineParser;
+
+	/**
+	 * <p>
+	 * Constructor.
+	 * </p>
+	 *
+	 * @param parser
+	 * @param path
+	 * @param start
+	 * @param end
+	 * @param lineParser
+	 */
+	public RF2ChunkTask(RF2Parser parser, String path, long start, long end,
+			RF2LineParser<T> lineParser) {
+		this.parser = parser;
+		this.path = path;
+		this.start = start;
+		this.end = end;
+		this.lineParser = lineParser;
+	}
+
+	/**
+	 * <p>
+	 * Parse all lines of the range.
+	 * </p>
+	 *
+	 * @return
+	 */
+	@Override
+	protected ArrayList<T> compute() {
+		ArrayList<T> items = new ArrayList<T>();
+		// When reducing to a snapshot, index of the row kept for each id.
+		LongIntHashMap latest = this.parser.isSnapshotReducing()
+				? new LongIntHashMap()
+				: null;
+		int currentDate = this.parser.getCurrentDate();
+		MappedFileReader reader = new MappedFileReader();
+		if (!reader.openFile(this.path, this.start, this.end)) {
+			throw new RuntimeException(
+					String.format("Unable to open rf2 file %1$s", this.path));
+		}
+		try {
+			while (reader.readLine()) {
+				T item = this.lineParser.parse(this.parser, reader);
+				if (item == null) {
+					continue;
+				}
+				if (latest == null) {
+					items.add(item);
+					continue;
+				}
+				int index = latest.get(item.getId(), -1);
+				T current = (index < 0) ? null : items.get(index);
+				if (TRF2ItemGroup.supersedes(item, current, currentDate)) {
+					if (index < 0) {
+						latest.put(item.getId(), items.size());
+						items.add(item);
+					} else {
+						items.set(index, item);
+					}
+				}
+			}
+		} finally {
+			reader.closeFile();
+		}
+		return items;
+	}
+}
@@ -49,18 +49,30 @@ public class RF2Concept extends RF2ItemSingle {
 	 * @return
 	 */
 	public static RF2Concept parse(RF2Parser parser, String line) {
-		String[] parts = line.split("[\\t]", -1);
-		if (parts.length != 5) {
+		return parse(parser, new StringLineReader(line));
+	}
+
+	/**
+	 * <p>
+	 * Parse the current line of a snomed concept rf2 file.
+	 * </p>
+	 * 
+	 * @param parser
+	 * @param reader
+	 * @return
+	 */
+	public static RF2Concept parse(RF2Parser parser, RF2LineReader reader) {
+		if (reader.getFieldCount() != 5) {
 			throw new RuntimeException("Invalid concept line");
 		}
 
 		RF2Concept tempVar = new RF2Concept();
 		tempVar.setParser(parser);
-		tempVar.setId(Long.parseLong(parts[0]));
-		tempVar.setEffectiveTime(parseEffectiveTime(parts[1]));
-		tempVar.setActive(parseBool(parts[2]));
-		tempVar.setModuleId(Long.parseLong(parts[3]));
-		tempVar.setDefinitionStatusId(Long.parseLong(parts[4]));
+		tempVar.setId(reader.getLong(0));
+		tempVar.setEffectiveTime(reader.getDate(1));
+		tempVar.setActive(reader.getBool(2));
+		tempVar.setModuleId(reader.getLong(3));
+		tempVar.setDefinitionStatusId(reader.getLong(4));
 		return tempVar;
 	}
 
@@ -2,6 +2,8 @@ package Parser;
 
 import java.util.ArrayList;
 
+import SnomedQuery.Collections.LongArrayList;
+
 /**
  * <p>
  * Group of concepts, all with same SNOMED id.
@@ -12,26 +14,28 @@ import java.util.ArrayList;
 public class RF2ConceptGroup extends TRF2ItemGroup<RF2Concept> {
 	/**
 	 * <p>
-	 * List of all snomed descriptions for this concept.
+	 * List of all snomed descriptions for this concept. May hold duplicates
+	 * until <i>finishDescriptions</i> is called.
 	 * </p>
 	 */
-	private ArrayList<Long> descriptionGroupIds = new ArrayList<Long>();
+	private LongArrayList descriptionGroupIds = new LongArrayList();
 
 	/**
 	 * <p>
 	 * List of all snomed attribute concepts in which this concept is the source
-	 * concept.
+	 * concept. May hold duplicates until <i>finishRelationships</i> is called.
 	 * </p>
 	 */
-	private ArrayList<Long> sourceRelationshipIds = new ArrayList<Long>();
+	private LongArrayList sourceRelationshipIds = new LongArrayList();
 
 	/**
 	 * <p>
 	 * List of all snomed attribute concepts in which this concept is the
-	 * destination concept.
+	 * destination concept. May hold duplicates until
+	 * <i>finishRelationships</i> is called.
 	 * </p>
 	 */
-	private ArrayList<Long> destinationRelationshipIds = new ArrayList<Long>();
+	private LongArrayList destinationRelationshipIds = new LongArrayList();
 
 	/**
 	 * <p>
@@ -125,17 +129,29 @@ public class RF2ConceptGroup extends TRF2ItemGroup<RF2Concept> {
 	public final RF2DescriptionGroup[] getDescriptionGroups() {
 		// # Tested.
 		if (this.descriptionGroups == null) {
-			RF2DescriptionGroup[] temp = new RF2DescriptionGroup[this.descriptionGroupIds
-					.size()];
-			for (int i = 0; i < this.descriptionGroupIds.size(); i++) {
-				temp[i] = this.getParser()
-						.getDescriptionGroup(this.descriptionGroupIds.get(i));
-			}
-			this.descriptionGroups = temp;
+			this.descriptionGroups = this.resolveDescriptionGroups();
 		}
 		return this.descriptionGroups;
 	}
 
+	/**
+	 * <p>
+	 * Look up the description group of each description id.
+	 * </p>
+	 * 
+	 * @return
+	 */
+	private RF2DescriptionGroup[] resolveDescriptionGroups() {
+		RF2Parser parser = this.getParser();
+		int count = this.descriptionGroupIds.size();
+		RF2DescriptionGroup[] retVal = new RF2DescriptionGroup[count];
+		for (int i = 0; i < count; i++) {
+			retVal[i] = parser
+					.getDescriptionGroup(this.descriptionGroupIds.get(i));
+		}
+		return retVal;
+	}
+
 	/**
 	 * <p>
 	 * Description groups
@@ -151,13 +167,8 @@ public class RF2ConceptGroup extends TRF2ItemGroup<RF2Concept> {
 	public final RF2RelationshipGroup[] getSourceRelationships() {
 		// # Not Tested.
 		if (this.sourceRelationshipGroups == null) {
-			RF2RelationshipGroup[] temp = new RF2RelationshipGroup[this.sourceRelationshipIds
-					.size()];
-			for (int i = 0; i < this.sourceRelationshipIds.size(); i++) {
-				temp[i] = this.getParser().getRelationshipGroup(
-						this.sourceRelationshipIds.get(i));
-			}
-			this.sourceRelationshipGroups = temp;
+			this.sourceRelationshipGroups = this
+					.resolveRelationshipGroups(this.sourceRelationshipIds);
 		}
 		return this.sourceRelationshipGroups;
 	}
@@ -179,17 +190,31 @@ public class RF2ConceptGroup extends TRF2ItemGroup<RF2Concept> {
 	public final RF2RelationshipGroup[] getDestinationRelationships() {
 		// # Tested.
 		if (this.destinationRelationshipGroups == null) {
-			RF2RelationshipGroup[] temp = new RF2RelationshipGroup[this.destinationRelationshipIds
-					.size()];
-			for (int i = 0; i < this.destinationRelationshipIds.size(); i++) {
-				temp[i] = this.getParser().getRelationshipGroup(
-						this.destinationRelationshipIds.get(i));
-			}
-			this.destinationRelationshipGroups = temp;
+			this.destinationRelationshipGroups = this
+					.resolveRelationshipGroups(this.destinationRelationshipIds);
 		}
 		return this.destinationRelationshipGroups;
 	}
 
+	/**
+	 * <p>
+	 * Look up the relationship group of each relationship id.
+	 * </p>
+	 * 
+	 * @param relationshipIds
+	 * @return
+	 */
+	private RF2RelationshipGroup[] resolveRelationshipGroups(
+			LongArrayList relationshipIds) {
+		RF2Parser parser = this.getParser();
+		int count = relationshipIds.size();
+		RF2RelationshipGroup[] retVal = new RF2RelationshipGroup[count];
+		for (int i = 0; i < count; i++) {
+			retVal[i] = parser.getRelationshipGroup(relationshipIds.get(i));
+		}
+		return retVal;
+	}
+
 	/**
 	 * <p>
 	 * Relationship groups in which this concept is the destination.
@@ -213,7 +238,7 @@ public class RF2ConceptGroup extends TRF2ItemGroup<RF2Concept> {
 	 * @param concept
 	 */
 	public final void addConcept(final RF2Concept concept) {
-		this.items.add(concept);
+		this.addItem(concept);
 	}
 
 	/**
@@ -225,9 +250,6 @@ public class RF2ConceptGroup extends TRF2ItemGroup<RF2Concept> {
 	 */
 	public final void addDescriptionGroup(
 			final RF2DescriptionGroup descriptionGroup) {
-		if (this.descriptionGroupIds.contains(descriptionGroup.getId()) == true) {
-			return;
-		}
 		this.descriptionGroupIds.add(descriptionGroup.getId());
 		// force lazy reloading of description groups id called.
 		this.descriptionGroups = null;
@@ -243,10 +265,19 @@ public class RF2ConceptGroup extends TRF2ItemGroup<RF2Concept> {
 	 */
 	public final void addSourceRelationship(
 			final RF2RelationshipGroup relationshipGroup) {
-		if (this.sourceRelationshipIds.contains(relationshipGroup.getId()) == true) {
-			return;
-		}
-		this.sourceRelationshipIds.add(relationshipGroup.getId());
+		this.addSourceRelationship(relationshipGroup.getId());
+	}
+
+	/**
+	 * <p>
+	 * Add a source relationship to concept group.
+	 * </p>
+	 * 
+	 * @param relationshipId
+	 *            Id of relationship in which this instance is the source
+	 */
+	public final void addSourceRelationship(final long relationshipId) {
+		this.sourceRelationshipIds.add(relationshipId);
 
 		// force lazy reloading of source relationship groups id called.
 		this.sourceRelationshipGroups = null;
@@ -260,31 +291,72 @@ public class RF2ConceptGroup extends TRF2ItemGroup<RF2Concept> {
 	 */
 	public final void addDestinationRelationship(
 			final RF2RelationshipGroup relationshipGroup) {
-		if (this.destinationRelationshipIds
-				.contains(relationshipGroup.getId()) == true) {
-			return;
-		}
-		this.destinationRelationshipIds.add(relationshipGroup.getId());
+		this.addDestinationRelationship(relationshipGroup.getId());
+	}
+
+	/**
+	 * Add a destination relationship to concept group.
+	 * 
+	 * @param relationshipId
+	 *            Id of relationship in which this instance is the destination
+	 */
+	public final void addDestinationRelationship(final long relationshipId) {
+		this.destinationRelationshipIds.add(relationshipId);
 
 		// force lazy reloading of source relationship groups id called.
 		this.destinationRelationshipGroups = null;
 	}
 
+	/**
+	 * <p>
+	 * Sort the description ids, drop duplicates and resolve the description
+	 * groups. Called once all descriptions have been added.
+	 * </p>
+	 */
+	final void finishDescriptions() {
+		this.descriptionGroupIds.sortUnique();
+		this.descriptionGroups = this.resolveDescriptionGroups();
+	}
+
+	/**
+	 * <p>
+	 * Sort the source and destination relationship ids and drop duplicates.
+	 * Called once all relationships have been added.
+	 * </p>
+	 */
+	final void finishRelationships() {
+		this.sourceRelationshipIds.sortUnique();
+		this.destinationRelationshipIds.sortUnique();
+		this.sourceRelationshipGroups = null;
+		this.destinationRelationshipGroups = null;
+	}
+
 	/**
 	 * Return Snomed fully qualified name.
 	 * 
 	 * @return
 	 */
 	public final String getFullySpecifiedName() {
-		String fsnAny = "";
+		RF2Description description = this.getFullySpecifiedNameDescription();
+		return (description == null) ? "" : description.getTerm();
+	}
+
+	/**
+	 * Return description holding the Snomed fully qualified name, preferring
+	 * english. Null if there is none.
+	 * 
+	 * @return
+	 */
+	public final RF2Description getFullySpecifiedNameDescription() {
+		RF2Description fsnAny = null;
 
 		for (RF2DescriptionGroup dg : this.getDescriptionGroups()) {
 			for (RF2Description description : dg.getItems()) {
 				if (description.getTypeId() == RF2Parser.fullySpecifiedNameConceptId) {
 					if (description.getLanguageCode().equals("en")) {
-						return description.getTerm();
+						return description;
 					}
-					fsnAny = description.getTerm();
+					fsnAny = description;
 				}
 			}
 		}
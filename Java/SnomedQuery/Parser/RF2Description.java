@@ -8,6 +8,13 @@ package Parser;
  * @author Travis Lukach
  */
 public class RF2Description extends RF2ItemSingle {
+	/**
+	 * <p>
+	 * Language code of english descriptions.
+	 * </p>
+	 */
+	public static final String englishLanguageCode = "en";
+
 	/**
 	 * <p>
 	 * Snomed concept id
@@ -191,22 +198,39 @@ public class RF2Description extends RF2ItemSingle {
 	 * @return
 	 */
 	public static RF2Description parse(RF2Parser parser, String line) {
-		String[] parts = line.split("[\\t]");
-		if (parts.length != 9) {
+		return parse(parser, new StringLineReader(line));
+	}
+
+	/**
+	 * <p>
+	 * Parse the current line of a description rf2 file into new
+	 * RF2Description and return it.
+	 * </p>
+	 * 
+	 * @param parser
+	 * @param reader
+	 * @return
+	 */
+	public static RF2Description parse(RF2Parser parser,
+			RF2LineReader reader) {
+		if (reader.getFieldCount() != 9) {
 			throw new RuntimeException("Invalid Description line");
 		}
 
 		RF2Description tempVar = new RF2Description();
 		tempVar.setParser(parser);
-		tempVar.setId(Long.parseLong(parts[0]));
-		tempVar.setEffectiveTime(parseEffectiveTime(parts[1]));
-		tempVar.setActive(parseBool(parts[2]));
-		tempVar.setModuleId(Long.parseLong(parts[3]));
-		tempVar.conceptId = Long.parseLong(parts[4]);
-		tempVar.setLanguageCode(parts[5]);
-		tempVar.setTypeId(Long.parseLong(parts[6]));
-		tempVar.setTerm(parts[7]);
-		tempVar.setCaseSignificanceId(Long.parseLong(parts[8]));
+		tempVar.setId(reader.getLong(0));
+		tempVar.setEffectiveTime(reader.getDate(1));
+		tempVar.setActive(reader.getBool(2));
+		tempVar.setModuleId(reader.getLong(3));
+		tempVar.conceptId = reader.getLong(4);
+		// Nearly every description is english, so skip the pool lookup.
+		tempVar.setLanguageCode(reader.fieldEquals(5, englishLanguageCode)
+				? englishLanguageCode
+				: reader.getField(5, parser.getStringPool()));
+		tempVar.setTypeId(reader.getLong(6));
+		tempVar.setTerm(reader.getField(7, parser.getStringPool()));
+		tempVar.setCaseSignificanceId(reader.getLong(8));
 		return tempVar;
 	}
 
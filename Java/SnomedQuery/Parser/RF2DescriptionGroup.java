@@ -24,7 +24,7 @@ public class RF2DescriptionGroup extends TRF2ItemGroup<RF2Description> {
 	 * @param description
 	 */
 	public final void addDescription(RF2Description description) {
-		this.items.add(description);
+		this.addItem(description);
 	}
 
 	/**
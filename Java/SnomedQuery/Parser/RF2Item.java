@@ -1,7 +1,5 @@
 package Parser;
 
-import org.joda.time.DateTime;
-
 /**
  * <p>
  * Base class for all RF2 items.
@@ -91,18 +89,18 @@ public class RF2Item {
 
 	/**
 	 * <p>
-	 * Parse effective time into c# date time instance.
+	 * Parse effective time (YYYYMMDD) into a packed yyyymmdd int.
 	 * </p>
 	 * 
 	 * @param s
 	 * @return
 	 */
-	public static DateTime parseEffectiveTime(String s) {
+	public static int parseEffectiveTime(String s) {
 		if (s.length() != 8) {
 			throw new RuntimeException("Expected date of format YYYYMMDD");
 		}
 
-		return new DateTime();
+		return Integer.parseInt(s);
 	}
 
 }
\ No newline at end of file
@@ -1,7 +1,5 @@
 package Parser;
 
-import org.joda.time.DateTime;
-
 /**
  * <p>
  * Base class for RF@ single item classes.
@@ -12,10 +10,10 @@ import org.joda.time.DateTime;
 public class RF2ItemSingle extends RF2Item {
 	/**
 	 * <p>
-	 * Snomed effective time that item is active
+	 * Snomed effective time that item is active, as a packed yyyymmdd int.
 	 * </p>
 	 */
-	private DateTime effectiveTime = DateTime.now();
+	private int effectiveTime;
 	/**
 	 * <p>
 	 * Snomed active field.
@@ -37,7 +35,7 @@ public class RF2ItemSingle extends RF2Item {
 	 * 
 	 * @return
 	 */
-	public DateTime getEffectiveTime() {
+	public int getEffectiveTime() {
 		return effectiveTime;
 	}
 
@@ -48,7 +46,7 @@ public class RF2ItemSingle extends RF2Item {
 	 * 
 	 * @param effectiveTime
 	 */
-	public void setEffectiveTime(DateTime effectiveTime) {
+	public void setEffectiveTime(int effectiveTime) {
 		this.effectiveTime = effectiveTime;
 	}
 
@@ -0,0 +1,241 @@
+package Parser;
+
+import SnomedQuery.Collections.LongIntHashMap;
+
+/**
+ * <p>
+ * Acceptability of descriptions in one language reference set, read from
+ * an RF2 language refset file (der2_cRefset_Language...). The file is
+ * streamed a line at a time and only the current acceptability of each
+ * description id is kept, packed with its effective time into one int of a
+ * primitive map, so memory does not grow with the number of rows or
+ * versions in the file.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+public class RF2LanguageRefset {
+	/**
+	 * <p>
+	 * Id of the US English language reference set.
+	 * </p>
+	 */
+	public static final long usEnglishRefsetId = 900000000000509007L;
+
+	/**
+	 * <p>
+	 * Id of the GB English language reference set.
+	 * </p>
+	 */
+	public static final long gbEnglishRefsetId = 900000000000508004L;
+
+	/**
+	 * <p>
+	 * Acceptability id of preferred descriptions.
+	 * </p>
+	 */
+	public static final long preferredId = 900000000000548007L;
+
+	/**
+	 * <p>
+	 * Acceptability id of acceptable descriptions.
+	 * </p>
+	 */
+	public static final long acceptableId = 900000000000549004L;
+
+	/**
+	 * <p>
+	 * Header line of language refset files.
+	 * </p>
+	 */
+	static final String[] header = new String[]{"id", "effectiveTime",
+			"active", "moduleId", "refsetId", "referencedComponentId",
+			"acceptabilityId"};
+
+	/**
+	 * <p>
+	 * Packed state of a description that is not in the refset (any more).
+	 * </p>
+	 */
+	private static final int notAccepted = 0;
+
+	/**
+	 * <p>
+	 * Packed state of an acceptable description.
+	 * </p>
+	 */
+	private static final int acceptable = 1;
+
+	/**
+	 * <p>
+	 * Packed state of a preferred description.
+	 * </p>
+	 */
+	private static final int preferred = 2;
+
+	/**
+	 * <p>
+	 * Current row of each description id, as effective time (packed
+	 * yyyymmdd) shifted left by two bits, or'ed with the state.
+	 * </p>
+	 */
+	private final LongIntHashMap rows = new LongIntHashMap();
+
+	/**
+	 * <p>
+	 * Id of the refset whose rows are kept. Rows of other refsets in the
+	 * same file are skipped.
+	 * </p>
+	 */
+	private final long refsetId;
+
+	/**
+	 * <p>
+	 * Date (packed yyyymmdd) that rows are current as of.
+	 * </p>
+	 */
+	private final int currentDate;
+
+	/**
+	 * <p>
+	 * Constructor.
+	 * </p>
+	 *
+	 * @param refsetId
+	 *            Id of the refset whose rows are kept.
+	 * @param currentDate
+	 *            Date (packed yyyymmdd) that rows are current as of.
+	 */
+	public RF2LanguageRefset(long refsetId, int currentDate) {
+		this.refsetId = refsetId;
+		this.currentDate = currentDate;
+	}
+
+	/**
+	 * <p>
+	 * Gets the id of the refset whose rows are kept.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public final long getRefsetId() {
+		return this.refsetId;
+	}
+
+	/**
+	 * <p>
+	 * Gets the number of description ids with a row.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public final int size() {
+		return this.rows.size();
+	}
+
+	/**
+	 * <p>
+	 * Read a language refset file.
+	 * </p>
+	 *
+	 * @param path
+	 */
+	public final void load(String path) {
+		MappedFileReader reader = new MappedFileReader();
+		if (!reader.openFile(path)) {
+			throw new RuntimeException(
+					String.format("Unable to open rf2 file %1$s", path));
+		}
+		this.load(reader);
+	}
+
+	/**
+	 * <p>
+	 * Read the rows of a language refset file from <i>reader</i>, then
+	 * close it. Each row is decoded in place; no object is built per row.
+	 * </p>
+	 *
+	 * @param reader
+	 */
+	public final void load(RF2LineReader reader) {
+		try {
+			if (!reader.readLine() || !reader.isHeader(header)) {
+				throw new RuntimeException(
+						"Invalid header line to language refset file");
+			}
+			while (reader.readLine()) {
+				if (reader.getLong(4) != this.refsetId) {
+					continue;
+				}
+				int effectiveTime = reader.getDate(1);
+				if (effectiveTime > this.currentDate) {
+					continue;
+				}
+				long descriptionId = reader.getLong(5);
+				int previous = this.rows.get(descriptionId, -1);
+				// Of two rows with the same effective time the one read last
+				// wins, as for the other rf2 files.
+				if ((previous >= 0) && ((previous >>> 2) > effectiveTime)) {
+					continue;
+				}
+				int state = notAccepted;
+				if (reader.getBool(2)) {
+					state = (reader.getLong(6) == preferredId)
+							? preferred
+							: acceptable;
+				}
+				this.rows.put(descriptionId, (effectiveTime << 2) | state);
+			}
+		} finally {
+			reader.closeFile();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Return true if the refset has a row for the description.
+	 * </p>
+	 *
+	 * @param descriptionId
+	 * @return
+	 */
+	public final boolean contains(long descriptionId) {
+		return this.rows.containsKey(descriptionId);
+	}
+
+	/**
+	 * <p>
+	 * Return true if the description is preferred in the refset.
+	 * </p>
+	 *
+	 * @param descriptionId
+	 * @return
+	 */
+	public final boolean isPreferred(long descriptionId) {
+		return (this.rows.get(descriptionId, 0) & 3) == preferred;
+	}
+
+	/**
+	 * <p>
+	 * Return true if the description is preferred or acceptable in the
+	 * refset.
+	 * </p>
+	 *
+	 * @param descriptionId
+	 * @return
+	 */
+	public final boolean isAccepted(long descriptionId) {
+		return (this.rows.get(descriptionId, 0) & 3) != notAccepted;
+	}
+
+	/**
+	 * <p>
+	 * Return the ids of all descriptions with a row.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public final long[] getDescriptionIds() {
+		return this.rows.keys();
+	}
+}
@@ -0,0 +1,23 @@
+package Parser;
+
+/**
+ * <p>
+ * Parses the current line of an RF2 file into an item.
+ * </p>
+ *
+ * @author Travis Lukach
+ *
+ * @param <T>
+ */
+public interface RF2LineParser<T extends RF2ItemSingle> {
+	/**
+	 * <p>
+	 * Parse the current line of <i>reader</i>.
+	 * </p>
+	 *
+	 * @param parser
+	 * @param reader
+	 * @return
+	 */
+	T parse(RF2Parser parser, RF2LineReader reader);
+}
@@ -0,0 +1,352 @@
+package Parser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import SnomedQuery.Collections.StringPool;
+
+/**
+ * <p>
+ * Base class for byte level readers of RF2 files. Each line is tokenized into
+ * its tab separated fields, which are exposed as offsets and lengths into the
+ * underlying byte buffer so that callers can decode them without building a
+ * String per line.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+public abstract class RF2LineReader {
+	/**
+	 * <p>
+	 * Field separator of RF2 files.
+	 * </p>
+	 */
+	protected static final byte tab = '\t';
+
+	/**
+	 * <p>
+	 * Line separator of RF2 files.
+	 * </p>
+	 */
+	protected static final byte newLine = '\n';
+
+	/**
+	 * <p>
+	 * Carriage return, stripped from the end of each line.
+	 * </p>
+	 */
+	protected static final byte carriageReturn = '\r';
+
+	/**
+	 * <p>
+	 * Buffer holding the bytes of the current line.
+	 * </p>
+	 */
+	protected ByteBuffer buffer;
+
+	/**
+	 * <p>
+	 * Offset into <i>buffer</i> of each field of the current line.
+	 * </p>
+	 */
+	private int[] fieldOffsets = new int[16];
+
+	/**
+	 * <p>
+	 * Length in bytes of each field of the current line.
+	 * </p>
+	 */
+	private int[] fieldLengths = new int[16];
+
+	/**
+	 * <p>
+	 * Number of fields in the current line.
+	 * </p>
+	 */
+	private int fieldCount;
+
+	/**
+	 * <p>
+	 * Advances to the next line of the file and tokenizes it.
+	 * </p>
+	 *
+	 * @return false if there are no more lines.
+	 */
+	public abstract boolean readLine();
+
+	/**
+	 * <p>
+	 * Closes the file.
+	 * </p>
+	 */
+	public abstract void closeFile();
+
+	/**
+	 * <p>
+	 * Split the bytes of <i>buffer</i> from <i>start</i> (inclusive) to
+	 * <i>end</i> (exclusive) into tab separated fields.
+	 * </p>
+	 *
+	 * @param start
+	 * @param end
+	 */
+	protected final void tokenize(int start, int end) {
+		if ((end > start) && (this.buffer.get(end - 1) == carriageReturn)) {
+			end -= 1;
+		}
+		this.fieldCount = 0;
+		int fieldStart = start;
+		for (int i = start; i < end; i++) {
+			if (this.buffer.get(i) == tab) {
+				this.addField(fieldStart, i);
+				fieldStart = i + 1;
+			}
+		}
+		this.addField(fieldStart, end);
+	}
+
+	/**
+	 * <p>
+	 * Record a field of the current line.
+	 * </p>
+	 *
+	 * @param start
+	 * @param end
+	 */
+	private void addField(int start, int end) {
+		if (this.fieldCount == this.fieldOffsets.length) {
+			int[] offsets = new int[this.fieldCount * 2];
+			int[] lengths = new int[this.fieldCount * 2];
+			System.arraycopy(this.fieldOffsets, 0, offsets, 0, this.fieldCount);
+			System.arraycopy(this.fieldLengths, 0, lengths, 0, this.fieldCount);
+			this.fieldOffsets = offsets;
+			this.fieldLengths = lengths;
+		}
+		this.fieldOffsets[this.fieldCount] = start;
+		this.fieldLengths[this.fieldCount] = end - start;
+		this.fieldCount += 1;
+	}
+
+	/**
+	 * <p>
+	 * Gets the buffer the field offsets refer to.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public final ByteBuffer getBuffer() {
+		return this.buffer;
+	}
+
+	/**
+	 * <p>
+	 * Gets the number of fields in the current line.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public final int getFieldCount() {
+		return this.fieldCount;
+	}
+
+	/**
+	 * <p>
+	 * Gets the offset into the buffer of the indicated field.
+	 * </p>
+	 *
+	 * @param field
+	 * @return
+	 */
+	public final int getFieldOffset(int field) {
+		return this.fieldOffsets[field];
+	}
+
+	/**
+	 * <p>
+	 * Gets the length in bytes of the indicated field.
+	 * </p>
+	 *
+	 * @param field
+	 * @return
+	 */
+	public final int getFieldLength(int field) {
+		return this.fieldLengths[field];
+	}
+
+	/**
+	 * <p>
+	 * Decode the indicated field as a UTF-8 String.
+	 * </p>
+	 *
+	 * @param field
+	 * @return
+	 */
+	public final String getField(int field) {
+		int offset = this.fieldOffsets[field];
+		int length = this.fieldLengths[field];
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = this.buffer.get(offset + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * <p>
+	 * Return the pooled String equal to the indicated field. A String is
+	 * only decoded if the pool does not hold the value yet.
+	 * </p>
+	 *
+	 * @param field
+	 * @param pool
+	 * @return
+	 */
+	public final String getField(int field, StringPool pool) {
+		return pool.intern(this.buffer, this.fieldOffsets[field],
+				this.fieldLengths[field]);
+	}
+
+	/**
+	 * <p>
+	 * Decode the indicated field as a non negative decimal long, reading the
+	 * digits straight from the buffer.
+	 * </p>
+	 *
+	 * @param field
+	 * @return
+	 */
+	public final long getLong(int field) {
+		int offset = this.fieldOffsets[field];
+		int length = this.fieldLengths[field];
+		if ((length == 0) || (length > 19)) {
+			throw this.numberFormatException(field);
+		}
+		long value = 0;
+		for (int i = 0; i < length; i++) {
+			int digit = this.buffer.get(offset + i) - '0';
+			if ((digit < 0) || (digit > 9)) {
+				throw this.numberFormatException(field);
+			}
+			value = (value * 10) + digit;
+		}
+		if (value < 0) {
+			throw this.numberFormatException(field);
+		}
+		return value;
+	}
+
+	/**
+	 * <p>
+	 * Decode the indicated field as a non negative decimal int, reading the
+	 * digits straight from the buffer.
+	 * </p>
+	 *
+	 * @param field
+	 * @return
+	 */
+	public final int getInt(int field) {
+		if (this.fieldLengths[field] > 10) {
+			throw this.numberFormatException(field);
+		}
+		long value = this.getLong(field);
+		if (value > Integer.MAX_VALUE) {
+			throw this.numberFormatException(field);
+		}
+		return (int) value;
+	}
+
+	/**
+	 * <p>
+	 * Decode the indicated RF2 boolean field ("0" or "1").
+	 * </p>
+	 *
+	 * @param field
+	 * @return
+	 */
+	public final boolean getBool(int field) {
+		if (this.fieldLengths[field] == 1) {
+			switch (this.buffer.get(this.fieldOffsets[field])) {
+				case '0' :
+					return false;
+				case '1' :
+					return true;
+				default :
+					break;
+			}
+		}
+		throw new UnsupportedOperationException("Invalid boolean value");
+	}
+
+	/**
+	 * <p>
+	 * Decode the indicated RF2 date field (YYYYMMDD) into a packed yyyymmdd
+	 * int.
+	 * </p>
+	 *
+	 * @param field
+	 * @return
+	 */
+	public final int getDate(int field) {
+		if (this.fieldLengths[field] != 8) {
+			throw new RuntimeException("Expected date of format YYYYMMDD");
+		}
+		return this.getInt(field);
+	}
+
+	/**
+	 * <p>
+	 * Build the exception thrown for an invalid numeric field.
+	 * </p>
+	 *
+	 * @param field
+	 * @return
+	 */
+	private NumberFormatException numberFormatException(int field) {
+		return new NumberFormatException(
+				String.format("Invalid number '%1$s'", this.getField(field)));
+	}
+
+	/**
+	 * <p>
+	 * Return true if the indicated field is equal to the ascii string value.
+	 * </p>
+	 *
+	 * @param field
+	 * @param value
+	 * @return
+	 */
+	public final boolean fieldEquals(int field, String value) {
+		int offset = this.fieldOffsets[field];
+		int length = this.fieldLengths[field];
+		if (length != value.length()) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (this.buffer.get(offset + i) != value.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * <p>
+	 * Return true if the current line consists of exactly the indicated
+	 * column names. Used to validate RF2 header lines.
+	 * </p>
+	 *
+	 * @param names
+	 * @return
+	 */
+	public final boolean isHeader(String... names) {
+		if (this.fieldCount != names.length) {
+			return false;
+		}
+		for (int i = 0; i < names.length; i++) {
+			if (!this.fieldEquals(i, names[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
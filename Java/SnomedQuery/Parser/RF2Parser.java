@@ -1,7 +1,21 @@
 package Parser;
 
+import java.io.IOException;
 import java.util.*;
-import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import SnomedQuery.Collections.LongObjectHashMap;
+import SnomedQuery.Collections.StringPool;
+import SnomedQuery.Model.EffectiveTime;
+import SnomedQuery.Model.TermIndex;
 
 /**
  * <p>Parser for Snomed rf2 files.</p>
@@ -45,12 +59,12 @@ public class RF2Parser {
 
 	/**
 	 * <p>
-	 * Dictionary of relationships. There may be more than one relationship per
-	 * id (its a list). If so, the relationships are ordered by their effective
-	 * time (later times first) so [0] is always current.
+	 * Columnar table of relationship rows, sorted by source, type and
+	 * destination. There may be more than one row per relationship id; the
+	 * table marks which one is current.
 	 * </p>
 	 */
-	public HashMap<Long, RF2RelationshipGroup> relationshipGroups = new HashMap<Long, RF2RelationshipGroup>();
+	public RF2RelationshipTable relationships;
 
 	/**
 	 * <p>
@@ -59,7 +73,7 @@ public class RF2Parser {
 	 * (later times first) so [0] is always current.
 	 * </p>
 	 */
-	public HashMap<Long, RF2DescriptionGroup> descriptionGroups = new HashMap<Long, RF2DescriptionGroup>();
+	public LongObjectHashMap<RF2DescriptionGroup> descriptionGroups = new LongObjectHashMap<RF2DescriptionGroup>();
 
 	/**
 	 * <p>
@@ -68,7 +82,7 @@ public class RF2Parser {
 	 * times first) so [0] is always current.
 	 * </p>
 	 */
-	public HashMap<Long, RF2ConceptGroup> conceptGroups = new HashMap<Long, RF2ConceptGroup>();
+	public LongObjectHashMap<RF2ConceptGroup> conceptGroups = new LongObjectHashMap<RF2ConceptGroup>();
 
 	/**
 	 * <p>
@@ -76,7 +90,115 @@ public class RF2Parser {
 	 * etc).
 	 * </p>
 	 */
-	public HashMap<Long, RF2ConceptGroup> descriptionTypes = new HashMap<Long, RF2ConceptGroup>();
+	public LongObjectHashMap<RF2ConceptGroup> descriptionTypes = new LongObjectHashMap<RF2ConceptGroup>();
+
+	/**
+	 * <p>
+	 * Column names of the header line of rf2 concept files.
+	 * </p>
+	 */
+	static final String[] conceptHeader = {"id", "effectiveTime", "active",
+			"moduleId", "definitionStatusId"};
+
+	/**
+	 * <p>
+	 * Column names of the header line of rf2 relationship files.
+	 * </p>
+	 */
+	static final String[] relationshipHeader = {"id", "effectiveTime",
+			"active", "moduleId", "sourceId", "destinationId",
+			"relationshipGroup", "typeId", "characteristicTypeId",
+			"modifierId"};
+
+	/**
+	 * <p>
+	 * Column names of the header line of rf2 description files.
+	 * </p>
+	 */
+	static final String[] descriptionHeader = {"id", "effectiveTime",
+			"active", "moduleId", "conceptId", "languageCode", "typeId",
+			"term", "caseSignificanceId"};
+
+	/**
+	 * <p>
+	 * Index of the terms of active descriptions, built once descriptions are
+	 * loaded. Only used to find the root concept, and dropped once it is
+	 * found; SnomedModelManager.getTermIndex serves lookups of the model.
+	 * </p>
+	 */
+	private TermIndex termIndex = new TermIndex();
+
+	/**
+	 * <p>
+	 * Number of threads used to parse each rf2 file.
+	 * </p>
+	 */
+	private int parallelism = 1;
+
+	/**
+	 * <p>
+	 * Fork join pool used to parse rf2 files in parallel chunks, created for
+	 * each load and shut down at its end. Null if files are parsed
+	 * sequentially or no load is running.
+	 * </p>
+	 */
+	private ForkJoinPool pool;
+
+	/**
+	 * <p>
+	 * Number of chunks per pool thread that each rf2 file is split into.
+	 * More chunks than threads keeps all threads busy when chunks parse at
+	 * different speeds.
+	 * </p>
+	 */
+	private static final int chunksPerThread = 4;
+
+	/**
+	 * <p>
+	 * If true, only the row that is current as of <i>asOfDate</i> is kept for
+	 * each id while files are read. Superseded rows of Full release files
+	 * are dropped as soon as they are read.
+	 * </p>
+	 */
+	private boolean snapshotReducing;
+
+	/**
+	 * <p>
+	 * Date (packed yyyymmdd) that rows are current as of. 0 means today.
+	 * </p>
+	 */
+	private int asOfDate;
+
+	/**
+	 * <p>
+	 * Date (packed yyyymmdd) that rows are current as of, fixed when a
+	 * load starts so that one parse uses one date. 0 before any load.
+	 * </p>
+	 */
+	private volatile int currentDate;
+
+	/**
+	 * <p>
+	 * Pool of the terms and language codes of descriptions, so that a term
+	 * repeated by several rows or versions is held once.
+	 * </p>
+	 */
+	private final StringPool stringPool = new StringPool();
+
+	/**
+	 * <p>
+	 * Id of the language refset whose acceptabilities are read.
+	 * </p>
+	 */
+	private long languageRefsetId = RF2LanguageRefset.usEnglishRefsetId;
+
+	/**
+	 * <p>
+	 * Acceptability of the descriptions in the language refset. Null if no
+	 * language refset file was loaded.
+	 * </p>
+	 */
+	private RF2LanguageRefset languageRefset;
 
 	/**
 	 * Sets <i>rootConcept</i>.
@@ -102,6 +224,167 @@ public class RF2Parser {
 	public RF2Parser() {
 	}
 
+	/**
+	 * <p>
+	 * Sets the id of the language refset whose acceptabilities are read,
+	 * US English by default.
+	 * </p>
+	 * 
+	 * @param languageRefsetId
+	 */
+	public void setLanguageRefsetId(long languageRefsetId) {
+		this.languageRefsetId = languageRefsetId;
+	}
+
+	/**
+	 * <p>
+	 * Gets the acceptabilities of the language refset, or null if no
+	 * language refset file was loaded.
+	 * </p>
+	 * 
+	 * @return
+	 */
+	public RF2LanguageRefset getLanguageRefset() {
+		return this.languageRefset;
+	}
+
+	/**
+	 * <p>
+	 * Stream a language refset file, keeping the acceptability of each
+	 * description in the selected refset.
+	 * </p>
+	 * 
+	 * @param path
+	 */
+	private void loadLanguageRefset(String path) {
+		RF2LanguageRefset refset = new RF2LanguageRefset(
+				this.languageRefsetId, this.getCurrentDate());
+		refset.load(path);
+		this.languageRefset = refset;
+	}
+
+	/**
+	 * <p>
+	 * Stream a language refset file from <i>reader</i>, keeping the
+	 * acceptability of each description in the selected refset.
+	 * </p>
+	 * 
+	 * @param reader
+	 */
+	private void loadLanguageRefset(RF2LineReader reader) {
+		RF2LanguageRefset refset = new RF2LanguageRefset(
+				this.languageRefsetId, this.getCurrentDate());
+		refset.load(reader);
+		this.languageRefset = refset;
+	}
+
+	/**
+	 * <p>
+	 * Sets the number of threads used to parse each rf2 file. Files are cut
+	 * into newline aligned chunks that are parsed on a fork join pool and
+	 * merged in file order. A parallelism of 1 parses sequentially. The
+	 * pool is created for each load and shut down when the load ends.
+	 * </p>
+	 * 
+	 * @param parallelism
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * <p>
+	 * Gets <i>termIndex</i>. Null once the rf2 files are loaded.
+	 * </p>
+	 * 
+	 * @return
+	 */
+	public TermIndex getTermIndex() {
+		return termIndex;
+	}
+
+	/**
+	 * <p>
+	 * Gets <i>stringPool</i>.
+	 * </p>
+	 * 
+	 * @return
+	 */
+	public StringPool getStringPool() {
+		return stringPool;
+	}
+
+	/**
+	 * <p>
+	 * Gets <i>snapshotReducing</i>.
+	 * </p>
+	 * 
+	 * @return
+	 */
+	public boolean isSnapshotReducing() {
+		return snapshotReducing;
+	}
+
+	/**
+	 * <p>
+	 * Sets <i>snapshotReducing</i>. Must be set before files are loaded.
+	 * </p>
+	 * 
+	 * @param snapshotReducing
+	 */
+	public void setSnapshotReducing(boolean snapshotReducing) {
+		this.snapshotReducing = snapshotReducing;
+	}
+
+	/**
+	 * <p>
+	 * Gets <i>asOfDate</i>.
+	 * </p>
+	 * 
+	 * @return
+	 */
+	public int getAsOfDate() {
+		return asOfDate;
+	}
+
+	/**
+	 * <p>
+	 * Sets <i>asOfDate</i> (packed yyyymmdd, 0 for today). Must be set before
+	 * files are loaded.
+	 * </p>
+	 * 
+	 * @param asOfDate
+	 */
+	public void setAsOfDate(int asOfDate) {
+		this.asOfDate = asOfDate;
+	}
+
+	/**
+	 * <p>
+	 * Fix the date that rows are current as of for the parse that starts:
+	 * <i>asOfDate</i>, or today. Loads call this before reading any row.
+	 * </p>
+	 */
+	public void startParse() {
+		this.currentDate = (this.asOfDate != 0) ? this.asOfDate
+				: EffectiveTime.today();
+	}
+
+	/**
+	 * <p>
+	 * Return the date (packed yyyymmdd) that rows are current as of, as
+	 * fixed by startParse.
+	 * </p>
+	 * 
+	 * @return
+	 */
+	public int getCurrentDate() {
+		if (this.currentDate == 0) {
+			this.startParse();
+		}
+		return this.currentDate;
+	}
+
 	/**
 	 * <p>
 	 * Load Snomed data from rf2 files.
@@ -127,84 +410,408 @@ public class RF2Parser {
 	 */
 	public final void loadFromRF2Files(String conceptPath,
 			String relationshipPath, String descriptionPath) {
-		// Load main three snomed files (concepts, relationships, and
-		// descriptions).
-		// Load files concurrently
+		this.loadFromRF2Files(conceptPath, relationshipPath, descriptionPath,
+				null);
+	}
+
+	/**
+	 * <p>
+	 * Load raw snomed description data into memory, along with the
+	 * acceptabilities of a language refset file.
+	 * </p>
+	 * 
+	 * @param conceptPath
+	 * @param relationshipPath
+	 * @param descriptionPath
+	 * @param languagePath
+	 *            Language refset file, or null for none.
+	 */
+	public final void loadFromRF2Files(String conceptPath,
+			String relationshipPath, String descriptionPath,
+			String languagePath) {
+		this.loadConcurrently(
+				() -> this.timeLoad("Concepts", conceptPath,
+						() -> this.loadConcepts(conceptPath)),
+				() -> this.timeLoad("Relationships", relationshipPath,
+						() -> this.loadRelationships(relationshipPath)),
+				() -> this.timeLoad("Descriptions", descriptionPath,
+						() -> this.loadDescriptions(descriptionPath)),
+				(languagePath == null)
+						? null
+						: () -> this.timeLoad("Language refset",
+								languagePath,
+								() -> this.loadLanguageRefset(languagePath)));
+	}
+
+	/**
+	 * <p>
+	 * Load raw snomed data into memory straight from the entries of a
+	 * release zip, without extracting it. Entries are found by name, for
+	 * example sct2_Concept_Full_INT_20160731.txt for release type "Full".
+	 * Each entry is decompressed on its own thread, overlapping with the
+	 * parse of the data already decompressed. The language refset entry is
+	 * loaded too, if the zip has one.
+	 * </p>
+	 * 
+	 * @param zipPath
+	 * @param releaseType
+	 *            "Full", "Snapshot" or "Delta".
+	 */
+	public final void loadFromRF2Zip(String zipPath, String releaseType) {
+		try (ZipFile zip = new ZipFile(zipPath)) {
+			ZipEntry concepts = findEntry(zip, "sct2_Concept_", releaseType);
+			ZipEntry relationships = findEntry(zip, "sct2_Relationship_",
+					releaseType);
+			ZipEntry descriptions = findEntry(zip, "sct2_Description_",
+					releaseType);
+			ZipEntry language = findEntry(zip, "der2_cRefset_Language",
+					releaseType, false);
+			this.loadConcurrently(
+					() -> this.timeLoad("Concepts", concepts.getName(),
+							() -> this.loadConcepts(
+									this.openReader(zip, concepts))),
+					() -> this.timeLoad("Relationships",
+							relationships.getName(),
+							() -> this.loadRelationships(
+									this.openReader(zip, relationships))),
+					() -> this.timeLoad("Descriptions",
+							descriptions.getName(),
+							() -> this.loadDescriptions(
+									this.openReader(zip, descriptions))),
+					(language == null)
+							? null
+							: () -> this.timeLoad("Language refset",
+									language.getName(),
+									() -> this.loadLanguageRefset(
+											this.openReader(zip, language))));
+		} catch (IOException e) {
+			throw new RuntimeException(
+					String.format("Unable to read rf2 zip %1$s", zipPath), e);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Return the single entry of <i>zip</i> whose file name is
+	 * <i>prefix</i>, the release type, an optional language suffix and an
+	 * underscore, for example sct2_Description_Full-en_INT_20160731.txt.
+	 * </p>
+	 * 
+	 * @param zip
+	 * @param prefix
+	 * @param releaseType
+	 * @return
+	 */
+	private static ZipEntry findEntry(ZipFile zip, String prefix,
+			String releaseType) {
+		return findEntry(zip, prefix, releaseType, true);
+	}
+
+	/**
+	 * <p>
+	 * Return the single entry of <i>zip</i> matching <i>prefix</i> and the
+	 * release type, as findEntry does, or null if there is none and the
+	 * entry is not <i>required</i>.
+	 * </p>
+	 * 
+	 * @param zip
+	 * @param prefix
+	 * @param releaseType
+	 * @param required
+	 * @return
+	 */
+	private static ZipEntry findEntry(ZipFile zip, String prefix,
+			String releaseType, boolean required) {
+		Pattern pattern = Pattern.compile("(^|.*/)" + Pattern.quote(prefix)
+				+ Pattern.quote(releaseType) + "(-[A-Za-z]+)?_[^/]*\\.txt");
+		ZipEntry retVal = null;
+		Enumeration<? extends ZipEntry> entries = zip.entries();
+		while (entries.hasMoreElements()) {
+			ZipEntry entry = entries.nextElement();
+			if (!entry.isDirectory()
+					&& pattern.matcher(entry.getName()).matches()) {
+				if (retVal != null) {
+					throw new RuntimeException(String.format(
+							"Multiple %1$s%2$s entries found in %3$s", prefix,
+							releaseType, zip.getName()));
+				}
+				retVal = entry;
+			}
+		}
+		if ((retVal == null) && required) {
+			throw new RuntimeException(
+					String.format("No %1$s%2$s entry found in %3$s", prefix,
+							releaseType, zip.getName()));
+		}
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Open a reader on a zip entry, decompressed ahead of the reader on
+	 * its own thread.
+	 * </p>
+	 * 
+	 * @param zip
+	 * @param entry
+	 * @return
+	 */
+	private StreamLineReader openReader(ZipFile zip, ZipEntry entry) {
+		try {
+			return new StreamLineReader(new ReadAheadInputStream(
+					zip.getInputStream(entry), "Inflate " + entry.getName()));
+		} catch (IOException e) {
+			throw new RuntimeException(String.format(
+					"Unable to open rf2 zip entry %1$s", entry.getName()), e);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Run the loads of the main three snomed files (concepts, relationships,
+	 * and descriptions) and of the language refset, then patch them
+	 * together.
+	 * </p>
+	 * 
+	 * @param concepts
+	 * @param relationships
+	 * @param descriptions
+	 * @param language
+	 *            Load of the language refset, or null for none.
+	 */
+	private void loadConcurrently(Runnable concepts, Runnable relationships,
+			Runnable descriptions, Runnable language) {
+		// Load files concurrently. Each load has its own reader and fills its
+		// own dictionary, so the loads are independent until the fix up
+		// steps below.
+		long start = System.currentTimeMillis();
+		this.startParse();
+		if (this.parallelism > 1) {
+			this.pool = new ForkJoinPool(this.parallelism);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Future<?> conceptsTask = executor.submit(concepts);
+			Future<?> relationshipsTask = executor.submit(relationships);
+			Future<?> descriptionsTask = executor.submit(descriptions);
+			Future<?> languageTask = (language == null)
+					? null
+					: executor.submit(language);
+			this.await(conceptsTask);
+			this.await(relationshipsTask);
+			this.await(descriptionsTask);
+			if (languageTask != null) {
+				this.await(languageTask);
+			}
+		} finally {
+			executor.shutdown();
+			// Free the chunk parse threads once the files are loaded.
+			if (this.pool != null) {
+				this.pool.shutdown();
+				this.pool = null;
+			}
+		}
+		System.out.println(String.format("Loaded rf2 files in %1$s ms",
+				System.currentTimeMillis() - start));
+		System.out.println(
+				String.format("String pool: %1$s", this.stringPool));
 
-		this.loadConcepts(conceptPath);
-		this.loadRelationships(relationshipPath);
-		this.loadDescriptions(descriptionPath);
 		this.fixConcepts();
 		this.fixRelationships();
 		this.fixDescriptions();
 
 		this.setRootConcept(this.findSnomedConcept("SNOMED CT CONCEPT"));
+		// The index is not needed past the root concept; free it before
+		// the records are built.
+		this.termIndex = null;
 	}
 
 	/**
 	 * <p>
-	 * Load raw snomed description data into memory.
+	 * Run the load of one rf2 file and report how long it took.
 	 * </p>
 	 * 
+	 * @param name
 	 * @param path
+	 * @param load
 	 */
-	private void loadRelationships(String path) {
-		FileReader reader = new FileReader();
-		reader.openFile(path);
-		String[] parts = reader.readLine().split("[\\t]", -1);
-		if ((parts.length != 10) || (parts[0].compareTo("id") != 0)
-				|| (parts[1].compareTo("effectiveTime") != 0)
-				|| (parts[2].compareTo("active") != 0)
-				|| (parts[3].compareTo("moduleId") != 0)
-				|| (parts[4].compareTo("sourceId") != 0)
-				|| (parts[5].compareTo("destinationId") != 0)
-				|| (parts[6].compareTo("relationshipGroup") != 0)
-				|| (parts[7].compareTo("typeId") != 0)
-				|| (parts[8].compareTo("characteristicTypeId") != 0)
-				|| (parts[9].compareTo("modifierId") != 0)) {
+	private void timeLoad(String name, String path, Runnable load) {
+		long start = System.currentTimeMillis();
+		load.run();
+		System.out.println(String.format("Loaded %1$s from %2$s in %3$s ms",
+				name, path, System.currentTimeMillis() - start));
+	}
+
+	/**
+	 * <p>
+	 * Wait for a load task to complete, rethrowing any failure.
+	 * </p>
+	 * 
+	 * @param task
+	 */
+	private void await(Future<?> task) {
+		try {
+			task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * <p>
+	 * Open a memory mapped reader on the indicated rf2 file.
+	 * </p>
+	 * 
+	 * @param path
+	 * @return
+	 */
+	private MappedFileReader openReader(String path) {
+		MappedFileReader reader = new MappedFileReader();
+		if (!reader.openFile(path)) {
 			throw new RuntimeException(
-					"Invalid header line to Relationship file");
+					String.format("Unable to open rf2 file %1$s", path));
 		}
+		return reader;
+	}
 
-		RF2RelationshipGroup relationshipGroup = null;
-		while (true) {
-			String line = reader.readLine();
-			if (line == null) {
-				break;
-			}
+	/**
+	 * <p>
+	 * Parse the rest of the rf2 file after the current line of <i>reader</i>
+	 * in parallel chunks. The reader is closed. Chunks are returned in file
+	 * order, each holding its items in file order, so merging them in
+	 * sequence keeps the grouping and ordering of a sequential read.
+	 * </p>
+	 * 
+	 * @param path
+	 * @param reader
+	 * @param lineParser
+	 * @return
+	 */
+	private <T extends RF2ItemSingle> ArrayList<ArrayList<T>> parseChunks(
+			String path, MappedFileReader reader,
+			RF2LineParser<T> lineParser) {
+		long[] bounds = this.splitChunks(path, reader);
+		ArrayList<RF2ChunkTask<T>> tasks = new ArrayList<RF2ChunkTask<T>>();
+		for (int i = 0; i < bounds.length - 1; i++) {
+			tasks.add(new RF2ChunkTask<T>(this, path, bounds[i],
+					bounds[i + 1], lineParser));
+		}
+		return this.runChunks(tasks);
+	}
 
-			RF2Relationship relationship = RF2Relationship.Parse(this, line);
-			if (relationship != null) {
-				/*
-				 * Relationships in a common group are usually grouped together,
-				 * so check last relationship to see if it is same group first.
-				 */
-				if ((relationshipGroup != null)
-						&& (relationshipGroup.getId() != relationship.getId())) {
-					relationshipGroup = null;
-				}
+	/**
+	 * <p>
+	 * Split the rest of the rf2 file after the current line of <i>reader</i>
+	 * into newline aligned chunks. The reader is closed.
+	 * </p>
+	 * 
+	 * @param path
+	 * @param reader
+	 * @return Chunk boundaries, chunk i runs from [i] to [i + 1].
+	 */
+	private long[] splitChunks(String path, MappedFileReader reader) {
+		long dataStart = reader.getPosition();
+		reader.closeFile();
+		return MappedFileReader.splitLines(path, dataStart,
+				this.pool.getParallelism() * chunksPerThread);
+	}
 
-				if ((relationshipGroup == null) && (!this.relationshipGroups
-						.containsKey(relationship.getId()))) {
-					relationshipGroup = null;
-				} else {
-					relationshipGroup = this.relationshipGroups
-							.get(relationship.getId());
-				}
+	/**
+	 * <p>
+	 * Run chunk tasks on the pool and return their results in task order.
+	 * </p>
+	 * 
+	 * @param tasks
+	 * @return
+	 */
+	private <R> ArrayList<R> runChunks(
+			ArrayList<? extends ForkJoinTask<R>> tasks) {
+		for (ForkJoinTask<R> task : tasks) {
+			this.pool.execute(task);
+		}
+		ArrayList<R> retVal = new ArrayList<R>();
+		for (ForkJoinTask<R> task : tasks) {
+			retVal.add(task.join());
+		}
+		return retVal;
+	}
 
-				if (relationshipGroup == null) {
-					relationshipGroup = new RF2RelationshipGroup();
-					relationshipGroup.setParser(this);
-					relationshipGroup.setId(relationship.getId());
-					if (this.relationshipGroups.containsKey(relationship.getId())) {
-						throw new RuntimeException(
-								"Error adding relationship to dictionary");
-					}
-					this.relationshipGroups.put(relationship.getId(),
-							relationshipGroup);
-				}
-				relationshipGroup.addRelationship(relationship);
+	/**
+	 * <p>
+	 * Load raw snomed description data into memory.
+	 * </p>
+	 * 
+	 * @param path
+	 */
+	private void loadRelationships(String path) {
+		MappedFileReader reader = this.openReader(path);
+		if (this.pool == null) {
+			this.loadRelationships(reader);
+			return;
+		}
+		this.readHeader(reader, relationshipHeader, "Relationship");
+
+		RF2RelationshipTable table = new RF2RelationshipTable(
+				this.snapshotReducing, this.getCurrentDate());
+		long[] bounds = this.splitChunks(path, reader);
+		ArrayList<RF2RelationshipChunkTask> tasks = new ArrayList<RF2RelationshipChunkTask>();
+		for (int i = 0; i < bounds.length - 1; i++) {
+			tasks.add(new RF2RelationshipChunkTask(this, path, bounds[i],
+					bounds[i + 1]));
+		}
+		for (RF2RelationshipTable chunk : this.runChunks(tasks)) {
+			table.addAll(chunk);
+		}
+		table.finish();
+		this.relationships = table;
+	}
+
+	/**
+	 * <p>
+	 * Load raw snomed relationship data into memory, reading it
+	 * sequentially from <i>reader</i>. The reader is closed, also if the
+	 * load fails.
+	 * </p>
+	 * 
+	 * @param reader
+	 */
+	private void loadRelationships(RF2LineReader reader) {
+		RF2RelationshipTable table = new RF2RelationshipTable(
+				this.snapshotReducing, this.getCurrentDate());
+		try {
+			this.readHeader(reader, relationshipHeader, "Relationship");
+			while (reader.readLine()) {
+				table.addRow(reader);
 			}
+		} finally {
+			reader.closeFile();
+		}
+		table.finish();
+		this.relationships = table;
+	}
+
+	/**
+	 * <p>
+	 * Read the header line of an rf2 file and check its column names. The
+	 * reader is closed if they do not match.
+	 * </p>
+	 * 
+	 * @param reader
+	 * @param header
+	 * @param fileType
+	 */
+	private void readHeader(RF2LineReader reader, String[] header,
+			String fileType) {
+		if (!reader.readLine() || !reader.isHeader(header)) {
+			reader.closeFile();
+			throw new RuntimeException(String
+					.format("Invalid header line to %1$s file", fileType));
 		}
 	}
 
@@ -216,27 +823,28 @@ public class RF2Parser {
 	 * @param path
 	 */
 	private void fixRelationships() {
-		for (Entry<Long, RF2RelationshipGroup> kvp : this.relationshipGroups
-				.entrySet()) {
-			RF2RelationshipGroup relationshipGroup = kvp.getValue();
-
-			RF2Relationship relationship = relationshipGroup.getActive();
-			if (relationship != null) {
+		RF2RelationshipTable table = this.relationships;
+		for (int row = 0; row < table.size(); row++) {
+			if (table.isCurrentActive(row)) {
 				RF2ConceptGroup sourceConcept = this
-						.getConceptGroup(relationship.getSourceId());
+						.getConceptGroup(table.getSourceId(row));
 				RF2ConceptGroup destinationConcept = this
-						.getConceptGroup(relationship.getDestinationId());
+						.getConceptGroup(table.getDestinationId(row));
 
-				sourceConcept.addSourceRelationship(relationshipGroup);
+				sourceConcept.addSourceRelationship(table.getId(row));
 				destinationConcept
-						.addDestinationRelationship(relationshipGroup);
+						.addDestinationRelationship(table.getId(row));
 			}
 		}
+		for (RF2ConceptGroup conceptGroup : this.conceptGroups.values()) {
+			conceptGroup.finishRelationships();
+		}
 	}
 
 	/**
 	 * <p>
-	 * Return RelationshipGroup with indicated id.
+	 * Return RelationshipGroup with indicated id. The group is built from
+	 * the rows of the relationship table on each call.
 	 * </p>
 	 * 
 	 * @param relationshipId
@@ -244,14 +852,13 @@ public class RF2Parser {
 	 */
 	public final RF2RelationshipGroup getRelationshipGroup(
 			long relationshipId) {
-		RF2RelationshipGroup relationshipGroup = null;
+		RF2RelationshipGroup relationshipGroup = this.relationships
+				.createGroup(this, relationshipId);
 
-		if (!this.relationshipGroups.containsKey(relationshipId)) {
+		if (relationshipGroup == null) {
 			throw new RuntimeException(
 					String.format("Relationship %1$s not found in dictionary",
 							relationshipId));
-		} else {
-			relationshipGroup = this.relationshipGroups.get(relationshipId);
 		}
 		return relationshipGroup;
 	}
@@ -295,6 +902,27 @@ public class RF2Parser {
 		return descriptionGroup;
 	}
 
+	/**
+	 * <p>
+	 * Remove a concept group and its description groups from the parser
+	 * once they are no longer needed, so they can be collected. Only the
+	 * concept's own groups are removed; other concepts referring to it by
+	 * id must not be looked up afterwards.
+	 * </p>
+	 *
+	 * @param conceptId
+	 */
+	public final void releaseConcept(long conceptId) {
+		RF2ConceptGroup conceptGroup = this.conceptGroups.remove(conceptId);
+		if (conceptGroup == null) {
+			return;
+		}
+		for (RF2DescriptionGroup descriptionGroup : conceptGroup
+				.getDescriptionGroups()) {
+			this.descriptionGroups.remove(descriptionGroup.getId());
+		}
+	}
+
 	/**
 	 * <p>
 	 * Load raw snomed description data into memory.
@@ -303,64 +931,114 @@ public class RF2Parser {
 	 * @param path
 	 */
 	private void loadDescriptions(String path) {
-		FileReader reader = new FileReader();
-		reader.openFile(path);
-		String[] parts = reader.readLine().split("[\\t]", -1);
-		if ((parts.length != 9) || (parts[0].compareTo("id") != 0)
-				|| (parts[1].compareTo("effectiveTime") != 0)
-				|| (parts[2].compareTo("active") != 0)
-				|| (parts[3].compareTo("moduleId") != 0)
-				|| (parts[4].compareTo("conceptId") != 0)
-				|| (parts[5].compareTo("languageCode") != 0)
-				|| (parts[6].compareTo("typeId") != 0)
-				|| (parts[7].compareTo("term") != 0)
-				|| (parts[8].compareTo("caseSignificanceId") != 0)) {
-			throw new RuntimeException(
-					"Invalid header line to description file");
+		MappedFileReader reader = this.openReader(path);
+		if (this.pool == null) {
+			this.loadDescriptions(reader);
+			return;
 		}
+		this.readHeader(reader, descriptionHeader, "description");
 
-		RF2DescriptionGroup descriptionGroup = null;
-		while (true) {
-			String line = reader.readLine();
-			if (line == null) {
-				break;
+		for (ArrayList<RF2Description> chunk : this.parseChunks(path, reader,
+				RF2Description::parse)) {
+			RF2DescriptionGroup descriptionGroup = null;
+			for (RF2Description description : chunk) {
+				descriptionGroup = this.addDescription(descriptionGroup,
+						description);
 			}
-			RF2Description description = RF2Description.parse(this, line);
-			if (description != null) {
-				/*
-				 * Relationships in a common group are usually grouped together,
-				 * so check last relationship to see if it is same group first.
-				 */
-				if ((descriptionGroup != null)
-						&& (descriptionGroup.getId() != description.getId())) {
-					descriptionGroup = null;
-				}
+		}
+		this.buildTermIndex();
+	}
 
-				if ((descriptionGroup == null) && (!this.descriptionGroups
-						.containsKey(description.getId()))) {
-					descriptionGroup = null;
-				} else {
-					descriptionGroup = this.descriptionGroups
-							.get(description.getId());
+	/**
+	 * <p>
+	 * Load raw snomed description data into memory, reading it
+	 * sequentially from <i>reader</i>. The reader is closed, also if the
+	 * load fails.
+	 * </p>
+	 * 
+	 * @param reader
+	 */
+	private void loadDescriptions(RF2LineReader reader) {
+		try {
+			this.readHeader(reader, descriptionHeader, "description");
+			RF2DescriptionGroup descriptionGroup = null;
+			while (reader.readLine()) {
+				RF2Description description = RF2Description.parse(this,
+						reader);
+				if (description != null) {
+					descriptionGroup = this.addDescription(descriptionGroup,
+							description);
 				}
+			}
+		} finally {
+			reader.closeFile();
+		}
+		this.buildTermIndex();
+	}
 
-				if (descriptionGroup == null) {
-					descriptionGroup = new RF2DescriptionGroup();
-					descriptionGroup.setParser(this);
-					descriptionGroup.setId(description.getId());
-					if (this.descriptionGroups.containsKey(description.getId())) {
-						throw new RuntimeException(
-								"Error adding description to dictionary");
-					} else {
-						this.descriptionGroups.put(description.getId(),
-								descriptionGroup);
-					}
+	/**
+	 * <p>
+	 * Index the term of every current active description by its concept
+	 * id. Inactive and superseded rows are left out.
+	 * </p>
+	 */
+	private void buildTermIndex() {
+		TermIndex index = new TermIndex(this.descriptionGroups.size());
+		for (RF2DescriptionGroup descriptionGroup : this.descriptionGroups
+				.values()) {
+			RF2Description description = descriptionGroup.getActive();
+			if (description != null) {
+				index.add(description.getTerm(), description.getConceptId());
+			}
+		}
+		this.termIndex = index;
+	}
 
-				}
-				descriptionGroup.addDescription(description);
+	/**
+	 * <p>
+	 * Add description to the group with the same id.
+	 * <i>descriptionGroup</i> is the group of the previous description, which
+	 * is checked first.
+	 * </p>
+	 * 
+	 * @param descriptionGroup
+	 * @param description
+	 * @return Group the description was added to.
+	 */
+	private RF2DescriptionGroup addDescription(
+			RF2DescriptionGroup descriptionGroup, RF2Description description) {
+		/*
+		 * Relationships in a common group are usually grouped together,
+		 * so check last relationship to see if it is same group first.
+		 */
+		if ((descriptionGroup != null)
+				&& (descriptionGroup.getId() != description.getId())) {
+			descriptionGroup = null;
+		}
+
+		if ((descriptionGroup == null) && (!this.descriptionGroups
+				.containsKey(description.getId()))) {
+			descriptionGroup = null;
+		} else {
+			descriptionGroup = this.descriptionGroups
+					.get(description.getId());
+		}
+
+		if (descriptionGroup == null) {
+			descriptionGroup = new RF2DescriptionGroup();
+			descriptionGroup.setParser(this);
+			descriptionGroup.setId(description.getId());
+			if (this.descriptionGroups.containsKey(description.getId())) {
+				throw new RuntimeException(
+						"Error adding description to dictionary");
+			} else {
+				this.descriptionGroups.put(description.getId(),
+						descriptionGroup);
 			}
+
 		}
-		FileReader.closeFile();
+		descriptionGroup.addDescription(description);
+		return descriptionGroup;
 	}
 
 	/**
@@ -371,11 +1049,13 @@ public class RF2Parser {
 	 * @param path
 	 */
 	private void fixDescriptions() {
-		for (Entry<Long, RF2DescriptionGroup> kvp : this.descriptionGroups
-				.entrySet()) {
-			RF2DescriptionGroup descriptionGroup = kvp.getValue();
+		for (RF2DescriptionGroup descriptionGroup : this.descriptionGroups
+				.values()) {
 			this.fixDescription(descriptionGroup);
 		}
+		for (RF2ConceptGroup conceptGroup : this.conceptGroups.values()) {
+			conceptGroup.finishDescriptions();
+		}
 	}
 
 	/**
@@ -428,58 +1108,88 @@ public class RF2Parser {
 	 * @param path
 	 */
 	private void loadConcepts(String path) {
-		FileReader reader = new FileReader();
-		reader.openFile(path);
-		String[] parts = reader.readLine().split("[\\t]");
-		if ((parts.length != 5) || (parts[0].compareTo("id") != 0)
-				|| (parts[1].compareTo("effectiveTime") != 0)
-				|| (parts[2].compareTo("active") != 0)
-				|| (parts[3].compareTo("moduleId") != 0)
-				|| (parts[4].compareTo("definitionStatusId") != 0)) {
-			throw new RuntimeException("Invalid header line to concept file");
+		MappedFileReader reader = this.openReader(path);
+		if (this.pool == null) {
+			this.loadConcepts(reader);
+			return;
 		}
+		this.readHeader(reader, conceptHeader, "concept");
 
-		RF2ConceptGroup conceptGroup = null;
-		while (true) {
-			String line = reader.readLine();
-			if (line == null) {
-				break;
+		for (ArrayList<RF2Concept> chunk : this.parseChunks(path, reader,
+				RF2Concept::parse)) {
+			RF2ConceptGroup conceptGroup = null;
+			for (RF2Concept concept : chunk) {
+				conceptGroup = this.addConcept(conceptGroup, concept);
 			}
-			RF2Concept concept = RF2Concept.parse(this, line);
-			if (concept != null) {
-				/*
-				 * Relationships in a common group are usually grouped together,
-				 * so check last relationship to see if it is same group first.
-				 */
-				if ((conceptGroup != null) && (conceptGroup.getId() != concept.getId())) {
-					conceptGroup = null;
-				}
-				if ((conceptGroup == null)
-						&& (!this.conceptGroups.containsKey(concept.getId()))) {
-					conceptGroup = this.conceptGroups.get(concept.getId());
-					conceptGroup = null;
-				} else {
-					conceptGroup = this.conceptGroups.get(concept.getId());
+		}
+	}
+
+	/**
+	 * <p>
+	 * Load raw snomed concept data into memory, reading it sequentially
+	 * from <i>reader</i>. The reader is closed, also if the load fails.
+	 * </p>
+	 * 
+	 * @param reader
+	 */
+	private void loadConcepts(RF2LineReader reader) {
+		try {
+			this.readHeader(reader, conceptHeader, "concept");
+			RF2ConceptGroup conceptGroup = null;
+			while (reader.readLine()) {
+				RF2Concept concept = RF2Concept.parse(this, reader);
+				if (concept != null) {
+					conceptGroup = this.addConcept(conceptGroup, concept);
 				}
+			}
+		} finally {
+			reader.closeFile();
+		}
+	}
 
-				if (conceptGroup == null) {
-					conceptGroup = new RF2ConceptGroup();
-					conceptGroup.setParser(this);
-					conceptGroup.setId(concept.getId());
+	/**
+	 * <p>
+	 * Add concept to the group with the same id. <i>conceptGroup</i> is
+	 * the group of the previous concept, which is checked first.
+	 * </p>
+	 * 
+	 * @param conceptGroup
+	 * @param concept
+	 * @return Group the concept was added to.
+	 */
+	private RF2ConceptGroup addConcept(
+			RF2ConceptGroup conceptGroup, RF2Concept concept) {
+		/*
+		 * Relationships in a common group are usually grouped together,
+		 * so check last relationship to see if it is same group first.
+		 */
+		if ((conceptGroup != null) && (conceptGroup.getId() != concept.getId())) {
+			conceptGroup = null;
+		}
+		if ((conceptGroup == null)
+				&& (!this.conceptGroups.containsKey(concept.getId()))) {
+			conceptGroup = this.conceptGroups.get(concept.getId());
+			conceptGroup = null;
+		} else {
+			conceptGroup = this.conceptGroups.get(concept.getId());
+		}
 
-					if (this.conceptGroups.containsKey(concept.getId())) {
-						throw new RuntimeException(
-								"Error adding concept to dictionary");
-					}
-					{
-						this.conceptGroups.put(conceptGroup.getId(), conceptGroup);
-					}
+		if (conceptGroup == null) {
+			conceptGroup = new RF2ConceptGroup();
+			conceptGroup.setParser(this);
+			conceptGroup.setId(concept.getId());
 
-				}
-				conceptGroup.addConcept(concept);
+			if (this.conceptGroups.containsKey(concept.getId())) {
+				throw new RuntimeException(
+						"Error adding concept to dictionary");
+			}
+			{
+				this.conceptGroups.put(conceptGroup.getId(), conceptGroup);
 			}
+
 		}
-		FileReader.closeFile();
+		conceptGroup.addConcept(concept);
+		return conceptGroup;
 	}
 
 	/**
@@ -494,41 +1204,29 @@ public class RF2Parser {
 
 	/**
 	 * <p>
-	 * Find snomed concept with indicated name.
+	 * Find snomed concept with indicated name, among the terms of active
+	 * descriptions. Only available while the rf2 files are loaded.
 	 * </p>
 	 * 
 	 * @param name
 	 * @return
 	 */
 	public final RF2ConceptGroup findSnomedConcept(String name) {
-		name = name.toUpperCase();
-
-		ArrayList<RF2ConceptGroup> retVal = new ArrayList<RF2ConceptGroup>();
-		for (RF2DescriptionGroup descriptionGroup : this.descriptionGroups
-				.values()) {
-			for (RF2Description description : descriptionGroup.getItems()) {
-				if (description == null
-						? null
-						: description.getTerm().trim().toUpperCase()
-								.compareTo(name) == 0) {
-					RF2ConceptGroup cg = this
-							.getConceptGroup(description.getConceptId());
-					if (retVal.contains(cg) == false) {
-						retVal.add(cg);
-					}
-				}
-			}
+		if (this.termIndex == null) {
+			throw new RuntimeException(
+					"Description terms are only indexed while the rf2 files are loaded");
 		}
+		long[] conceptIds = this.termIndex.find(name);
 
-		if (retVal.isEmpty()) {
+		if (conceptIds.length == 0) {
 			throw new RuntimeException("No Snomed CT Concept records found");
 		}
-		if (retVal.size() > 1) {
+		if (conceptIds.length > 1) {
 			throw new RuntimeException(
 					"Multiple Snomed CT Concept records found");
 		}
 
-		return retVal.get(0);
+		return this.getConceptGroup(conceptIds[0]);
 	}
 
 
@@ -264,23 +264,36 @@ public class RF2Relationship extends RF2ItemSingle {
 	 * @return
 	 */
 	public static RF2Relationship Parse(RF2Parser parser, String line) {
-		String[] parts = line.split("[\\t]", -1);
-		if (parts.length != 10) {
+		return Parse(parser, new StringLineReader(line));
+	}
+
+	/**
+	 * <p>
+	 * Parse the current line of a relationship rf2 file.
+	 * </p>
+	 * 
+	 * @param parser
+	 * @param reader
+	 * @return
+	 */
+	public static RF2Relationship Parse(RF2Parser parser,
+			RF2LineReader reader) {
+		if (reader.getFieldCount() != 10) {
 			throw new RuntimeException("Invalid Relationship line");
 		}
 
 		RF2Relationship tempVar = new RF2Relationship();
 		tempVar.setParser(parser);
-		tempVar.setId(Long.parseLong(parts[0]));
-		tempVar.setEffectiveTime(parseEffectiveTime(parts[1]));
-		tempVar.setActive(parseBool(parts[2]));
-		tempVar.setModuleId(Long.parseLong(parts[3]));
-		tempVar.sourceId = Long.parseLong(parts[4]);
-		tempVar.destinationId = Long.parseLong(parts[5]);
-		tempVar.setRelationshipGroup(Integer.parseInt(parts[6]));
-		tempVar.typeId = Long.parseLong(parts[7]);
-		tempVar.setCharacteristicTypeId(Long.parseLong(parts[8]));
-		tempVar.setModifierId(Long.parseLong(parts[9]));
+		tempVar.setId(reader.getLong(0));
+		tempVar.setEffectiveTime(reader.getDate(1));
+		tempVar.setActive(reader.getBool(2));
+		tempVar.setModuleId(reader.getLong(3));
+		tempVar.sourceId = reader.getLong(4);
+		tempVar.destinationId = reader.getLong(5);
+		tempVar.setRelationshipGroup(reader.getInt(6));
+		tempVar.typeId = reader.getLong(7);
+		tempVar.setCharacteristicTypeId(reader.getLong(8));
+		tempVar.setModifierId(reader.getLong(9));
 		return tempVar;
 	}
 
@@ -0,0 +1,95 @@
+package Parser;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <p>
+ * Fork join task that parses one newline aligned byte range of the RF2
+ * relationship file straight into a relationship table, without building
+ * relationship objects.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+public class RF2RelationshipChunkTask
+		extends RecursiveTask<RF2RelationshipTable> {
+	/**
+	 * <p>
+	 * Serialization version.
+	 * </p>
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * <p>
+	 * Parser that the table is created for.
+	 * </p>
+	 */
+	private final RF2Parser parser;
+
+	/**
+	 * <p>
+	 * Path of the RF2 file.
+	 * </p>
+	 */
+	private final String path;
+
+	/**
+	 * <p>
+	 * Start of the range in the file (inclusive).
+	 * </p>
+	 */
+	private final long start;
+
+	/**
+	 * <p>
+	 * End of the range in the file (exclusive).
+	 * </p>
+	 */
+	private final long end;
+
+	/**
+	 * <p>
+	 * Constructor.
+	 * </p>
+	 *
+	 * @param parser
+	 * @param path
+	 * @param start
+	 * @param end
+	 */
+	public RF2RelationshipChunkTask(RF2Parser parser, String path, long start,
+			long end) {
+		this.parser = parser;
+		this.path = path;
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * <p>
+	 * Parse all lines of the range.
+	 * </p>
+	 *
+	 * @return
+	 */
+	@Override
+	protected RF2RelationshipTable compute() {
+		RF2RelationshipTable table = new RF2RelationshipTable(
+				this.parser.isSnapshotReducing(),
+				this.parser.getCurrentDate());
+		MappedFileReader reader = new MappedFileReader();
+		if (!reader.openFile(this.path, this.start, this.end)) {
+			throw new RuntimeException(
+					String.format("Unable to open rf2 file %1$s", this.path));
+		}
+		try {
+			while (reader.readLine()) {
+				table.addRow(reader);
+			}
+		} finally {
+			reader.closeFile();
+		}
+		return table;
+	}
+}
@@ -24,7 +24,7 @@ public class RF2RelationshipGroup extends TRF2ItemGroup<RF2Relationship> {
 	 * @param relationship
 	 */
 	public final void addRelationship(RF2Relationship relationship) {
-		this.items.add(relationship);
+		this.addItem(relationship);
 	}
 
 	/**
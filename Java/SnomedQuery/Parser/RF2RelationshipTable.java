@@ -0,0 +1,692 @@
+package Parser;
+
+import java.util.Arrays;
+
+import SnomedQuery.Collections.LongIntHashMap;
+import SnomedQuery.Collections.RowSort;
+
+/**
+ * <p>
+ * Columnar store of the rows of the RF2 relationship file. Each column is a
+ * primitive array indexed by row, so a relationship costs no object header.
+ * Once loading is finished the rows are sorted by source, type and
+ * destination, so all relationships of a source (and of a source and type)
+ * are a contiguous range of rows. Index arrays give the rows in id order
+ * and in destination order.
+ * </p>
+ * <p>
+ * Module and modifier ids are not kept.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+public class RF2RelationshipTable {
+	/**
+	 * <p>
+	 * Initial row capacity.
+	 * </p>
+	 */
+	private static final int initialCapacity = 1024;
+
+	/**
+	 * <p>
+	 * Number of rows.
+	 * </p>
+	 */
+	private int size;
+
+	/**
+	 * <p>
+	 * Relationship id column.
+	 * </p>
+	 */
+	private long[] ids = new long[initialCapacity];
+
+	/**
+	 * <p>
+	 * Effective time column (packed yyyymmdd).
+	 * </p>
+	 */
+	private int[] effectiveTimes = new int[initialCapacity];
+
+	/**
+	 * <p>
+	 * Active column.
+	 * </p>
+	 */
+	private boolean[] active = new boolean[initialCapacity];
+
+	/**
+	 * <p>
+	 * Source concept id column.
+	 * </p>
+	 */
+	private long[] sourceIds = new long[initialCapacity];
+
+	/**
+	 * <p>
+	 * Destination concept id column.
+	 * </p>
+	 */
+	private long[] destinationIds = new long[initialCapacity];
+
+	/**
+	 * <p>
+	 * Relationship group column.
+	 * </p>
+	 */
+	private int[] relationshipGroups = new int[initialCapacity];
+
+	/**
+	 * <p>
+	 * Relationship type concept id column.
+	 * </p>
+	 */
+	private long[] typeIds = new long[initialCapacity];
+
+	/**
+	 * <p>
+	 * Characteristic type concept id column.
+	 * </p>
+	 */
+	private long[] characteristicTypeIds = new long[initialCapacity];
+
+	/**
+	 * <p>
+	 * True for the row that is current for its relationship id. Set by
+	 * <i>finish</i>.
+	 * </p>
+	 */
+	private boolean[] current;
+
+	/**
+	 * <p>
+	 * Rows ordered by relationship id. Set by <i>finish</i>.
+	 * </p>
+	 */
+	private int[] idIndex;
+
+	/**
+	 * <p>
+	 * Rows ordered by destination id. Set by <i>finish</i>.
+	 * </p>
+	 */
+	private int[] destinationIndex;
+
+	/**
+	 * <p>
+	 * Date (packed yyyymmdd) that rows are current as of.
+	 * </p>
+	 */
+	private final int currentDate;
+
+	/**
+	 * <p>
+	 * If not null, the table is reduced to a snapshot while it is filled and
+	 * this maps each relationship id to the row kept for it.
+	 * </p>
+	 */
+	private LongIntHashMap rowById;
+
+	/**
+	 * <p>
+	 * Constructor.
+	 * </p>
+	 *
+	 * @param snapshotReducing
+	 *            Keep only the current row of each relationship id.
+	 * @param currentDate
+	 *            Date (packed yyyymmdd) that rows are current as of.
+	 */
+	public RF2RelationshipTable(boolean snapshotReducing, int currentDate) {
+		this.currentDate = currentDate;
+		if (snapshotReducing) {
+			this.rowById = new LongIntHashMap();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Gets the number of rows.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public final int size() {
+		return this.size;
+	}
+
+	/**
+	 * <p>
+	 * Add the current line of a relationship rf2 file, decoding the fields
+	 * straight into the columns.
+	 * </p>
+	 *
+	 * @param reader
+	 */
+	public final void addRow(RF2LineReader reader) {
+		if (reader.getFieldCount() != 10) {
+			throw new RuntimeException("Invalid Relationship line");
+		}
+		this.addRow(reader.getLong(0), reader.getDate(1), reader.getBool(2),
+				reader.getLong(4), reader.getLong(5), reader.getInt(6),
+				reader.getLong(7), reader.getLong(8));
+	}
+
+	/**
+	 * <p>
+	 * Add a row. When reducing to a snapshot, a row that is superseded by
+	 * the row already kept for its id is dropped, and a row that supersedes
+	 * it overwrites it.
+	 * </p>
+	 *
+	 * @param id
+	 * @param effectiveTime
+	 * @param isActive
+	 * @param sourceId
+	 * @param destinationId
+	 * @param relationshipGroup
+	 * @param typeId
+	 * @param characteristicTypeId
+	 */
+	public final void addRow(long id, int effectiveTime, boolean isActive,
+			long sourceId, long destinationId, int relationshipGroup,
+			long typeId, long characteristicTypeId) {
+		int row;
+		if (this.rowById == null) {
+			row = this.appendRow();
+		} else {
+			if (effectiveTime > this.currentDate) {
+				return;
+			}
+			int kept = this.rowById.get(id, -1);
+			if (kept < 0) {
+				row = this.appendRow();
+				this.rowById.put(id, row);
+			} else if (effectiveTime >= this.effectiveTimes[kept]) {
+				row = kept;
+			} else {
+				return;
+			}
+		}
+		this.ids[row] = id;
+		this.effectiveTimes[row] = effectiveTime;
+		this.active[row] = isActive;
+		this.sourceIds[row] = sourceId;
+		this.destinationIds[row] = destinationId;
+		this.relationshipGroups[row] = relationshipGroup;
+		this.typeIds[row] = typeId;
+		this.characteristicTypeIds[row] = characteristicTypeId;
+	}
+
+	/**
+	 * <p>
+	 * Add all rows of <i>other</i>, in order.
+	 * </p>
+	 *
+	 * @param other
+	 */
+	public final void addAll(RF2RelationshipTable other) {
+		for (int row = 0; row < other.size; row++) {
+			this.addRow(other.ids[row], other.effectiveTimes[row],
+					other.active[row], other.sourceIds[row],
+					other.destinationIds[row], other.relationshipGroups[row],
+					other.typeIds[row], other.characteristicTypeIds[row]);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Reserve a new row at the end of the table, growing the columns if
+	 * needed.
+	 * </p>
+	 *
+	 * @return Index of the new row.
+	 */
+	private int appendRow() {
+		if (this.size == this.ids.length) {
+			this.resize(this.size + (this.size >> 1) + 1);
+		}
+		return this.size++;
+	}
+
+	/**
+	 * <p>
+	 * Resize all columns to <i>capacity</i> rows.
+	 * </p>
+	 *
+	 * @param capacity
+	 */
+	private void resize(int capacity) {
+		this.ids = Arrays.copyOf(this.ids, capacity);
+		this.effectiveTimes = Arrays.copyOf(this.effectiveTimes,
+				capacity);
+		this.active = Arrays.copyOf(this.active, capacity);
+		this.sourceIds = Arrays.copyOf(this.sourceIds, capacity);
+		this.destinationIds = Arrays.copyOf(this.destinationIds,
+				capacity);
+		this.relationshipGroups = Arrays
+				.copyOf(this.relationshipGroups, capacity);
+		this.typeIds = Arrays.copyOf(this.typeIds, capacity);
+		this.characteristicTypeIds = Arrays
+				.copyOf(this.characteristicTypeIds, capacity);
+	}
+
+	/**
+	 * <p>
+	 * Finish loading. Marks the current row of each relationship id, sorts
+	 * the rows by source, type and destination, and builds the id and
+	 * destination indexes.
+	 * </p>
+	 */
+	public final void finish() {
+		this.resize(this.size);
+		this.rowById = null;
+
+		// Find current rows while rows are still in file order, so that of
+		// two rows with the same effective time the one read last wins.
+		boolean[] isCurrent = new boolean[this.size];
+		int[] byId = RowSort.sortRows(this.size, (a, b) -> {
+			int retVal = Long.compare(this.ids[a], this.ids[b]);
+			if (retVal == 0) {
+				retVal = Integer.compare(this.effectiveTimes[a],
+						this.effectiveTimes[b]);
+			}
+			return retVal;
+		});
+		int start = 0;
+		while (start < this.size) {
+			int end = start + 1;
+			while ((end < this.size)
+					&& (this.ids[byId[end]] == this.ids[byId[start]])) {
+				end += 1;
+			}
+			for (int i = end - 1; i >= start; i--) {
+				if (this.effectiveTimes[byId[i]] <= this.currentDate) {
+					isCurrent[byId[i]] = true;
+					break;
+				}
+			}
+			start = end;
+		}
+		this.current = isCurrent;
+
+		int[] order = RowSort.sortRows(this.size, (a, b) -> {
+			int retVal = Long.compare(this.sourceIds[a], this.sourceIds[b]);
+			if (retVal == 0) {
+				retVal = Long.compare(this.typeIds[a], this.typeIds[b]);
+			}
+			if (retVal == 0) {
+				retVal = Long.compare(this.destinationIds[a],
+						this.destinationIds[b]);
+			}
+			return retVal;
+		});
+		this.permute(order);
+
+		this.idIndex = RowSort.sortRows(this.size,
+				(a, b) -> Long.compare(this.ids[a], this.ids[b]));
+		this.destinationIndex = RowSort.sortRows(this.size, (a, b) -> Long
+				.compare(this.destinationIds[a], this.destinationIds[b]));
+	}
+
+	/**
+	 * <p>
+	 * Reorder all columns so that new row i is old row order[i].
+	 * </p>
+	 *
+	 * @param order
+	 */
+	private void permute(int[] order) {
+		long[] newIds = new long[this.size];
+		int[] newEffectiveTimes = new int[this.size];
+		boolean[] newActive = new boolean[this.size];
+		boolean[] newCurrent = new boolean[this.size];
+		long[] newSourceIds = new long[this.size];
+		long[] newDestinationIds = new long[this.size];
+		int[] newRelationshipGroups = new int[this.size];
+		long[] newTypeIds = new long[this.size];
+		long[] newCharacteristicTypeIds = new long[this.size];
+		for (int i = 0; i < this.size; i++) {
+			int row = order[i];
+			newIds[i] = this.ids[row];
+			newEffectiveTimes[i] = this.effectiveTimes[row];
+			newActive[i] = this.active[row];
+			newCurrent[i] = this.current[row];
+			newSourceIds[i] = this.sourceIds[row];
+			newDestinationIds[i] = this.destinationIds[row];
+			newRelationshipGroups[i] = this.relationshipGroups[row];
+			newTypeIds[i] = this.typeIds[row];
+			newCharacteristicTypeIds[i] = this.characteristicTypeIds[row];
+		}
+		this.ids = newIds;
+		this.effectiveTimes = newEffectiveTimes;
+		this.active = newActive;
+		this.current = newCurrent;
+		this.sourceIds = newSourceIds;
+		this.destinationIds = newDestinationIds;
+		this.relationshipGroups = newRelationshipGroups;
+		this.typeIds = newTypeIds;
+		this.characteristicTypeIds = newCharacteristicTypeIds;
+	}
+
+	/**
+	 * <p>
+	 * Gets the relationship id of a row.
+	 * </p>
+	 *
+	 * @param row
+	 * @return
+	 */
+	public final long getId(int row) {
+		return this.ids[row];
+	}
+
+	/**
+	 * <p>
+	 * Gets the effective time (packed yyyymmdd) of a row.
+	 * </p>
+	 *
+	 * @param row
+	 * @return
+	 */
+	public final int getEffectiveTime(int row) {
+		return this.effectiveTimes[row];
+	}
+
+	/**
+	 * <p>
+	 * Gets the active flag of a row.
+	 * </p>
+	 *
+	 * @param row
+	 * @return
+	 */
+	public final boolean isActive(int row) {
+		return this.active[row];
+	}
+
+	/**
+	 * <p>
+	 * Return true if row is the current row of its relationship id and is
+	 * active. This is the row getActive() of the relationship group returns.
+	 * </p>
+	 *
+	 * @param row
+	 * @return
+	 */
+	public final boolean isCurrentActive(int row) {
+		return this.current[row] && this.active[row];
+	}
+
+	/**
+	 * <p>
+	 * Gets the source concept id of a row.
+	 * </p>
+	 *
+	 * @param row
+	 * @return
+	 */
+	public final long getSourceId(int row) {
+		return this.sourceIds[row];
+	}
+
+	/**
+	 * <p>
+	 * Gets the destination concept id of a row.
+	 * </p>
+	 *
+	 * @param row
+	 * @return
+	 */
+	public final long getDestinationId(int row) {
+		return this.destinationIds[row];
+	}
+
+	/**
+	 * <p>
+	 * Gets the relationship group of a row.
+	 * </p>
+	 *
+	 * @param row
+	 * @return
+	 */
+	public final int getRelationshipGroup(int row) {
+		return this.relationshipGroups[row];
+	}
+
+	/**
+	 * <p>
+	 * Gets the type concept id of a row.
+	 * </p>
+	 *
+	 * @param row
+	 * @return
+	 */
+	public final long getTypeId(int row) {
+		return this.typeIds[row];
+	}
+
+	/**
+	 * <p>
+	 * Gets the characteristic type concept id of a row.
+	 * </p>
+	 *
+	 * @param row
+	 * @return
+	 */
+	public final long getCharacteristicTypeId(int row) {
+		return this.characteristicTypeIds[row];
+	}
+
+	/**
+	 * <p>
+	 * Return first row with source id not less than <i>sourceId</i> and, for
+	 * that source, type id not less than <i>typeId</i>.
+	 * </p>
+	 *
+	 * @param sourceId
+	 * @param typeId
+	 * @return
+	 */
+	public final int findSourceStart(long sourceId, long typeId) {
+		int low = 0;
+		int high = this.size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if ((this.sourceIds[middle] < sourceId)
+					|| ((this.sourceIds[middle] == sourceId)
+							&& (this.typeIds[middle] < typeId))) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * <p>
+	 * Return first row of the relationships of <i>sourceId</i>.
+	 * </p>
+	 *
+	 * @param sourceId
+	 * @return
+	 */
+	public final int findSourceStart(long sourceId) {
+		return this.findSourceStart(sourceId, Long.MIN_VALUE);
+	}
+
+	/**
+	 * <p>
+	 * Return the row after the last relationship of <i>sourceId</i>.
+	 * </p>
+	 *
+	 * @param sourceId
+	 * @return
+	 */
+	public final int findSourceEnd(long sourceId) {
+		if (sourceId == Long.MAX_VALUE) {
+			return this.size;
+		}
+		return this.findSourceStart(sourceId + 1, Long.MIN_VALUE);
+	}
+
+	/**
+	 * <p>
+	 * Return the row after the last relationship of <i>sourceId</i> with
+	 * type <i>typeId</i>.
+	 * </p>
+	 *
+	 * @param sourceId
+	 * @param typeId
+	 * @return
+	 */
+	public final int findSourceEnd(long sourceId, long typeId) {
+		if (typeId == Long.MAX_VALUE) {
+			return this.findSourceEnd(sourceId);
+		}
+		return this.findSourceStart(sourceId, typeId + 1);
+	}
+
+	/**
+	 * <p>
+	 * Gets the rows ordered by destination id.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public final int[] getDestinationIndex() {
+		return this.destinationIndex;
+	}
+
+	/**
+	 * <p>
+	 * Return the position in <i>index</i> of the first row whose key (as
+	 * returned by <i>column</i>) is not less than <i>key</i>.
+	 * </p>
+	 *
+	 * @param index
+	 * @param column
+	 * @param key
+	 * @return
+	 */
+	private int lowerBound(int[] index, long[] column, long key) {
+		int low = 0;
+		int high = index.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (column[index[middle]] < key) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * <p>
+	 * Return the position in the destination index of the first row with
+	 * destination <i>destinationId</i>.
+	 * </p>
+	 *
+	 * @param destinationId
+	 * @return
+	 */
+	public final int findDestinationStart(long destinationId) {
+		return this.lowerBound(this.destinationIndex, this.destinationIds,
+				destinationId);
+	}
+
+	/**
+	 * <p>
+	 * Return the position in the destination index after the last row with
+	 * destination <i>destinationId</i>.
+	 * </p>
+	 *
+	 * @param destinationId
+	 * @return
+	 */
+	public final int findDestinationEnd(long destinationId) {
+		if (destinationId == Long.MAX_VALUE) {
+			return this.size;
+		}
+		return this.lowerBound(this.destinationIndex, this.destinationIds,
+				destinationId + 1);
+	}
+
+	/**
+	 * <p>
+	 * Return true if there is a row with relationship id <i>id</i>.
+	 * </p>
+	 *
+	 * @param id
+	 * @return
+	 */
+	public final boolean containsId(long id) {
+		int position = this.lowerBound(this.idIndex, this.ids, id);
+		return (position < this.size)
+				&& (this.ids[this.idIndex[position]] == id);
+	}
+
+	/**
+	 * <p>
+	 * Build an RF2Relationship object from a row.
+	 * </p>
+	 *
+	 * @param parser
+	 * @param row
+	 * @return
+	 */
+	public final RF2Relationship createRelationship(RF2Parser parser,
+			int row) {
+		RF2Relationship tempVar = new RF2Relationship();
+		tempVar.setParser(parser);
+		tempVar.setId(this.ids[row]);
+		tempVar.setEffectiveTime(this.effectiveTimes[row]);
+		tempVar.setActive(this.active[row]);
+		tempVar.setSourceId(this.sourceIds[row]);
+		tempVar.setDestinationId(this.destinationIds[row]);
+		tempVar.setRelationshipGroup(this.relationshipGroups[row]);
+		tempVar.setTypeId(this.typeIds[row]);
+		tempVar.setCharacteristicTypeId(this.characteristicTypeIds[row]);
+		return tempVar;
+	}
+
+	/**
+	 * <p>
+	 * Build an RF2RelationshipGroup holding all rows of relationship id
+	 * <i>id</i>, in effective time order. Returns null if there are no rows
+	 * with that id.
+	 * </p>
+	 *
+	 * @param parser
+	 * @param id
+	 * @return
+	 */
+	public final RF2RelationshipGroup createGroup(RF2Parser parser,
+			long id) {
+		int position = this.lowerBound(this.idIndex, this.ids, id);
+		if (!this.containsId(id)) {
+			return null;
+		}
+		int end = position;
+		while ((end < this.size) && (this.ids[this.idIndex[end]] == id)) {
+			end += 1;
+		}
+		int[] rows = new int[end - position];
+		System.arraycopy(this.idIndex, position, rows, 0, rows.length);
+		int[] order = RowSort.sortRows(rows.length,
+				(a, b) -> Integer.compare(this.effectiveTimes[rows[a]],
+						this.effectiveTimes[rows[b]]));
+
+		RF2RelationshipGroup group = new RF2RelationshipGroup();
+		group.setParser(parser);
+		group.setId(id);
+		for (int i : order) {
+			group.addRelationship(this.createRelationship(parser, rows[i]));
+		}
+		return group;
+	}
+}
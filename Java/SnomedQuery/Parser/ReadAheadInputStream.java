@@ -0,0 +1,296 @@
+package Parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * <p>
+ * Input stream that reads its source on a separate thread, a few blocks
+ * ahead of the consumer. Used to overlap decompression of zip entries with
+ * parsing. Blocks are recycled, so reading allocates nothing once the
+ * stream is running.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+public class ReadAheadInputStream extends InputStream {
+	/**
+	 * <p>
+	 * Default size in bytes of each block.
+	 * </p>
+	 */
+	public static final int defaultBlockSize = 1024 * 1024;
+
+	/**
+	 * <p>
+	 * Default number of blocks read ahead.
+	 * </p>
+	 */
+	public static final int defaultBlockCount = 4;
+
+	/**
+	 * <p>
+	 * Block of read data.
+	 * </p>
+	 */
+	private static final class Block {
+		/**
+		 * <p>
+		 * Data of block.
+		 * </p>
+		 */
+		private final byte[] data;
+
+		/**
+		 * <p>
+		 * Number of bytes of <i>data</i> in use. -1 marks the end of the
+		 * source.
+		 * </p>
+		 */
+		private int length;
+
+		/**
+		 * <p>
+		 * Constructor.
+		 * </p>
+		 *
+		 * @param size
+		 */
+		private Block(int size) {
+			this.data = new byte[size];
+		}
+	}
+
+	/**
+	 * <p>
+	 * Stream read on the read ahead thread.
+	 * </p>
+	 */
+	private final InputStream source;
+
+	/**
+	 * <p>
+	 * Blocks filled by the read ahead thread, in stream order.
+	 * </p>
+	 */
+	private final BlockingQueue<Block> filled;
+
+	/**
+	 * <p>
+	 * Blocks returned by the consumer for reuse.
+	 * </p>
+	 */
+	private final BlockingQueue<Block> free;
+
+	/**
+	 * <p>
+	 * Thread reading <i>source</i>.
+	 * </p>
+	 */
+	private final Thread readThread;
+
+	/**
+	 * <p>
+	 * Failure of the read ahead thread, rethrown to the consumer.
+	 * </p>
+	 */
+	private volatile IOException failure;
+
+	/**
+	 * <p>
+	 * Block being consumed, null before the first read.
+	 * </p>
+	 */
+	private Block current;
+
+	/**
+	 * <p>
+	 * Offset into <i>current</i> of the next byte to consume.
+	 * </p>
+	 */
+	private int position;
+
+	/**
+	 * <p>
+	 * Constructor.
+	 * </p>
+	 *
+	 * @param source
+	 * @param name
+	 *            Name of the read ahead thread.
+	 */
+	public ReadAheadInputStream(InputStream source, String name) {
+		this(source, name, defaultBlockSize, defaultBlockCount);
+	}
+
+	/**
+	 * <p>
+	 * Constructor. Starts reading <i>source</i>.
+	 * </p>
+	 *
+	 * @param source
+	 * @param name
+	 *            Name of the read ahead thread.
+	 * @param blockSize
+	 *            Size in bytes of each block.
+	 * @param blockCount
+	 *            Number of blocks read ahead.
+	 */
+	public ReadAheadInputStream(InputStream source, String name,
+			int blockSize, int blockCount) {
+		this.source = source;
+		this.filled = new ArrayBlockingQueue<Block>(blockCount + 1);
+		this.free = new ArrayBlockingQueue<Block>(blockCount + 1);
+		for (int i = 0; i < blockCount; i++) {
+			this.free.add(new Block(blockSize));
+		}
+		this.readThread = new Thread(this::readAhead, name);
+		this.readThread.setDaemon(true);
+		this.readThread.start();
+	}
+
+	/**
+	 * <p>
+	 * Body of the read ahead thread.
+	 * </p>
+	 */
+	private void readAhead() {
+		try {
+			while (true) {
+				Block block = this.free.take();
+				block.length = fill(this.source, block.data);
+				this.filled.put(block);
+				if (block.length < 0) {
+					return;
+				}
+			}
+		} catch (IOException e) {
+			this.failure = e;
+		} catch (InterruptedException e) {
+			return;
+		}
+		// Wake the consumer, which rethrows the failure.
+		Block end = new Block(0);
+		end.length = -1;
+		this.filled.offer(end);
+	}
+
+	/**
+	 * <p>
+	 * Read from <i>source</i> until <i>data</i> is full or the source ends.
+	 * </p>
+	 *
+	 * @param source
+	 * @param data
+	 * @return Number of bytes read, -1 at the end of the source.
+	 * @throws IOException
+	 */
+	private static int fill(InputStream source, byte[] data)
+			throws IOException {
+		int length = 0;
+		while (length < data.length) {
+			int read = source.read(data, length, data.length - length);
+			if (read < 0) {
+				break;
+			}
+			length += read;
+		}
+		return (length == 0) ? -1 : length;
+	}
+
+	/**
+	 * <p>
+	 * Make sure <i>current</i> has bytes left to consume.
+	 * </p>
+	 *
+	 * @return false at the end of the stream.
+	 * @throws IOException
+	 */
+	private boolean advance() throws IOException {
+		if ((this.current != null) && (this.current.length < 0)) {
+			return false;
+		}
+		while ((this.current == null)
+				|| (this.position >= this.current.length)) {
+			if (this.current != null) {
+				this.free.offer(this.current);
+			}
+			try {
+				this.current = this.filled.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			}
+			this.position = 0;
+			if (this.current.length < 0) {
+				if (this.failure != null) {
+					throw this.failure;
+				}
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * <p>
+	 * Read one byte.
+	 * </p>
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	@Override
+	public int read() throws IOException {
+		if (!this.advance()) {
+			return -1;
+		}
+		return this.current.data[this.position++] & 0xFF;
+	}
+
+	/**
+	 * <p>
+	 * Read up to <i>length</i> bytes into <i>data</i>.
+	 * </p>
+	 *
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @return
+	 * @throws IOException
+	 */
+	@Override
+	public int read(byte[] data, int offset, int length) throws IOException {
+		if (length == 0) {
+			return 0;
+		}
+		if (!this.advance()) {
+			return -1;
+		}
+		int count = Math.min(length, this.current.length - this.position);
+		System.arraycopy(this.current.data, this.position, data, offset,
+				count);
+		this.position += count;
+		return count;
+	}
+
+	/**
+	 * <p>
+	 * Stop the read ahead thread and close the source.
+	 * </p>
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException {
+		this.readThread.interrupt();
+		try {
+			this.readThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		this.source.close();
+	}
+}
@@ -0,0 +1,738 @@
+package Parser;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import SnomedQuery.Collections.LongObjectHashMap;
+import SnomedQuery.Model.AttributeRelationshipStore;
+import SnomedQuery.Model.InputFingerprint;
+import SnomedQuery.Model.SnomedModelManager;
+import SnomedQuery.Model.SnomedQueryConcept;
+
+/**
+ * <p>
+ * Applies the rows of RF2 Delta release files to the serialized model, so
+ * that a monthly or extension update does not need a full parse of the Full
+ * release.
+ * </p>
+ * <p>
+ * Rows are applied with the same rules the full parse uses to build concept
+ * records: inactive concepts are dropped, only the current, active row of
+ * each description is kept, synonyms and IsA links are kept in id order,
+ * attribute relationships are kept only between concepts of the model, the
+ * preferred term is the lowest id synonym that is preferred in the US
+ * English language refset, and module and definition status names are the
+ * fully specified names of their concepts.
+ * </p>
+ * <p>
+ * A delta that needs rows it does not hold to match the full parse, such
+ * as a concept reactivated with its unchanged descriptions and
+ * relationships, or a new concept without an active fully specified name,
+ * is rejected and the full parse has to be re-run.
+ * </p>
+ * 
+ * @author Travis Lukach
+ */
+public class SnomedDeltaParser {
+	/**
+	 * <p>
+	 * Snomed Query Model Manager holding the model being updated.
+	 * </p>
+	 */
+	private SnomedModelManager modelManager;
+
+	/**
+	 * <p>
+	 * Ids of the descriptions each concept record was built from.
+	 * </p>
+	 */
+	private DescriptionIdMap descriptionIds;
+
+	/**
+	 * <p>
+	 * Parser the delta rows are parsed with.
+	 * </p>
+	 */
+	private RF2Parser rf2Parser;
+
+	/**
+	 * <p>
+	 * Fully specified names changed by the delta, old name to new name. Used
+	 * to rename module and definition status names of unchanged concepts.
+	 * </p>
+	 */
+	private HashMap<String, String> renamed;
+
+	/**
+	 * <p>
+	 * Constructor.
+	 * </p>
+	 * 
+	 * @param baseDir
+	 *            Base directory of the serialized model.
+	 */
+	public SnomedDeltaParser(String baseDir) {
+		this.modelManager = new SnomedModelManager(baseDir);
+	}
+
+	/**
+	 * <p>
+	 * Apply the concept, relationship and description Delta files found in
+	 * <i>deltaDir</i> (a release's Delta/Terminology directory). The language
+	 * refset Delta file is applied too if it is found in <i>deltaDir</i> or
+	 * in the release's Delta/Refset/Language directory.
+	 * </p>
+	 * 
+	 * @param deltaDir
+	 */
+	public final void applyDeltaDirectory(String deltaDir) {
+		String languagePath = findOptionalFile(deltaDir,
+				"der2_cRefset_LanguageDelta");
+		if (languagePath == null) {
+			languagePath = findOptionalFile(FileReader.comboPaths(
+					new String[]{deltaDir, "..", "Refset", "Language"}),
+					"der2_cRefset_LanguageDelta");
+		}
+		this.applyDelta(findFile(deltaDir, "sct2_Concept_Delta"),
+				findFile(deltaDir, "sct2_Relationship_Delta"),
+				findFile(deltaDir, "sct2_Description_Delta"), languagePath);
+	}
+
+	/**
+	 * <p>
+	 * Return path of the file in <i>dir</i> whose name starts with
+	 * <i>prefix</i>.
+	 * </p>
+	 * 
+	 * @param dir
+	 * @param prefix
+	 * @return
+	 */
+	private static String findFile(String dir, String prefix) {
+		File[] files = new File(dir)
+				.listFiles((d, name) -> name.startsWith(prefix));
+		if ((files == null) || (files.length == 0)) {
+			throw new RuntimeException(String
+					.format("No %1$s file found in %2$s", prefix, dir));
+		}
+		if (files.length > 1) {
+			throw new RuntimeException(String.format(
+					"Multiple %1$s files found in %2$s", prefix, dir));
+		}
+		return files[0].getPath();
+	}
+
+	/**
+	 * <p>
+	 * Return path of the file in <i>dir</i> whose name starts with
+	 * <i>prefix</i>, or null if there is none.
+	 * </p>
+	 * 
+	 * @param dir
+	 * @param prefix
+	 * @return
+	 */
+	private static String findOptionalFile(String dir, String prefix) {
+		File[] files = new File(dir)
+				.listFiles((d, name) -> name.startsWith(prefix));
+		if ((files == null) || (files.length == 0)) {
+			return null;
+		}
+		return findFile(dir, prefix);
+	}
+
+	/**
+	 * <p>
+	 * Load the serialized model, apply the delta files and serialize the
+	 * updated model.
+	 * </p>
+	 * 
+	 * @param conceptPath
+	 * @param relationshipPath
+	 * @param descriptionPath
+	 */
+	public final void applyDelta(String conceptPath, String relationshipPath,
+			String descriptionPath) {
+		this.applyDelta(conceptPath, relationshipPath, descriptionPath, null);
+	}
+
+	/**
+	 * <p>
+	 * Load the serialized model, apply the delta files and serialize the
+	 * updated model.
+	 * </p>
+	 * 
+	 * @param conceptPath
+	 * @param relationshipPath
+	 * @param descriptionPath
+	 * @param languagePath
+	 *            Language refset delta file, or null for none.
+	 */
+	public final void applyDelta(String conceptPath, String relationshipPath,
+			String descriptionPath, String languagePath) {
+		long start = System.currentTimeMillis();
+		this.modelManager.loadRecords();
+		if (this.modelManager.getConceptCount() == 0) {
+			throw new RuntimeException(String.format(
+					"No serialized model found in %1$s, run the full parse first",
+					this.modelManager.getParsedRecordsDir()));
+		}
+		String descriptionIdPath = FileReader.comboPaths(new String[]{
+				this.modelManager.getParsedRecordsDir(),
+				DescriptionIdMap.fileName});
+		this.descriptionIds = DescriptionIdMap.read(descriptionIdPath);
+		this.rf2Parser = new RF2Parser();
+		this.rf2Parser.startParse();
+		this.renamed = new HashMap<String, String>();
+		System.out.println(String.format("Loaded model in %1$s ms",
+				System.currentTimeMillis() - start));
+
+		start = System.currentTimeMillis();
+		LongObjectHashMap<RF2Concept> concepts = this.readDelta(conceptPath,
+				RF2Parser.conceptHeader, "concept", RF2Concept::parse);
+		LongObjectHashMap<RF2Relationship> relationships = this.readDelta(
+				relationshipPath, RF2Parser.relationshipHeader,
+				"relationship", RF2Relationship::Parse);
+		LongObjectHashMap<RF2Description> descriptions = this.readDelta(
+				descriptionPath, RF2Parser.descriptionHeader, "description",
+				RF2Description::parse);
+
+		RF2LanguageRefset language = null;
+		if (languagePath != null) {
+			language = new RF2LanguageRefset(
+					RF2LanguageRefset.usEnglishRefsetId,
+					this.rf2Parser.getCurrentDate());
+			language.load(languagePath);
+		}
+
+		ArrayList<SnomedQueryConcept> added = this.applyConcepts(concepts);
+		this.applyDescriptions(descriptions, added);
+		if (language != null) {
+			this.applyLanguage(language);
+		}
+		this.applyRelationships(relationships);
+		this.applyNames(concepts);
+		// Attributes of dropped concepts go with them, as in the full parse.
+		this.modelManager.getAttributeRelationships().retainConcepts(
+				conceptId -> this.modelManager.getConceptById(conceptId) != null);
+		this.modelManager.conceptsChanged();
+		System.out.println(String.format(
+				"Applied %1$s concept, %2$s description and %3$s relationship rows in %4$s ms",
+				concepts.size(), descriptions.size(), relationships.size(),
+				System.currentTimeMillis() - start));
+
+		// The model no longer matches the Full release it was parsed from.
+		this.modelManager.setInputFingerprints(new InputFingerprint[0]);
+		this.modelManager.invalidate();
+		this.descriptionIds.write(descriptionIdPath);
+		this.modelManager.serialize();
+		this.rf2Parser = null;
+		this.renamed = null;
+	}
+
+	/**
+	 * <p>
+	 * Read a delta file, keeping the current row of each id.
+	 * </p>
+	 * 
+	 * @param path
+	 * @param header
+	 * @param kind
+	 * @param lineParser
+	 * @return
+	 */
+	private <T extends RF2ItemSingle> LongObjectHashMap<T> readDelta(
+			String path, String[] header, String kind,
+			RF2LineParser<T> lineParser) {
+		MappedFileReader reader = new MappedFileReader();
+		if (!reader.openFile(path)) {
+			throw new RuntimeException(
+					String.format("Unable to open rf2 file %1$s", path));
+		}
+		try {
+			if (!reader.readLine() || !reader.isHeader(header)) {
+				throw new RuntimeException(String
+						.format("Invalid header line to %1$s file", kind));
+			}
+			LongObjectHashMap<T> retVal = new LongObjectHashMap<T>();
+			int currentDate = this.rf2Parser.getCurrentDate();
+			while (reader.readLine()) {
+				T item = lineParser.parse(this.rf2Parser, reader);
+				if ((item != null) && TRF2ItemGroup.supersedes(item,
+						retVal.get(item.getId()), currentDate)) {
+					retVal.put(item.getId(), item);
+				}
+			}
+			return retVal;
+		} finally {
+			reader.closeFile();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Return concept of the model with indicated id.
+	 * </p>
+	 * 
+	 * @param conceptId
+	 * @return
+	 */
+	private SnomedQueryConcept getConcept(long conceptId) {
+		SnomedQueryConcept concept = this.modelManager
+				.getConceptById(conceptId);
+		if (concept == null) {
+			throw new RuntimeException(String
+					.format("Concept %1$s not found in dictionary", conceptId));
+		}
+		return concept;
+	}
+
+	/**
+	 * <p>
+	 * Add new concepts, drop inactivated ones and update the effective time
+	 * of changed ones. Names are set once descriptions have been applied.
+	 * Reactivated concepts are rejected: their unchanged descriptions and
+	 * relationships are not in the delta.
+	 * </p>
+	 * 
+	 * @param concepts
+	 * @return The new concepts.
+	 */
+	private ArrayList<SnomedQueryConcept> applyConcepts(
+			LongObjectHashMap<RF2Concept> concepts) {
+		ArrayList<SnomedQueryConcept> retVal = new ArrayList<SnomedQueryConcept>();
+		for (RF2Concept rf2Concept : concepts.values()) {
+			SnomedQueryConcept concept = this.modelManager
+					.getConceptById(rf2Concept.getId());
+			if (!rf2Concept.isActive()) {
+				this.modelManager.remove(rf2Concept.getId());
+				this.descriptionIds.remove(rf2Concept.getId());
+				this.descriptionIds.addInactive(rf2Concept.getId());
+			} else if (this.descriptionIds.isInactive(rf2Concept.getId())) {
+				throw new RuntimeException(String.format(
+						"Concept %1$s is reactivated by the delta, re-run the full parse",
+						rf2Concept.getId()));
+			} else if (concept == null) {
+				concept = new SnomedQueryConcept(rf2Concept.getId(), "",
+						new String[0], "", "", rf2Concept.getEffectiveTime());
+				try {
+					this.modelManager.add(concept);
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+				this.descriptionIds.put(rf2Concept.getId(), new long[]{-1});
+				retVal.add(concept);
+			} else {
+				concept.setConceptEffectiveDate(rf2Concept.getEffectiveTime());
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Apply fully specified name and synonym rows. As in the full parse only
+	 * active descriptions are kept. Inactivations are applied first, so a
+	 * fully specified name replaced in the same delta is renamed. A fully
+	 * specified name inactivated without a replacement is rejected, as the
+	 * full parse would fall back to a name the delta does not hold, and so
+	 * is a new concept without an active one. Rows of concepts that are not
+	 * in the model are skipped, as the full parse does for inactive
+	 * concepts.
+	 * </p>
+	 * 
+	 * @param descriptions
+	 * @param added
+	 *            Concepts that are new in the delta.
+	 */
+	private void applyDescriptions(
+			LongObjectHashMap<RF2Description> descriptions,
+			ArrayList<SnomedQueryConcept> added) {
+		ArrayList<RF2Description> active = new ArrayList<RF2Description>();
+		ArrayList<SnomedQueryConcept> unnamed = new ArrayList<SnomedQueryConcept>();
+		for (RF2Description description : descriptions.values()) {
+			SnomedQueryConcept concept = this.modelManager
+					.getConceptById(description.getConceptId());
+			if ((concept == null)
+					|| ((description.getTypeId() != RF2Parser.fullySpecifiedNameConceptId)
+							&& (description.getTypeId() != RF2Parser.synonymTypeId))) {
+				continue;
+			}
+			if (description.isActive()) {
+				active.add(description);
+				continue;
+			}
+			long[] ids = this.getDescriptionIds(concept);
+			if (ids[0] == description.getId()) {
+				ids[0] = -1;
+				unnamed.add(concept);
+			} else {
+				this.removeSynonym(concept, ids, description.getId());
+			}
+		}
+		for (RF2Description description : active) {
+			SnomedQueryConcept concept = this
+					.getConcept(description.getConceptId());
+			long[] ids = this.getDescriptionIds(concept);
+			if (description.getTypeId() == RF2Parser.fullySpecifiedNameConceptId) {
+				this.applyFullySpecifiedName(concept, ids, description);
+			} else {
+				this.applySynonym(concept, ids, description);
+			}
+		}
+		for (SnomedQueryConcept concept : unnamed) {
+			if (this.getDescriptionIds(concept)[0] == -1) {
+				throw new RuntimeException(String.format(
+						"Fully specified name of concept %1$s is inactivated without a replacement, re-run the full parse",
+						concept.getConceptId()));
+			}
+		}
+		for (SnomedQueryConcept concept : added) {
+			if (this.getDescriptionIds(concept)[0] == -1) {
+				throw new RuntimeException(String.format(
+						"Concept %1$s is added by the delta without an active fully specified name, re-run the full parse",
+						concept.getConceptId()));
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Apply an active fully specified name row. As in the full parse, an
+	 * english fully specified name is preferred to any other; among names
+	 * of the same kind the lowest description id is used.
+	 * </p>
+	 * 
+	 * @param concept
+	 * @param ids
+	 * @param description
+	 */
+	private void applyFullySpecifiedName(SnomedQueryConcept concept,
+			long[] ids, RF2Description description) {
+		boolean english = description.getLanguageCode()
+				.equals(RF2Description.englishLanguageCode);
+		if ((ids[0] != -1) && (ids[0] != description.getId())) {
+			boolean currentEnglish = this.descriptionIds
+					.isEnglishName(concept.getConceptId());
+			if ((currentEnglish && !english) || ((currentEnglish == english)
+					&& (description.getId() > ids[0]))) {
+				return;
+			}
+		}
+		ids[0] = description.getId();
+		this.descriptionIds.setEnglishName(concept.getConceptId(), english);
+		String oldName = concept.getConceptFullyQualifiedName();
+		if (!oldName.isEmpty() && !oldName.equals(description.getTerm())) {
+			this.renamed.put(oldName, description.getTerm());
+		}
+		concept.setConceptFullyQualifiedName(description.getTerm());
+	}
+
+	/**
+	 * <p>
+	 * Apply an active synonym row, replacing the term of the same
+	 * description or inserting it in description id order.
+	 * </p>
+	 * 
+	 * @param concept
+	 * @param ids
+	 * @param description
+	 */
+	private void applySynonym(SnomedQueryConcept concept, long[] ids,
+			RF2Description description) {
+		String[] synonyms = concept.getConceptSynonyms();
+		int index = 1;
+		while ((index < ids.length) && (ids[index] < description.getId())) {
+			index += 1;
+		}
+		int preferred = this.descriptionIds.getPreferred(concept.getConceptId());
+		if ((index < ids.length) && (ids[index] == description.getId())) {
+			// Replace the array, as lazily loaded concepts return a copy.
+			String[] newSynonyms = synonyms.clone();
+			newSynonyms[index - 1] = description.getTerm();
+			concept.setConceptSynonyms(newSynonyms);
+			if (preferred == index) {
+				concept.setConceptPreferredTerm(description.getTerm());
+			}
+			return;
+		}
+
+		long[] newIds = new long[ids.length + 1];
+		System.arraycopy(ids, 0, newIds, 0, index);
+		newIds[index] = description.getId();
+		System.arraycopy(ids, index, newIds, index + 1, ids.length - index);
+		String[] newSynonyms = new String[synonyms.length + 1];
+		System.arraycopy(synonyms, 0, newSynonyms, 0, index - 1);
+		newSynonyms[index - 1] = description.getTerm();
+		System.arraycopy(synonyms, index - 1, newSynonyms, index,
+				synonyms.length - (index - 1));
+		this.descriptionIds.put(concept.getConceptId(), newIds);
+		concept.setConceptSynonyms(newSynonyms);
+		if (preferred >= index) {
+			this.descriptionIds.setPreferred(concept.getConceptId(),
+					preferred + 1);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Remove the synonym of the indicated description, if the concept has
+	 * it.
+	 * </p>
+	 * 
+	 * @param concept
+	 * @param ids
+	 * @param descriptionId
+	 */
+	private void removeSynonym(SnomedQueryConcept concept, long[] ids,
+			long descriptionId) {
+		for (int index = 1; index < ids.length; index++) {
+			if (ids[index] == descriptionId) {
+				String[] synonyms = concept.getConceptSynonyms();
+				long[] newIds = new long[ids.length - 1];
+				System.arraycopy(ids, 0, newIds, 0, index);
+				System.arraycopy(ids, index + 1, newIds, index,
+						ids.length - index - 1);
+				String[] newSynonyms = new String[synonyms.length - 1];
+				System.arraycopy(synonyms, 0, newSynonyms, 0, index - 1);
+				System.arraycopy(synonyms, index, newSynonyms, index - 1,
+						synonyms.length - index);
+				this.descriptionIds.put(concept.getConceptId(), newIds);
+				concept.setConceptSynonyms(newSynonyms);
+				int preferred = this.descriptionIds
+						.getPreferred(concept.getConceptId());
+				if (preferred == index) {
+					this.descriptionIds.setPreferred(concept.getConceptId(),
+							-1);
+					concept.setConceptPreferredTerm("");
+				} else if (preferred > index) {
+					this.descriptionIds.setPreferred(concept.getConceptId(),
+							preferred - 1);
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Apply language refset rows to the preferred terms. As in the full
+	 * parse, the preferred term is the synonym with the lowest description
+	 * id that is preferred. Rows that stop a description being preferred are
+	 * applied first, so a preferred term moved to another synonym in the
+	 * same delta is kept.
+	 * </p>
+	 * 
+	 * @param language
+	 */
+	private void applyLanguage(RF2LanguageRefset language) {
+		// Concept of each synonym that has a row in the delta.
+		LongObjectHashMap<SnomedQueryConcept> owners = new LongObjectHashMap<SnomedQueryConcept>();
+		for (long conceptId : this.descriptionIds.getConceptIds()) {
+			SnomedQueryConcept concept = this.modelManager
+					.getConceptById(conceptId);
+			if (concept == null) {
+				continue;
+			}
+			long[] ids = this.descriptionIds.get(conceptId);
+			for (int index = 1; index < ids.length; index++) {
+				if (language.contains(ids[index])) {
+					owners.put(ids[index], concept);
+				}
+			}
+		}
+		long[] changed = language.getDescriptionIds();
+		for (long descriptionId : changed) {
+			SnomedQueryConcept concept = owners.get(descriptionId);
+			if ((concept == null) || language.isPreferred(descriptionId)) {
+				continue;
+			}
+			long[] ids = this.getDescriptionIds(concept);
+			int preferred = this.descriptionIds
+					.getPreferred(concept.getConceptId());
+			if ((preferred > 0) && (ids[preferred] == descriptionId)) {
+				this.descriptionIds.setPreferred(concept.getConceptId(), -1);
+				concept.setConceptPreferredTerm("");
+			}
+		}
+		for (long descriptionId : changed) {
+			SnomedQueryConcept concept = owners.get(descriptionId);
+			if ((concept == null) || !language.isPreferred(descriptionId)) {
+				continue;
+			}
+			long[] ids = this.getDescriptionIds(concept);
+			int preferred = this.descriptionIds
+					.getPreferred(concept.getConceptId());
+			if ((preferred > 0) && (ids[preferred] < descriptionId)) {
+				continue;
+			}
+			int index = 1;
+			while (ids[index] != descriptionId) {
+				index += 1;
+			}
+			this.descriptionIds.setPreferred(concept.getConceptId(), index);
+			concept.setConceptPreferredTerm(
+					concept.getConceptSynonyms()[index - 1]);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Return description ids of concept.
+	 * </p>
+	 * 
+	 * @param concept
+	 * @return
+	 */
+	private long[] getDescriptionIds(SnomedQueryConcept concept) {
+		long[] ids = this.descriptionIds.get(concept.getConceptId());
+		if ((ids == null)
+				|| (ids.length != concept.getConceptSynonyms().length + 1)) {
+			throw new RuntimeException(String.format(
+					"Description ids of concept %1$s do not match the model, re-run the full parse",
+					concept.getConceptId()));
+		}
+		return ids;
+	}
+
+	/**
+	 * <p>
+	 * Apply relationship rows. IsA inactivations are applied first, so a
+	 * link that is moved to a new relationship id in the same delta is kept.
+	 * Attribute rows replace or remove the row of their relationship id.
+	 * </p>
+	 * 
+	 * @param relationships
+	 */
+	private void applyRelationships(
+			LongObjectHashMap<RF2Relationship> relationships) {
+		AttributeRelationshipStore attributes = this.modelManager
+				.getAttributeRelationships();
+		ArrayList<RF2Relationship> active = new ArrayList<RF2Relationship>();
+		for (RF2Relationship relationship : relationships.values()) {
+			if (relationship.getTypeId() != RF2Parser.isAConceptId) {
+				if (relationship.isActive()) {
+					attributes.put(relationship.getId(),
+							relationship.getSourceId(),
+							relationship.getTypeId(),
+							relationship.getDestinationId(),
+							relationship.getRelationshipGroup());
+				} else {
+					attributes.remove(relationship.getId());
+				}
+				continue;
+			}
+			if (relationship.isActive()) {
+				active.add(relationship);
+			} else {
+				// Links of dropped concepts are already gone.
+				SnomedQueryConcept source = this.modelManager
+						.getConceptById(relationship.getSourceId());
+				SnomedQueryConcept dest = this.modelManager
+						.getConceptById(relationship.getDestinationId());
+				if ((source == null) || (dest == null)) {
+					continue;
+				}
+				source.setIsAParents(remove(source.getIsAParents(), dest));
+				dest.setIsAChildren(remove(dest.getIsAChildren(), source));
+			}
+		}
+		for (RF2Relationship relationship : active) {
+			SnomedQueryConcept source = this
+					.getConcept(relationship.getSourceId());
+			SnomedQueryConcept dest = this
+					.getConcept(relationship.getDestinationId());
+			source.setIsAParents(insert(source.getIsAParents(), dest));
+			dest.setIsAChildren(insert(dest.getIsAChildren(), source));
+		}
+	}
+
+	/**
+	 * <p>
+	 * Return <i>items</i> with <i>item</i> inserted in concept id order,
+	 * unless it is already present.
+	 * </p>
+	 * 
+	 * @param items
+	 * @param item
+	 * @return
+	 */
+	private static SnomedQueryConcept[] insert(SnomedQueryConcept[] items,
+			SnomedQueryConcept item) {
+		int index = 0;
+		while ((index < items.length)
+				&& (items[index].getConceptId() < item.getConceptId())) {
+			index += 1;
+		}
+		if ((index < items.length) && (items[index] == item)) {
+			return items;
+		}
+		SnomedQueryConcept[] retVal = new SnomedQueryConcept[items.length + 1];
+		System.arraycopy(items, 0, retVal, 0, index);
+		retVal[index] = item;
+		System.arraycopy(items, index, retVal, index + 1,
+				items.length - index);
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Return <i>items</i> without <i>item</i>.
+	 * </p>
+	 * 
+	 * @param items
+	 * @param item
+	 * @return
+	 */
+	private static SnomedQueryConcept[] remove(SnomedQueryConcept[] items,
+			SnomedQueryConcept item) {
+		for (int i = 0; i < items.length; i++) {
+			if (items[i] == item) {
+				SnomedQueryConcept[] retVal = new SnomedQueryConcept[items.length
+						- 1];
+				System.arraycopy(items, 0, retVal, 0, i);
+				System.arraycopy(items, i + 1, retVal, i,
+						items.length - i - 1);
+				return retVal;
+			}
+		}
+		return items;
+	}
+
+	/**
+	 * <p>
+	 * Set module and definition status names of changed concepts, and rename
+	 * those of other concepts whose module or definition status concept got
+	 * a new fully specified name.
+	 * </p>
+	 * 
+	 * @param concepts
+	 */
+	private void applyNames(LongObjectHashMap<RF2Concept> concepts) {
+		if (!this.renamed.isEmpty()) {
+			for (SnomedQueryConcept concept : this.modelManager.getConcepts()) {
+				String module = this.renamed.get(concept.getConceptModule());
+				if (module != null) {
+					concept.setConceptModule(module);
+				}
+				String definitionStatus = this.renamed
+						.get(concept.getConceptDefinitionStatus());
+				if (definitionStatus != null) {
+					concept.setConceptDefinitionStatus(definitionStatus);
+				}
+			}
+		}
+		for (RF2Concept rf2Concept : concepts.values()) {
+			if (!rf2Concept.isActive()) {
+				continue;
+			}
+			SnomedQueryConcept concept = this.getConcept(rf2Concept.getId());
+			concept.setConceptModule(this.getConcept(rf2Concept.getModuleId())
+					.getConceptFullyQualifiedName());
+			concept.setConceptDefinitionStatus(
+					this.getConcept(rf2Concept.getDefinitionStatusId())
+							.getConceptFullyQualifiedName());
+		}
+	}
+}
@@ -1,8 +1,23 @@
 package Parser;
 
 import SnomedQuery.Model.*;
+import java.io.File;
 import java.util.*;
-import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+import SnomedQuery.Collections.Csr;
+import SnomedQuery.Collections.LongArrayList;
+import SnomedQuery.Collections.LongIntHashMap;
+import SnomedQuery.Collections.LongObjectHashMap;
 
 /**
  * <p>
@@ -27,6 +42,113 @@ public class SnomedParser {
 	 */
 	private SnomedModelManager modelManager;
 
+	/**
+	 * <p>
+	 * Ids of the descriptions each concept record is built from, saved so
+	 * that delta updates can be applied to the serialized model.
+	 * </p>
+	 */
+	private DescriptionIdMap descriptionIds;
+
+	/**
+	 * <p>
+	 * Fully specified names of the module, definition status and
+	 * description type concepts, cached before concept groups are released.
+	 * </p>
+	 */
+	private LongObjectHashMap<String> conceptNames;
+
+	/**
+	 * <p>
+	 * Number of concept records passed between build stages at a time.
+	 * </p>
+	 */
+	private static final int recordBatchSize = 4096;
+
+	/**
+	 * <p>
+	 * Number of record batches that may wait between build stages, which
+	 * bounds the records held outside both the parser and the model.
+	 * </p>
+	 */
+	private static final int recordQueueSize = 8;
+
+	/**
+	 * <p>
+	 * Batch that marks the end of the concept records.
+	 * </p>
+	 */
+	private static final ArrayList<SnomedQueryConcept> endOfRecords = new ArrayList<SnomedQueryConcept>();
+
+	/**
+	 * <p>
+	 * Number of concepts below which a record build task is not split
+	 * further.
+	 * </p>
+	 */
+	private static final int recordTaskThreshold = 256;
+
+	/**
+	 * <p>
+	 * Fork join task that builds the records of a range of concepts. Each
+	 * record and its description ids are written to the slot of its concept,
+	 * so no state is shared between tasks.
+	 * </p>
+	 */
+	private final class ConceptRecordTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final long[] conceptIds;
+		private final SnomedQueryConcept[] concepts;
+		private final long[][] descriptionIds;
+		private final int start;
+		private final int end;
+
+		/**
+		 * <p>
+		 * Constructor.
+		 * </p>
+		 * 
+		 * @param conceptIds
+		 *            Ids of the concepts to build.
+		 * @param concepts
+		 *            Built records, null for inactive concepts.
+		 * @param descriptionIds
+		 *            Description ids of each built record.
+		 * @param start
+		 *            First index to build.
+		 * @param end
+		 *            Index after the last one to build.
+		 */
+		ConceptRecordTask(long[] conceptIds, SnomedQueryConcept[] concepts,
+				long[][] descriptionIds, int start, int end) {
+			this.conceptIds = conceptIds;
+			this.concepts = concepts;
+			this.descriptionIds = descriptionIds;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.end - this.start <= recordTaskThreshold) {
+				for (int i = this.start; i < this.end; i++) {
+					this.concepts[i] = SnomedParser.this.createConceptRecord(
+							SnomedParser.this.rf2Parser
+									.getConceptGroup(this.conceptIds[i]),
+							this.descriptionIds, i);
+				}
+				return;
+			}
+			int middle = (this.start + this.end) >>> 1;
+			invokeAll(
+					new ConceptRecordTask(this.conceptIds, this.concepts,
+							this.descriptionIds, this.start, middle),
+					new ConceptRecordTask(this.conceptIds, this.concepts,
+							this.descriptionIds, middle, this.end));
+		}
+	}
+
 	/**
 	 * <p>
 	 * Constructor
@@ -47,6 +169,32 @@ public class SnomedParser {
 						"Terminology",});
 	}
 
+	/**
+	 * <p>
+	 * Return path to the zipped snomed release. If it exists, it is parsed
+	 * without being extracted.
+	 * </p>
+	 */
+	public final String getSnomedReleaseZip() {
+		return FileReader
+				.comboPaths(new String[]{this.modelManager.getRawDataDir(),
+						"SnomedCT_RF2Release_INT1000124_20160601.zip"});
+	}
+
+	/**
+	 * <p>
+	 * Return path to the snomed language refset file. Preferred terms are
+	 * only set if it exists.
+	 * </p>
+	 */
+	public final String getSnomedLanguageRefsetFile() {
+		return FileReader
+				.comboPaths(new String[]{this.modelManager.getRawDataDir(),
+						"SnomedCT_RF2Release_INT1000124_20160601", "Full",
+						"Refset", "Language",
+						"der2_cRefset_LanguageFull-en_INT_20160731.txt"});
+	}
+
 	/**
 	 * <p>
 	 * Return path to snomed concept rf2 file.
@@ -79,178 +227,451 @@ public class SnomedParser {
 
 	/**
 	 * <p>
-	 * Find snomed concept query instance by its snomed concept id.
+	 * Parse and serialize Snomed, unless the serialized model was parsed
+	 * from the same input files.
 	 * </p>
-	 * 
-	 * @param conceptId
-	 * @return
 	 */
-	private SnomedQueryConcept findConcept(long conceptId) {
-		try {
-			return this.modelManager.getConceptById(conceptId);
-		} catch (Exception e) {
-			e.printStackTrace();
-			return null;
-		}
+	public final void parseAndSerialize() {
+		this.parseAndSerialize(false);
 	}
 
 	/**
 	 * <p>
-	 * Parse and serialize Snomed.
+	 * Parse and serialize Snomed. The fingerprints of the input files are
+	 * recorded in the serialized model; if they still match the input files
+	 * parsing is skipped and the model files are left as they are.
 	 * </p>
+	 *
+	 * @param force
+	 *            True to parse even if the input files are unchanged.
 	 */
-	public final void parseAndSerialize() {
+	public final void parseAndSerialize(boolean force) {
 		String baseDir = FileReader
 				.comboPaths(new String[]{"..", "..", "Data"});
 		this.modelManager = new SnomedModelManager(baseDir);
+		String[] inputs = this.getInputFiles();
+		if (!force && this.isModelCurrent(inputs)) {
+			System.out.println(
+					"Input files unchanged, reusing the serialized model");
+			return;
+		}
+		// Hash the inputs while they are parsed.
+		CompletableFuture<InputFingerprint[]> fingerprints = CompletableFuture
+				.supplyAsync(() -> InputFingerprint.of(inputs));
 
+		this.descriptionIds = new DescriptionIdMap();
 		this.rf2Parser = new RF2Parser();
-		this.rf2Parser.load(this.getSnomedConceptFile(),
+		this.rf2Parser
+				.setParallelism(Runtime.getRuntime().availableProcessors());
+		// Only the current row of each id is used below, so drop history
+		// while reading the Full release.
+		this.rf2Parser.setSnapshotReducing(true);
+		if (new File(this.getSnomedReleaseZip()).isFile()) {
+			this.rf2Parser.loadFromRF2Zip(this.getSnomedReleaseZip(), "Full");
+		} else {
+			String languagePath = this.getSnomedLanguageRefsetFile();
+			this.rf2Parser.loadFromRF2Files(this.getSnomedConceptFile(),
+					this.getSnomedRelationshipFile(),
+					this.getSnomedDescriptionFile(),
+					new File(languagePath).isFile() ? languagePath : null);
+		}
+
+		System.out.println("Creating concept and relationship records");
+		long[] isAEdges = this.buildRecords();
+		// All parser state has been used; let it be collected before the
+		// model is linked and serialized.
+		this.rf2Parser = null;
+		this.conceptNames = null;
+
+		this.createRelationships(isAEdges);
+		// As for concepts, attributes of inactive concepts are not kept.
+		this.modelManager.getAttributeRelationships().retainConcepts(
+				conceptId -> this.modelManager.getConceptById(conceptId) != null);
+
+		// The data file, with the fingerprints, is written last by serialize.
+		this.modelManager.setInputFingerprints(fingerprints.join());
+		this.modelManager.invalidate();
+		this.descriptionIds.write(FileReader.comboPaths(new String[]{
+				this.modelManager.getParsedRecordsDir(),
+				DescriptionIdMap.fileName}));
+		this.descriptionIds = null;
+		this.modelManager.serialize();
+	}
+
+	/**
+	 * <p>
+	 * Return the paths of the input files parseAndSerialize reads: the
+	 * release zip if there is one, otherwise the concept, relationship and
+	 * description files and the language refset file if there is one.
+	 * </p>
+	 *
+	 * @return
+	 */
+	private String[] getInputFiles() {
+		if (new File(this.getSnomedReleaseZip()).isFile()) {
+			return new String[]{this.getSnomedReleaseZip()};
+		}
+		String languagePath = this.getSnomedLanguageRefsetFile();
+		if (new File(languagePath).isFile()) {
+			return new String[]{this.getSnomedConceptFile(),
+					this.getSnomedRelationshipFile(),
+					this.getSnomedDescriptionFile(), languagePath};
+		}
+		return new String[]{this.getSnomedConceptFile(),
 				this.getSnomedRelationshipFile(),
-				this.getSnomedDescriptionFile());
+				this.getSnomedDescriptionFile()};
+	}
 
-		System.out.println("Creating concept records");
+	/**
+	 * <p>
+	 * Return true if all model files exist and the serialized model was
+	 * parsed from <i>inputs</i> as they are now.
+	 * </p>
+	 *
+	 * @param inputs
+	 * @return
+	 */
+	private boolean isModelCurrent(String[] inputs) {
+		String dir = this.modelManager.getParsedRecordsDir();
+		for (String fileName : new String[]{
+				SnomedModelManager.isARelationshipFileName,
+				AttributeRelationshipStore.fileName,
+				SnomedModelManager.preferredTermFileName,
+				DescriptionIdMap.fileName}) {
+			if (!new File(FileReader.comboPaths(new String[]{dir, fileName}))
+					.isFile()) {
+				return false;
+			}
+		}
+		return InputFingerprint.matchAll(
+				this.modelManager.readInputFingerprints(), inputs);
+	}
+
+	/**
+	 * <p>
+	 * Build concept records and collect IsA edges as a pipeline. One stage
+	 * builds the record of each concept and then releases the concept and
+	 * its descriptions from the parser. The records pass through a bounded
+	 * queue to the calling thread, which adds them to the model. A third
+	 * stage collects the IsA edges and attribute relationships and then
+	 * releases the relationship table.
+	 * </p>
+	 * 
+	 * @return IsA edges as source and destination id pairs, in relationship
+	 *         table order.
+	 */
+	private long[] buildRecords() {
+		this.cacheConceptNames();
+		BlockingQueue<ArrayList<SnomedQueryConcept>> records = new ArrayBlockingQueue<ArrayList<SnomedQueryConcept>>(
+				recordQueueSize);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		ForkJoinPool recordPool = new ForkJoinPool(
+				Runtime.getRuntime().availableProcessors());
 		try {
-			this.createConceptRecords();
+			Future<?> producer = executor
+					.submit(() -> this.createConceptRecords(recordPool, records));
+			Future<long[]> edges = executor.submit(this::collectRelationships);
+			ArrayList<SnomedQueryConcept> batch;
+			while ((batch = records.take()) != endOfRecords) {
+				this.modelManager.addAll(batch);
+			}
+			producer.get();
+			return edges.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
 		} catch (Exception e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			throw new RuntimeException(e);
+		} finally {
+			executor.shutdownNow();
+			recordPool.shutdownNow();
 		}
-
-		System.out.println("Creating relationship records");
-		this.createRelationships();
-
-		this.modelManager.serialize();
-		this.rf2Parser = null;
 	}
 
 	/**
 	 * <p>
-	 * Parse all SNOMED realtionships and create applicadia attributes for each
-	 * one.
+	 * Cache the fully specified names of all module, definition status and
+	 * description type concepts, which are needed after the concept groups
+	 * have been released.
 	 * </p>
 	 */
-	private void createRelationships() {
-		// We cant resize SnomedQueryConcept[]'s efficiently, so map all the
-		// parent and
-		// children to lists and set the objects IsAXXX to the list.ToArray()
-		// when
-		// we have collated all concepts.F
-		HashMap<Long, ArrayList<SnomedQueryConcept>> parentMap = new HashMap<Long, ArrayList<SnomedQueryConcept>>();
-		HashMap<Long, ArrayList<SnomedQueryConcept>> childMap = new HashMap<Long, ArrayList<SnomedQueryConcept>>();
-		for (Map.Entry<Long, RF2RelationshipGroup> kvp : this.rf2Parser.relationshipGroups
-				.entrySet()) {
-			RF2RelationshipGroup rf2RelationshipGroup = kvp.getValue();
-			this.createRelationship(rf2RelationshipGroup, parentMap, childMap);
+	private void cacheConceptNames() {
+		LongObjectHashMap<String> names = new LongObjectHashMap<String>();
+		for (RF2ConceptGroup conceptGroup : this.rf2Parser.conceptGroups
+				.values()) {
+			RF2Concept concept = conceptGroup.getActive();
+			if (concept != null) {
+				names.put(concept.getModuleId(), "");
+				names.put(concept.getDefinitionStatusId(), "");
+			}
+		}
+		for (RF2DescriptionGroup descriptionGroup : this.rf2Parser.descriptionGroups
+				.values()) {
+			for (RF2Description description : descriptionGroup.getItems()) {
+				names.put(description.getTypeId(), "");
+			}
 		}
+		for (long conceptId : names.keys()) {
+			names.put(conceptId, this.rf2Parser.getConceptGroup(conceptId)
+					.getFullySpecifiedName());
+		}
+		this.conceptNames = names;
+	}
 
-		// Copy all parent lists to parent array in each concept.
-		for (Entry<Long, ArrayList<SnomedQueryConcept>> kvp : parentMap
-				.entrySet()) {
-			SnomedQueryConcept item = this.findConcept(kvp.getKey());
-			item.setIsAParents(kvp.getValue()
-					.toArray(new SnomedQueryConcept[kvp.getValue().size()]));
+	/**
+	 * <p>
+	 * Return the fully specified name of a module, definition status or
+	 * description type concept.
+	 * </p>
+	 * 
+	 * @param conceptId
+	 * @return
+	 */
+	private String getConceptName(long conceptId) {
+		String name = this.conceptNames.get(conceptId);
+		if (name == null) {
+			throw new RuntimeException(String
+					.format("Concept %1$s not found in dictionary", conceptId));
 		}
+		return name;
+	}
 
-		// Copy all child lists to child array in each concept.
-		for (Entry<Long, ArrayList<SnomedQueryConcept>> kvp : childMap
-				.entrySet()) {
-			SnomedQueryConcept item = this.findConcept(kvp.getKey());
-			item.setIsAChildren(kvp.getValue()
-					.toArray(new SnomedQueryConcept[kvp.getValue().size()]));
+	/**
+	 * <p>
+	 * Collect the current, active relationships of the relationship table,
+	 * then release the table. IsA relationships are returned, all others
+	 * are added to the attribute relationships of the model.
+	 * </p>
+	 * 
+	 * @return Source and destination id pairs of the IsA relationships, in
+	 *         table order.
+	 */
+	private long[] collectRelationships() {
+		RF2RelationshipTable table = this.rf2Parser.relationships;
+		AttributeRelationshipStore attributes = this.modelManager
+				.getAttributeRelationships();
+		LongArrayList edges = new LongArrayList();
+		for (int row = 0; row < table.size(); row++) {
+			if (!table.isCurrentActive(row)) {
+				continue;
+			}
+			if (table.getTypeId(row) == RF2Parser.isAConceptId) {
+				edges.add(table.getSourceId(row));
+				edges.add(table.getDestinationId(row));
+			} else {
+				attributes.put(table.getId(row), table.getSourceId(row),
+						table.getTypeId(row), table.getDestinationId(row),
+						table.getRelationshipGroup(row));
+			}
 		}
+		this.rf2Parser.relationships = null;
+		return edges.toArray();
 	}
 
 	/**
 	 * <p>
-	 * Parse all SNOMED realtionships and create applicadia attributes for each
-	 * one.
+	 * Set the IsA parents and children of every concept from the collected
+	 * IsA edges. Concepts are numbered by ordinal and the edges are put in
+	 * compressed sparse row form: a count pass sizes each concept's parent
+	 * and child ranges, a prefix sum turns the counts into offsets, and a
+	 * fill pass writes the related ordinals in edge order. Resolving edge
+	 * ids to ordinals and building each concept's arrays run in parallel.
 	 * </p>
+	 * 
+	 * @param isAEdges
+	 *            Source and destination id pairs.
 	 */
-	private void createRelationship(RF2RelationshipGroup rf2RelationshipGroup,
-			HashMap<Long, ArrayList<SnomedQueryConcept>> parentMap,
-			HashMap<Long, ArrayList<SnomedQueryConcept>> childMap) {
-		RF2Relationship rf2Relationship = rf2RelationshipGroup.getActive();
-		if (rf2Relationship == null) {
-			return;
+	private void createRelationships(long[] isAEdges) {
+		int conceptCount = this.modelManager.getConceptCount();
+		SnomedQueryConcept[] concepts = new SnomedQueryConcept[conceptCount];
+		LongIntHashMap ordinals = new LongIntHashMap(conceptCount);
+		int ordinal = 0;
+		for (SnomedQueryConcept concept : this.modelManager.getConcepts()) {
+			concepts[ordinal] = concept;
+			ordinals.put(concept.getConceptId(), ordinal);
+			ordinal += 1;
 		}
-		switch ((int) rf2Relationship.getTypeId()) {
-			case (int) RF2Parser.isAConceptId :
-				SnomedQueryConcept source = this
-						.findConcept(rf2Relationship.getSource().getId());
-				SnomedQueryConcept dest = this
-						.findConcept(rf2Relationship.getDestination().getId());
-				this.add(parentMap, source, dest);
-				this.add(childMap, dest, source);
-				break;
+
+		int edgeCount = isAEdges.length / 2;
+		int[] sources = new int[edgeCount];
+		int[] destinations = new int[edgeCount];
+		IntStream.range(0, edgeCount).parallel().forEach(edge -> {
+			sources[edge] = this.getOrdinal(ordinals, isAEdges[2 * edge]);
+			destinations[edge] = this.getOrdinal(ordinals,
+					isAEdges[2 * edge + 1]);
+		});
+
+		int[] parentOffsets = Csr.offsets(sources, conceptCount);
+		int[] parents = Csr.targets(sources, destinations, parentOffsets);
+		int[] childOffsets = Csr.offsets(destinations, conceptCount);
+		int[] children = Csr.targets(destinations, sources, childOffsets);
+
+		IntStream.range(0, conceptCount).parallel().forEach(i -> {
+			if (parentOffsets[i + 1] > parentOffsets[i]) {
+				concepts[i].setIsAParents(
+						related(concepts, parents, parentOffsets, i));
+			}
+			if (childOffsets[i + 1] > childOffsets[i]) {
+				concepts[i].setIsAChildren(
+						related(concepts, children, childOffsets, i));
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * Return the ordinal of a concept.
+	 * </p>
+	 * 
+	 * @param ordinals
+	 * @param conceptId
+	 * @return
+	 */
+	private int getOrdinal(LongIntHashMap ordinals, long conceptId) {
+		int ordinal = ordinals.get(conceptId, -1);
+		if (ordinal < 0) {
+			throw new RuntimeException(String
+					.format("Concept %1$s not found in dictionary", conceptId));
 		}
+		return ordinal;
 	}
 
 	/**
 	 * <p>
-	 * Add related comcept to map.
+	 * Return the concepts in the range of one ordinal.
 	 * </p>
 	 * 
-	 * @param map
-	 * @param concept
-	 * @param relatedConcept
+	 * @param concepts
+	 * @param targets
+	 * @param offsets
+	 * @param ordinal
+	 * @return
 	 */
-	private void add(HashMap<Long, ArrayList<SnomedQueryConcept>> map,
-			SnomedQueryConcept concept, SnomedQueryConcept relatedConcept) {
-		ArrayList<SnomedQueryConcept> items;
-		if (!map.containsKey(concept.getConceptId())) {
-			items = new ArrayList<SnomedQueryConcept>();
-			if (map.containsKey(concept.getConceptId())) {
-				throw new RuntimeException("Error adding item to Hash Map");
-			} else
-				map.put(concept.getConceptId(), items);
-		} else {
-			items = map.get(concept.getConceptId());
+	private static SnomedQueryConcept[] related(SnomedQueryConcept[] concepts,
+			int[] targets, int[] offsets, int ordinal) {
+		int start = offsets[ordinal];
+		SnomedQueryConcept[] retVal = new SnomedQueryConcept[offsets[ordinal
+				+ 1] - start];
+		for (int i = 0; i < retVal.length; i++) {
+			retVal[i] = concepts[targets[start + i]];
 		}
-		items.add(relatedConcept);
-		map.remove(concept.getConceptId());
-		map.put(concept.getConceptId(), items);
+		return retVal;
 	}
 
 	/**
 	 * <p>
 	 * Iterate over all rf2Parser concepts and create correct GcSnomedConcept
-	 * derived class for each element.
+	 * derived class for each element. Concepts are taken a batch at a time,
+	 * and the records of each batch are built in parallel on <i>pool</i>.
+	 * The batch is then put on <i>records</i>, and its concepts are released
+	 * from the parser. The end marker is put last, also if this fails.
 	 * </p>
 	 * 
-	 * @throws Exception
+	 * @param pool
+	 * @param records
 	 */
-	private void createConceptRecords() throws Exception {
-		for (Entry<Long, RF2ConceptGroup> kvp : this.rf2Parser.conceptGroups
-				.entrySet()) {
-			RF2ConceptGroup rf2ConceptGroup = kvp.getValue();
-			SnomedQueryConcept concept = this
-					.createConceptRecord(rf2ConceptGroup);
-			if (concept != null) {
-				this.modelManager.add(concept);
+	private void createConceptRecords(ForkJoinPool pool,
+			BlockingQueue<ArrayList<SnomedQueryConcept>> records) {
+		try {
+			long[] conceptIds = this.rf2Parser.conceptGroups.keys();
+			SnomedQueryConcept[] concepts = new SnomedQueryConcept[recordBatchSize];
+			long[][] ids = new long[recordBatchSize][];
+			for (int start = 0; start < conceptIds.length; start += recordBatchSize) {
+				int count = Math.min(recordBatchSize,
+						conceptIds.length - start);
+				long[] batchIds = Arrays.copyOfRange(conceptIds, start,
+						start + count);
+				pool.invoke(
+						new ConceptRecordTask(batchIds, concepts, ids, 0, count));
+
+				ArrayList<SnomedQueryConcept> batch = new ArrayList<SnomedQueryConcept>(
+						count);
+				for (int i = 0; i < count; i++) {
+					if (concepts[i] != null) {
+						batch.add(concepts[i]);
+						this.descriptionIds.put(batchIds[i], ids[i]);
+						this.setPreferredTerm(concepts[i], ids[i]);
+						RF2Description fsn = this.rf2Parser
+								.getConceptGroup(batchIds[i])
+								.getFullySpecifiedNameDescription();
+						this.descriptionIds.setEnglishName(batchIds[i],
+								(fsn == null) || fsn.getLanguageCode()
+										.equals(RF2Description.englishLanguageCode));
+					} else {
+						this.descriptionIds.addInactive(batchIds[i]);
+					}
+					this.rf2Parser.releaseConcept(batchIds[i]);
+					concepts[i] = null;
+					ids[i] = null;
+				}
+				records.put(batch);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} finally {
+			// End the queue even on failure, so the consumer stops and the
+			// failure surfaces through this task's future. Only an interrupt,
+			// which comes once the consumer has stopped, can skip it.
+			try {
+				records.put(endOfRecords);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
 			}
 		}
 	}
 
 	/**
 	 * <p>
-	 * Iterate over all rf2Parser concepts and create correct GcSnomedConcept
-	 * derived class for each element.
+	 * Set the preferred term of a concept record to its first synonym (in
+	 * description id order) that is preferred in the language refset, and
+	 * record its position in the description ids.
 	 * </p>
+	 * 
+	 * @param concept
+	 * @param ids
+	 *            Description ids of the concept record.
+	 */
+	private void setPreferredTerm(SnomedQueryConcept concept, long[] ids) {
+		RF2LanguageRefset refset = this.rf2Parser.getLanguageRefset();
+		if (refset == null) {
+			return;
+		}
+		for (int index = 1; index < ids.length; index++) {
+			if (refset.isPreferred(ids[index])) {
+				concept.setConceptPreferredTerm(
+						concept.getConceptSynonyms()[index - 1]);
+				this.descriptionIds.setPreferred(concept.getConceptId(),
+						index);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Create the record of one rf2Parser concept. The description ids of the
+	 * record are stored in <i>descriptionIds</i> at <i>slot</i>. Safe to call
+	 * from several threads as long as the parser is not changed meanwhile.
+	 * </p>
+	 * 
+	 * @param rf2ConceptGroup
+	 * @param descriptionIds
+	 * @param slot
+	 * @return Record, or null if the concept is not active.
 	 */
 	private SnomedQueryConcept createConceptRecord(
-			RF2ConceptGroup rf2ConceptGroup) {
+			RF2ConceptGroup rf2ConceptGroup, long[][] descriptionIds,
+			int slot) {
 		RF2Concept rf2Concept = rf2ConceptGroup.getActive();
 		if (rf2Concept == null) {
 			return null;
 		}
 
-		RF2ConceptGroup module = this.rf2Parser
-				.getConceptGroup(rf2Concept.getModuleId());
-		RF2ConceptGroup definitionStatus = this.rf2Parser
-				.getConceptGroup(rf2Concept.getDefinitionStatusId());
-
 		ArrayList<String> synonyms = new ArrayList<String>();
+		ArrayList<Long> synonymIds = new ArrayList<Long>();
 		for (RF2DescriptionGroup descriptionGroup : rf2ConceptGroup
 				.getDescriptionGroups()) {
 			RF2Description description = descriptionGroup
@@ -258,6 +679,7 @@ public class SnomedParser {
 			switch (String.valueOf(description.getTypeId())) {
 				case RF2Parser.synonymTypeIds :
 					synonyms.add(description.getTerm());
+					synonymIds.add(description.getId());
 					break;
 
 				case RF2Parser.fullySpecifiedNameConceptIds :
@@ -266,18 +688,25 @@ public class SnomedParser {
 				default :
 					System.out.println(String.format(
 							"Unimplemented description type %1$s",
-							this.rf2Parser
-									.getConceptGroup(description.getTypeId())
-									.getFullySpecifiedName()));
+							this.getConceptName(description.getTypeId())));
 					break;
 			}
 		}
 
+		RF2Description fsn = rf2ConceptGroup
+				.getFullySpecifiedNameDescription();
+		long[] ids = new long[synonymIds.size() + 1];
+		ids[0] = (fsn == null) ? -1 : fsn.getId();
+		for (int i = 0; i < synonymIds.size(); i++) {
+			ids[i + 1] = synonymIds.get(i);
+		}
+		descriptionIds[slot] = ids;
+
 		SnomedQueryConcept concept = new SnomedQueryConcept(rf2Concept.getId(),
 				rf2ConceptGroup.getFullySpecifiedName(),
 				synonyms.toArray(new String[synonyms.size()]),
-				module.getFullySpecifiedName(),
-				definitionStatus.getFullySpecifiedName(),
+				this.getConceptName(rf2Concept.getModuleId()),
+				this.getConceptName(rf2Concept.getDefinitionStatusId()),
 				rf2Concept.getEffectiveTime());
 
 		return concept;
@@ -0,0 +1,156 @@
+package Parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * Reads RF2 lines from an input stream, such as an entry of a release zip,
+ * tokenizing each line directly from a reused byte buffer.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+public class StreamLineReader extends RF2LineReader {
+	/**
+	 * <p>
+	 * Initial size in bytes of the line buffer. It grows if a line does not
+	 * fit.
+	 * </p>
+	 */
+	private static final int initialBufferSize = 256 * 1024;
+
+	/**
+	 * <p>
+	 * Stream lines are read from. Null once closed.
+	 * </p>
+	 */
+	private InputStream stream;
+
+	/**
+	 * <p>
+	 * Bytes of <i>buffer</i> read from the stream.
+	 * </p>
+	 */
+	private int filled;
+
+	/**
+	 * <p>
+	 * Offset into <i>buffer</i> of the start of the next line.
+	 * </p>
+	 */
+	private int position;
+
+	/**
+	 * <p>
+	 * True once the stream has no more bytes.
+	 * </p>
+	 */
+	private boolean endOfStream;
+
+	/**
+	 * <p>
+	 * Constructor. Skips a UTF-8 byte order mark at the start of the stream.
+	 * </p>
+	 *
+	 * @param stream
+	 */
+	public StreamLineReader(InputStream stream) {
+		this.stream = stream;
+		this.buffer = ByteBuffer.allocate(initialBufferSize);
+		this.fill();
+		if ((this.filled >= 3) && (this.buffer.get(0) == (byte) 0xEF)
+				&& (this.buffer.get(1) == (byte) 0xBB)
+				&& (this.buffer.get(2) == (byte) 0xBF)) {
+			this.position = 3;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Move the unread bytes to the start of the buffer, growing it if it is
+	 * full, and read more bytes from the stream.
+	 * </p>
+	 */
+	private void fill() {
+		byte[] data = this.buffer.array();
+		if (this.position > 0) {
+			System.arraycopy(data, this.position, data, 0,
+					this.filled - this.position);
+			this.filled -= this.position;
+			this.position = 0;
+		}
+		if (this.filled == data.length) {
+			byte[] temp = new byte[data.length * 2];
+			System.arraycopy(data, 0, temp, 0, this.filled);
+			this.buffer = ByteBuffer.wrap(temp);
+			data = temp;
+		}
+		try {
+			int read = this.stream.read(data, this.filled,
+					data.length - this.filled);
+			if (read < 0) {
+				this.endOfStream = true;
+			} else {
+				this.filled += read;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Advances to the next line of the stream and tokenizes it.
+	 * </p>
+	 *
+	 * @return false if there are no more lines.
+	 */
+	@Override
+	public final boolean readLine() {
+		if (this.stream == null) {
+			return false;
+		}
+		int scanned = this.position;
+		while (true) {
+			for (int i = scanned; i < this.filled; i++) {
+				if (this.buffer.get(i) == newLine) {
+					this.tokenize(this.position, i);
+					this.position = i + 1;
+					return true;
+				}
+			}
+			if (this.endOfStream) {
+				if (this.position >= this.filled) {
+					return false;
+				}
+				this.tokenize(this.position, this.filled);
+				this.position = this.filled;
+				return true;
+			}
+			scanned = this.filled - this.position;
+			this.fill();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Closes the stream. The reader is closed even if closing the stream
+	 * fails.
+	 * </p>
+	 */
+	@Override
+	public final void closeFile() {
+		if (this.stream == null) {
+			return;
+		}
+		InputStream stream = this.stream;
+		this.stream = null;
+		try {
+			stream.close();
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to close rf2 stream", e);
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package Parser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>
+ * Line reader over a single RF2 line that is already held as a String. Lets
+ * the String based parse methods share the field decoding of the file
+ * readers.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+public class StringLineReader extends RF2LineReader {
+	/**
+	 * <p>
+	 * Constructor. Tokenizes <i>line</i>.
+	 * </p>
+	 *
+	 * @param line
+	 */
+	public StringLineReader(String line) {
+		this.buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+		this.tokenize(0, this.buffer.limit());
+	}
+
+	/**
+	 * <p>
+	 * There is only the line passed to the constructor.
+	 * </p>
+	 *
+	 * @return false.
+	 */
+	@Override
+	public boolean readLine() {
+		return false;
+	}
+
+	/**
+	 * <p>
+	 * Nothing to close.
+	 * </p>
+	 */
+	@Override
+	public void closeFile() {
+	}
+}
@@ -2,7 +2,7 @@ package Parser;
 
 import java.util.*;
 
-import org.joda.time.DateTime;
+import SnomedQuery.Model.EffectiveTime;
 
 /**
  * <p>
@@ -23,7 +23,7 @@ public class TRF2ItemGroup<T extends RF2ItemSingle> extends RF2Item {
 	 */
 	public final T getActive() {
 		T item = this.getCurrent();
-		if (item.isActive() == false) {
+		if ((item == null) || (item.isActive() == false)) {
 			return null;
 		}
 		return item;
@@ -32,21 +32,87 @@ public class TRF2ItemGroup<T extends RF2ItemSingle> extends RF2Item {
 	/**
 	 * <p>
 	 * Return item that is currently active. Items can be added to snomed with
-	 * an active date in the future.
+	 * an active date in the future. The item with the latest effective time
+	 * that is not in the future is current, whatever order the items were
+	 * read in. On equal effective times the item read last wins.
 	 * </p>
 	 * 
 	 * @return
 	 */
 	public final T getCurrent() {
-		int index = this.items.size() - 1;
-		while (index >= 0) {
+		int currentDate = this.getCurrentDate();
+		T retVal = null;
+		for (int index = this.items.size() - 1; index >= 0; index--) {
 			T item = this.items.get(index);
-			if (item.getEffectiveTime().compareTo(DateTime.now()) <= 0) {
-				return item;
+			int effectiveTime = item.getEffectiveTime();
+			if ((effectiveTime <= currentDate) && ((retVal == null)
+					|| (effectiveTime > retVal.getEffectiveTime()))) {
+				retVal = item;
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Return the date (packed yyyymmdd) items are current as of. This is the
+	 * date fixed by the parser for the parse, or today for items read
+	 * without a parser.
+	 * </p>
+	 * 
+	 * @return
+	 */
+	private int getCurrentDate() {
+		RF2Parser parser = this.getParser();
+		if (parser == null) {
+			return EffectiveTime.today();
+		}
+		return parser.getCurrentDate();
+	}
+
+	/**
+	 * <p>
+	 * Return true if <i>item</i> read after <i>current</i> replaces it in a
+	 * snapshot as of <i>currentDate</i>.
+	 * </p>
+	 * 
+	 * @param item
+	 * @param current
+	 * @param currentDate
+	 * @return
+	 */
+	public static boolean supersedes(RF2ItemSingle item,
+			RF2ItemSingle current, int currentDate) {
+		if (item.getEffectiveTime() > currentDate) {
+			return false;
+		}
+		return (current == null)
+				|| (item.getEffectiveTime() >= current.getEffectiveTime());
+	}
+
+	/**
+	 * <p>
+	 * Add item to group. If the parser reduces to a snapshot, only the item
+	 * that is current so far is kept and superseded items are dropped as
+	 * soon as they are read.
+	 * </p>
+	 * 
+	 * @param item
+	 */
+	protected final void addItem(T item) {
+		RF2Parser parser = this.getParser();
+		if ((parser == null) || !parser.isSnapshotReducing()) {
+			this.items.add(item);
+			return;
+		}
+		T current = this.items.isEmpty() ? null : this.items.get(0);
+		if (supersedes(item, current, parser.getCurrentDate())) {
+			if (current == null) {
+				this.items.add(item);
+			} else {
+				this.items.set(0, item);
 			}
-			index -= 1;
 		}
-		return null;
 	}
 
 	/**
@@ -65,5 +131,5 @@ public class TRF2ItemGroup<T extends RF2ItemSingle> extends RF2Item {
 	 * List of items in group.
 	 * </p>
 	 */
-	protected ArrayList<T> items = new ArrayList<T>();
+	protected ArrayList<T> items = new ArrayList<T>(1);
 }
\ No newline at end of file
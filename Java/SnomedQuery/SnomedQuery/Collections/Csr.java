@@ -0,0 +1,103 @@
+package SnomedQuery.Collections;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Building of graphs in compressed sparse row form over int ordinals. The
+ * edges of ordinal i are the targets from offsets[i] up to offsets[i + 1],
+ * with the total edge count at the end of the offsets.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+public final class Csr {
+	/**
+	 * <p>
+	 * Not instantiated.
+	 * </p>
+	 */
+	private Csr() {
+	}
+
+	/**
+	 * <p>
+	 * Count the edges of each ordinal and return the start offset of each
+	 * ordinal's range, with the total edge count at index <i>count</i>.
+	 * </p>
+	 *
+	 * @param from
+	 *            Ordinal each edge is grouped by.
+	 * @param count
+	 *            Number of ordinals.
+	 * @return
+	 */
+	public static int[] offsets(int[] from, int count) {
+		int[] offsets = new int[count + 1];
+		for (int ordinal : from) {
+			offsets[ordinal + 1] += 1;
+		}
+		for (int i = 0; i < count; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		return offsets;
+	}
+
+	/**
+	 * <p>
+	 * Place the target of each edge in the range of its grouping ordinal,
+	 * keeping edge order within each range.
+	 * </p>
+	 *
+	 * @param from
+	 *            Ordinal each edge is grouped by.
+	 * @param to
+	 *            Ordinal each edge points to.
+	 * @param offsets
+	 *            Range offsets from offsets.
+	 * @return
+	 */
+	public static int[] targets(int[] from, int[] to, int[] offsets) {
+		int[] targets = new int[from.length];
+		int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+		for (int edge = 0; edge < from.length; edge++) {
+			targets[next[from[edge]]++] = to[edge];
+		}
+		return targets;
+	}
+
+	/**
+	 * <p>
+	 * Return the ordinal each edge of a graph starts from, in edge order.
+	 * </p>
+	 *
+	 * @param offsets
+	 * @return
+	 */
+	public static int[] sources(int[] offsets) {
+		int count = offsets.length - 1;
+		int[] sources = new int[offsets[count]];
+		for (int i = 0; i < count; i++) {
+			Arrays.fill(sources, offsets[i], offsets[i + 1], i);
+		}
+		return sources;
+	}
+
+	/**
+	 * <p>
+	 * Return the offsets and targets of the graph with every edge of
+	 * <i>offsets</i> and <i>targets</i> reversed. Each range of the result
+	 * lists its targets in ascending order.
+	 * </p>
+	 *
+	 * @param offsets
+	 * @param targets
+	 * @return Offsets, then targets.
+	 */
+	public static int[][] transpose(int[] offsets, int[] targets) {
+		int[] transposedOffsets = offsets(targets, offsets.length - 1);
+		int[] transposedTargets = targets(targets, sources(offsets),
+				transposedOffsets);
+		return new int[][]{transposedOffsets, transposedTargets};
+	}
+}
@@ -0,0 +1,120 @@
+package SnomedQuery.Collections;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Growable array of primitive longs. Duplicates are allowed while the list
+ * is filled and removed in bulk by <i>sortUnique</i>, which is far cheaper
+ * than checking each add against the whole list.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+public class LongArrayList {
+	/**
+	 * <p>
+	 * Shared backing array of empty lists.
+	 * </p>
+	 */
+	private static final long[] empty = new long[0];
+
+	/**
+	 * <p>
+	 * Backing array. Only the first <i>size</i> items are in use.
+	 * </p>
+	 */
+	private long[] items = empty;
+
+	/**
+	 * <p>
+	 * Number of items in the list.
+	 * </p>
+	 */
+	private int size;
+
+	/**
+	 * <p>
+	 * Constructor.
+	 * </p>
+	 */
+	public LongArrayList() {
+	}
+
+	/**
+	 * <p>
+	 * Gets the number of items in the list.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public final int size() {
+		return this.size;
+	}
+
+	/**
+	 * <p>
+	 * Return item at <i>index</i>.
+	 * </p>
+	 *
+	 * @param index
+	 * @return
+	 */
+	public final long get(int index) {
+		if (index >= this.size) {
+			throw new IndexOutOfBoundsException(String.format(
+					"Index %1$s out of range, size %2$s", index, this.size));
+		}
+		return this.items[index];
+	}
+
+	/**
+	 * <p>
+	 * Append <i>value</i> to the list.
+	 * </p>
+	 *
+	 * @param value
+	 */
+	public final void add(long value) {
+		if (this.size == this.items.length) {
+			this.items = Arrays.copyOf(this.items,
+					Math.max(4, this.size + (this.size >> 1)));
+		}
+		this.items[this.size++] = value;
+	}
+
+	/**
+	 * <p>
+	 * Sort the list in ascending order, remove duplicate items and release
+	 * unused capacity.
+	 * </p>
+	 */
+	public final void sortUnique() {
+		if (this.size == 0) {
+			this.items = empty;
+			return;
+		}
+		Arrays.sort(this.items, 0, this.size);
+		int count = 1;
+		for (int i = 1; i < this.size; i++) {
+			if (this.items[i] != this.items[count - 1]) {
+				this.items[count++] = this.items[i];
+			}
+		}
+		this.size = count;
+		if (this.items.length != count) {
+			this.items = Arrays.copyOf(this.items, count);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Return the items as a new array.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public final long[] toArray() {
+		return Arrays.copyOf(this.items, this.size);
+	}
+}
@@ -0,0 +1,71 @@
+package SnomedQuery.Collections;
+
+/**
+ * <p>
+ * Hashing and sizing shared by the primitive long keyed hash maps.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+final class LongHash {
+	/**
+	 * <p>
+	 * Constructor. Static methods only.
+	 * </p>
+	 */
+	private LongHash() {
+	}
+
+	/**
+	 * <p>
+	 * Maximum fill of a table before it grows, as a fraction of its size.
+	 * Linear probing degrades quickly above about two thirds.
+	 * </p>
+	 */
+	private static final double loadFactor = 0.66;
+
+	/**
+	 * <p>
+	 * Spread the bits of a key. Snomed ids share long runs of low and high
+	 * digits, so the key is mixed with a multiplicative constant and the
+	 * high bits folded down.
+	 * </p>
+	 *
+	 * @param key
+	 * @return
+	 */
+	static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32) ^ (h >>> 16));
+	}
+
+	/**
+	 * <p>
+	 * Return the power of two table size that holds <i>expectedSize</i>
+	 * entries without growing.
+	 * </p>
+	 *
+	 * @param expectedSize
+	 * @return
+	 */
+	static int tableSize(int expectedSize) {
+		int size = 16;
+		while (resizeAt(size) < expectedSize) {
+			size *= 2;
+		}
+		return size;
+	}
+
+	/**
+	 * <p>
+	 * Return the number of entries at which a table of <i>tableSize</i>
+	 * slots grows.
+	 * </p>
+	 *
+	 * @param tableSize
+	 * @return
+	 */
+	static int resizeAt(int tableSize) {
+		return (int) (tableSize * loadFactor);
+	}
+}
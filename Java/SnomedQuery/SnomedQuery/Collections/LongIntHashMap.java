@@ -0,0 +1,238 @@
+package SnomedQuery.Collections;
+
+/**
+ * <p>
+ * Open addressing hash map from primitive long keys to primitive int
+ * values, for dictionaries where an ordinal or row index is enough. Neither
+ * keys nor values are boxed. Collisions are resolved by linear probing.
+ * </p>
+ * <p>
+ * Not thread safe for writers. Concurrent readers are safe once writing has
+ * finished.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+public class LongIntHashMap {
+	/**
+	 * <p>
+	 * Keys of the table.
+	 * </p>
+	 */
+	private long[] keys;
+
+	/**
+	 * <p>
+	 * Values of the table.
+	 * </p>
+	 */
+	private int[] values;
+
+	/**
+	 * <p>
+	 * True for slots that hold an entry.
+	 * </p>
+	 */
+	private boolean[] used;
+
+	/**
+	 * <p>
+	 * Number of entries.
+	 * </p>
+	 */
+	private int size;
+
+	/**
+	 * <p>
+	 * Table size minus one. Table size is a power of two.
+	 * </p>
+	 */
+	private int mask;
+
+	/**
+	 * <p>
+	 * Number of entries at which the table grows.
+	 * </p>
+	 */
+	private int resizeAt;
+
+	/**
+	 * <p>
+	 * Constructor.
+	 * </p>
+	 */
+	public LongIntHashMap() {
+		this(16);
+	}
+
+	/**
+	 * <p>
+	 * Constructor.
+	 * </p>
+	 *
+	 * @param expectedSize
+	 *            Number of entries that fit without growing the table.
+	 */
+	public LongIntHashMap(int expectedSize) {
+		this.allocate(LongHash.tableSize(expectedSize));
+	}
+
+	/**
+	 * <p>
+	 * Allocate an empty table of <i>tableSize</i> slots.
+	 * </p>
+	 *
+	 * @param tableSize
+	 */
+	private void allocate(int tableSize) {
+		this.keys = new long[tableSize];
+		this.values = new int[tableSize];
+		this.used = new boolean[tableSize];
+		this.mask = tableSize - 1;
+		this.resizeAt = LongHash.resizeAt(tableSize);
+	}
+
+	/**
+	 * <p>
+	 * Return slot holding <i>key</i>, or the empty slot where it would be
+	 * inserted.
+	 * </p>
+	 *
+	 * @param key
+	 * @return
+	 */
+	private int slot(long key) {
+		int slot = LongHash.hash(key) & this.mask;
+		while (this.used[slot] && (this.keys[slot] != key)) {
+			slot = (slot + 1) & this.mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * <p>
+	 * Gets the number of entries.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public final int size() {
+		return this.size;
+	}
+
+	/**
+	 * <p>
+	 * Return value of <i>key</i>, or <i>missing</i> if there is none.
+	 * </p>
+	 *
+	 * @param key
+	 * @param missing
+	 * @return
+	 */
+	public final int get(long key, int missing) {
+		int slot = this.slot(key);
+		return this.used[slot] ? this.values[slot] : missing;
+	}
+
+	/**
+	 * <p>
+	 * Return true if the map has an entry for <i>key</i>.
+	 * </p>
+	 *
+	 * @param key
+	 * @return
+	 */
+	public final boolean containsKey(long key) {
+		return this.used[this.slot(key)];
+	}
+
+	/**
+	 * <p>
+	 * Set value of <i>key</i>.
+	 * </p>
+	 *
+	 * @param key
+	 * @param value
+	 */
+	public final void put(long key, int value) {
+		int slot = this.slot(key);
+		this.values[slot] = value;
+		if (!this.used[slot]) {
+			this.keys[slot] = key;
+			this.used[slot] = true;
+			this.added();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Remove entry of <i>key</i>. Later entries of the probe sequence are
+	 * shifted back, so no tombstones are left.
+	 * </p>
+	 *
+	 * @param key
+	 * @return True if there was an entry.
+	 */
+	public final boolean remove(long key) {
+		int slot = this.slot(key);
+		if (!this.used[slot]) {
+			return false;
+		}
+		int gap = slot;
+		int next = (gap + 1) & this.mask;
+		while (this.used[next]) {
+			int home = LongHash.hash(this.keys[next]) & this.mask;
+			// Move entry back if its home slot is not between gap and next.
+			if (((next - home) & this.mask) >= ((next - gap) & this.mask)) {
+				this.keys[gap] = this.keys[next];
+				this.values[gap] = this.values[next];
+				gap = next;
+			}
+			next = (next + 1) & this.mask;
+		}
+		this.used[gap] = false;
+		this.size -= 1;
+		return true;
+	}
+
+	/**
+	 * <p>
+	 * Return all keys, in table order.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public final long[] keys() {
+		long[] retVal = new long[this.size];
+		int count = 0;
+		for (int i = 0; i < this.keys.length; i++) {
+			if (this.used[i]) {
+				retVal[count++] = this.keys[i];
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Count a new entry, growing the table if needed.
+	 * </p>
+	 */
+	private void added() {
+		this.size += 1;
+		if (this.size > this.resizeAt) {
+			long[] oldKeys = this.keys;
+			int[] oldValues = this.values;
+			boolean[] oldUsed = this.used;
+			this.allocate(oldKeys.length * 2);
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldUsed[i]) {
+					int slot = this.slot(oldKeys[i]);
+					this.keys[slot] = oldKeys[i];
+					this.values[slot] = oldValues[i];
+					this.used[slot] = true;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,324 @@
+package SnomedQuery.Collections;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>
+ * Open addressing hash map from primitive long keys to object values. Keys
+ * are never boxed and entries need no node objects, unlike
+ * java.util.HashMap&lt;Long, V&gt;. Collisions are resolved by linear
+ * probing. Null values are not allowed; a null slot marks an empty entry.
+ * </p>
+ * <p>
+ * Not thread safe for writers. Concurrent readers are safe once writing has
+ * finished.
+ * </p>
+ *
+ * @author Travis Lukach
+ *
+ * @param <V>
+ */
+public class LongObjectHashMap<V> {
+	/**
+	 * <p>
+	 * Keys of the table.
+	 * </p>
+	 */
+	private long[] keys;
+
+	/**
+	 * <p>
+	 * Values of the table. Null marks an empty slot.
+	 * </p>
+	 */
+	private Object[] values;
+
+	/**
+	 * <p>
+	 * Number of entries.
+	 * </p>
+	 */
+	private int size;
+
+	/**
+	 * <p>
+	 * Table size minus one. Table size is a power of two.
+	 * </p>
+	 */
+	private int mask;
+
+	/**
+	 * <p>
+	 * Number of entries at which the table grows.
+	 * </p>
+	 */
+	private int resizeAt;
+
+	/**
+	 * <p>
+	 * Constructor.
+	 * </p>
+	 */
+	public LongObjectHashMap() {
+		this(16);
+	}
+
+	/**
+	 * <p>
+	 * Constructor.
+	 * </p>
+	 *
+	 * @param expectedSize
+	 *            Number of entries that fit without growing the table.
+	 */
+	public LongObjectHashMap(int expectedSize) {
+		this.allocate(LongHash.tableSize(expectedSize));
+	}
+
+	/**
+	 * <p>
+	 * Allocate an empty table of <i>tableSize</i> slots.
+	 * </p>
+	 *
+	 * @param tableSize
+	 */
+	private void allocate(int tableSize) {
+		this.keys = new long[tableSize];
+		this.values = new Object[tableSize];
+		this.mask = tableSize - 1;
+		this.resizeAt = LongHash.resizeAt(tableSize);
+	}
+
+	/**
+	 * <p>
+	 * Return slot holding <i>key</i>, or the empty slot where it would be
+	 * inserted.
+	 * </p>
+	 *
+	 * @param key
+	 * @return
+	 */
+	private int slot(long key) {
+		int slot = LongHash.hash(key) & this.mask;
+		while ((this.values[slot] != null) && (this.keys[slot] != key)) {
+			slot = (slot + 1) & this.mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * <p>
+	 * Gets the number of entries.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public final int size() {
+		return this.size;
+	}
+
+	/**
+	 * <p>
+	 * Return true if the map has no entries.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public final boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * <p>
+	 * Return value of <i>key</i>, or null if there is none.
+	 * </p>
+	 *
+	 * @param key
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public final V get(long key) {
+		return (V) this.values[this.slot(key)];
+	}
+
+	/**
+	 * <p>
+	 * Return true if the map has an entry for <i>key</i>.
+	 * </p>
+	 *
+	 * @param key
+	 * @return
+	 */
+	public final boolean containsKey(long key) {
+		return this.values[this.slot(key)] != null;
+	}
+
+	/**
+	 * <p>
+	 * Set value of <i>key</i>.
+	 * </p>
+	 *
+	 * @param key
+	 * @param value
+	 * @return Previous value of key, or null.
+	 */
+	@SuppressWarnings("unchecked")
+	public final V put(long key, V value) {
+		if (value == null) {
+			throw new NullPointerException("Null values are not supported");
+		}
+		int slot = this.slot(key);
+		V previous = (V) this.values[slot];
+		this.keys[slot] = key;
+		this.values[slot] = value;
+		if (previous == null) {
+			this.added();
+		}
+		return previous;
+	}
+
+	/**
+	 * <p>
+	 * Set value of <i>key</i> if it has none.
+	 * </p>
+	 *
+	 * @param key
+	 * @param value
+	 * @return Existing value of key, or null if value was added.
+	 */
+	@SuppressWarnings("unchecked")
+	public final V putIfAbsent(long key, V value) {
+		if (value == null) {
+			throw new NullPointerException("Null values are not supported");
+		}
+		int slot = this.slot(key);
+		V previous = (V) this.values[slot];
+		if (previous == null) {
+			this.keys[slot] = key;
+			this.values[slot] = value;
+			this.added();
+		}
+		return previous;
+	}
+
+	/**
+	 * <p>
+	 * Remove entry of <i>key</i>. Later entries of the probe sequence are
+	 * shifted back, so no tombstones are left.
+	 * </p>
+	 *
+	 * @param key
+	 * @return Removed value, or null.
+	 */
+	@SuppressWarnings("unchecked")
+	public final V remove(long key) {
+		int slot = this.slot(key);
+		V previous = (V) this.values[slot];
+		if (previous == null) {
+			return null;
+		}
+		int gap = slot;
+		int next = (gap + 1) & this.mask;
+		while (this.values[next] != null) {
+			int home = LongHash.hash(this.keys[next]) & this.mask;
+			// Move entry back if its home slot is not between gap and next.
+			if (((next - home) & this.mask) >= ((next - gap) & this.mask)) {
+				this.keys[gap] = this.keys[next];
+				this.values[gap] = this.values[next];
+				gap = next;
+			}
+			next = (next + 1) & this.mask;
+		}
+		this.values[gap] = null;
+		this.size -= 1;
+		return previous;
+	}
+
+	/**
+	 * <p>
+	 * Count a new entry, growing the table if needed.
+	 * </p>
+	 */
+	private void added() {
+		this.size += 1;
+		if (this.size > this.resizeAt) {
+			long[] oldKeys = this.keys;
+			Object[] oldValues = this.values;
+			this.allocate(oldKeys.length * 2);
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldValues[i] != null) {
+					int slot = this.slot(oldKeys[i]);
+					this.keys[slot] = oldKeys[i];
+					this.values[slot] = oldValues[i];
+				}
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Return all keys, in table order.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public final long[] keys() {
+		long[] retVal = new long[this.size];
+		int i = 0;
+		for (int slot = 0; slot < this.values.length; slot++) {
+			if (this.values[slot] != null) {
+				retVal[i++] = this.keys[slot];
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Return all values, in table order. The map must not be changed while
+	 * the values are iterated.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public final Iterable<V> values() {
+		return () -> new Iterator<V>() {
+			private int slot = this.advance(0);
+
+			private int advance(int from) {
+				while ((from < LongObjectHashMap.this.values.length)
+						&& (LongObjectHashMap.this.values[from] == null)) {
+					from += 1;
+				}
+				return from;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return this.slot < LongObjectHashMap.this.values.length;
+			}
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public V next() {
+				if (!this.hasNext()) {
+					throw new NoSuchElementException();
+				}
+				V retVal = (V) LongObjectHashMap.this.values[this.slot];
+				this.slot = this.advance(this.slot + 1);
+				return retVal;
+			}
+		};
+	}
+
+	/**
+	 * <p>
+	 * Remove all entries.
+	 * </p>
+	 */
+	public final void clear() {
+		this.allocate(LongHash.tableSize(0));
+		this.size = 0;
+	}
+}
@@ -0,0 +1,66 @@
+package SnomedQuery.Collections;
+
+import java.util.function.IntBinaryOperator;
+
+/**
+ * <p>
+ * Sorting of the rows of columnar tables. Rows are sorted as int row
+ * numbers, so the columns themselves can stay primitive arrays.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+public final class RowSort {
+	/**
+	 * <p>
+	 * Not instantiated.
+	 * </p>
+	 */
+	private RowSort() {
+	}
+
+	/**
+	 * <p>
+	 * Return rows 0 to <i>count</i> - 1 in the order given by
+	 * <i>compare</i>. The sort is a stable merge sort on ints, so rows that
+	 * compare equal keep their order and no row is boxed.
+	 * </p>
+	 *
+	 * @param count
+	 * @param compare
+	 * @return
+	 */
+	public static int[] sortRows(int count, IntBinaryOperator compare) {
+		int[] rows = new int[count];
+		for (int i = 0; i < count; i++) {
+			rows[i] = i;
+		}
+		int[] temp = new int[count];
+		for (int width = 1; width < count; width *= 2) {
+			for (int low = 0; low < count; low += 2 * width) {
+				int middle = Math.min(low + width, count);
+				int high = Math.min(low + (2 * width), count);
+				int left = low;
+				int right = middle;
+				int out = low;
+				while ((left < middle) && (right < high)) {
+					if (compare.applyAsInt(rows[right], rows[left]) < 0) {
+						temp[out++] = rows[right++];
+					} else {
+						temp[out++] = rows[left++];
+					}
+				}
+				while (left < middle) {
+					temp[out++] = rows[left++];
+				}
+				while (right < high) {
+					temp[out++] = rows[right++];
+				}
+			}
+			int[] swap = rows;
+			rows = temp;
+			temp = swap;
+		}
+		return rows;
+	}
+}
@@ -0,0 +1,417 @@
+package SnomedQuery.Collections;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>
+ * Pool of distinct String instances, so that values repeated many times
+ * (terms of every version of a description, language codes, module names)
+ * are held in memory once. Unlike String.intern the pool is owned by the
+ * caller and is released with it.
+ * </p>
+ * <p>
+ * Strings can be looked up from ascii bytes or chars without first building
+ * a String, so a hit allocates nothing. The pool is split into segments,
+ * each with its own lock, so it can be shared by parallel parse tasks.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+public class StringPool {
+	/**
+	 * <p>
+	 * Number of segments. Must be a power of two.
+	 * </p>
+	 */
+	private static final int segmentCount = 32;
+
+	/**
+	 * <p>
+	 * Segments of the pool, selected by hash code.
+	 * </p>
+	 */
+	private final Segment[] segments = new Segment[segmentCount];
+
+	/**
+	 * <p>
+	 * Constructor.
+	 * </p>
+	 */
+	public StringPool() {
+		for (int i = 0; i < segmentCount; i++) {
+			this.segments[i] = new Segment();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Return the pooled instance equal to <i>value</i>, adding <i>value</i>
+	 * if there is none.
+	 * </p>
+	 *
+	 * @param value
+	 * @return
+	 */
+	public final String intern(String value) {
+		if (value == null) {
+			return null;
+		}
+		int hash = value.hashCode();
+		return this.segment(hash).intern(hash, value);
+	}
+
+	/**
+	 * <p>
+	 * Return the pooled String equal to the UTF-8 bytes of <i>buffer</i>
+	 * from <i>offset</i>, decoding them only if there is none. Non ascii
+	 * values are always decoded before the lookup.
+	 * </p>
+	 *
+	 * @param buffer
+	 * @param offset
+	 * @param length
+	 * @return
+	 */
+	public final String intern(ByteBuffer buffer, int offset, int length) {
+		// Hash as String.hashCode does, which for ascii is over the bytes.
+		int hash = 0;
+		for (int i = 0; i < length; i++) {
+			byte b = buffer.get(offset + i);
+			if (b < 0) {
+				byte[] bytes = new byte[length];
+				for (int j = 0; j < length; j++) {
+					bytes[j] = buffer.get(offset + j);
+				}
+				return this.intern(new String(bytes, StandardCharsets.UTF_8));
+			}
+			hash = (31 * hash) + b;
+		}
+		return this.segment(hash).intern(hash, buffer, offset, length);
+	}
+
+	/**
+	 * <p>
+	 * Return the pooled String equal to <i>length</i> chars of
+	 * <i>chars</i> from <i>offset</i>, building one only if there is none.
+	 * </p>
+	 *
+	 * @param chars
+	 * @param offset
+	 * @param length
+	 * @return
+	 */
+	public final String intern(char[] chars, int offset, int length) {
+		int hash = 0;
+		for (int i = 0; i < length; i++) {
+			hash = (31 * hash) + chars[offset + i];
+		}
+		return this.segment(hash).intern(hash, chars, offset, length);
+	}
+
+	/**
+	 * <p>
+	 * Gets the number of distinct Strings in the pool.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public final int size() {
+		int retVal = 0;
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				retVal += segment.size;
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Gets the number of lookups made.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public final long getLookupCount() {
+		long retVal = 0;
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				retVal += segment.lookups;
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Gets the number of lookups that found a pooled String.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public final long getHitCount() {
+		long retVal = 0;
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				retVal += segment.hits;
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Override ToString method. Reports size and hit rate of the pool.
+	 * </p>
+	 *
+	 * @return
+	 */
+	@Override
+	public String toString() {
+		long lookups = this.getLookupCount();
+		long hits = this.getHitCount();
+		return String.format(
+				"%1$s distinct strings, %2$s of %3$s lookups hit (%4$.1f%%)",
+				this.size(), hits, lookups,
+				(lookups == 0) ? 0.0 : (100.0 * hits) / lookups);
+	}
+
+	/**
+	 * <p>
+	 * Return segment holding Strings with hash code <i>hash</i>.
+	 * </p>
+	 *
+	 * @param hash
+	 * @return
+	 */
+	private Segment segment(int hash) {
+		return this.segments[(hash ^ (hash >>> 16)) & (segmentCount - 1)];
+	}
+
+	/**
+	 * <p>
+	 * Open addressing hash set of Strings, with the hash code of each slot
+	 * kept alongside so most mismatches are rejected without comparing
+	 * chars.
+	 * </p>
+	 */
+	private static final class Segment {
+		/**
+		 * <p>
+		 * Pooled Strings, null for empty slots.
+		 * </p>
+		 */
+		private String[] values = new String[64];
+
+		/**
+		 * <p>
+		 * Hash code of the String in each slot.
+		 * </p>
+		 */
+		private int[] hashes = new int[64];
+
+		/**
+		 * <p>
+		 * Number of pooled Strings.
+		 * </p>
+		 */
+		private int size;
+
+		/**
+		 * <p>
+		 * Number of lookups.
+		 * </p>
+		 */
+		private long lookups;
+
+		/**
+		 * <p>
+		 * Number of lookups that found a pooled String.
+		 * </p>
+		 */
+		private long hits;
+
+		/**
+		 * <p>
+		 * Return first slot to probe for <i>hash</i>.
+		 * </p>
+		 *
+		 * @param hash
+		 * @return
+		 */
+		private int start(int hash) {
+			int mixed = hash * 0x9E3779B9;
+			return (mixed ^ (mixed >>> 16)) & (this.values.length - 1);
+		}
+
+		/**
+		 * <p>
+		 * Return pooled String equal to <i>value</i>.
+		 * </p>
+		 *
+		 * @param hash
+		 * @param value
+		 * @return
+		 */
+		synchronized String intern(int hash, String value) {
+			this.lookups += 1;
+			int mask = this.values.length - 1;
+			for (int slot = this.start(hash);; slot = (slot + 1) & mask) {
+				String pooled = this.values[slot];
+				if (pooled == null) {
+					return this.insert(slot, hash, value);
+				}
+				if ((this.hashes[slot] == hash) && pooled.equals(value)) {
+					this.hits += 1;
+					return pooled;
+				}
+			}
+		}
+
+		/**
+		 * <p>
+		 * Return pooled String equal to the ascii bytes of <i>buffer</i>.
+		 * </p>
+		 *
+		 * @param hash
+		 * @param buffer
+		 * @param offset
+		 * @param length
+		 * @return
+		 */
+		synchronized String intern(int hash, ByteBuffer buffer, int offset,
+				int length) {
+			this.lookups += 1;
+			int mask = this.values.length - 1;
+			for (int slot = this.start(hash);; slot = (slot + 1) & mask) {
+				String pooled = this.values[slot];
+				if (pooled == null) {
+					byte[] bytes = new byte[length];
+					for (int i = 0; i < length; i++) {
+						bytes[i] = buffer.get(offset + i);
+					}
+					return this.insert(slot, hash, new String(bytes,
+							StandardCharsets.ISO_8859_1));
+				}
+				if ((this.hashes[slot] == hash)
+						&& equals(pooled, buffer, offset, length)) {
+					this.hits += 1;
+					return pooled;
+				}
+			}
+		}
+
+		/**
+		 * <p>
+		 * Return pooled String equal to the chars of <i>chars</i>.
+		 * </p>
+		 *
+		 * @param hash
+		 * @param chars
+		 * @param offset
+		 * @param length
+		 * @return
+		 */
+		synchronized String intern(int hash, char[] chars, int offset,
+				int length) {
+			this.lookups += 1;
+			int mask = this.values.length - 1;
+			for (int slot = this.start(hash);; slot = (slot + 1) & mask) {
+				String pooled = this.values[slot];
+				if (pooled == null) {
+					return this.insert(slot, hash,
+							new String(chars, offset, length));
+				}
+				if ((this.hashes[slot] == hash)
+						&& equals(pooled, chars, offset, length)) {
+					this.hits += 1;
+					return pooled;
+				}
+			}
+		}
+
+		/**
+		 * <p>
+		 * Store <i>value</i> in the empty <i>slot</i>, growing the table
+		 * when it is two thirds full.
+		 * </p>
+		 *
+		 * @param slot
+		 * @param hash
+		 * @param value
+		 * @return
+		 */
+		private String insert(int slot, int hash, String value) {
+			this.values[slot] = value;
+			this.hashes[slot] = hash;
+			this.size += 1;
+			if ((this.size * 3) > (this.values.length * 2)) {
+				String[] oldValues = this.values;
+				int[] oldHashes = this.hashes;
+				this.values = new String[oldValues.length * 2];
+				this.hashes = new int[oldValues.length * 2];
+				int mask = this.values.length - 1;
+				for (int i = 0; i < oldValues.length; i++) {
+					if (oldValues[i] != null) {
+						int to = this.start(oldHashes[i]);
+						while (this.values[to] != null) {
+							to = (to + 1) & mask;
+						}
+						this.values[to] = oldValues[i];
+						this.hashes[to] = oldHashes[i];
+					}
+				}
+			}
+			return value;
+		}
+
+		/**
+		 * <p>
+		 * Return true if <i>value</i> equals the ascii bytes.
+		 * </p>
+		 *
+		 * @param value
+		 * @param buffer
+		 * @param offset
+		 * @param length
+		 * @return
+		 */
+		private static boolean equals(String value, ByteBuffer buffer,
+				int offset, int length) {
+			if (value.length() != length) {
+				return false;
+			}
+			for (int i = 0; i < length; i++) {
+				if (value.charAt(i) != buffer.get(offset + i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * <p>
+		 * Return true if <i>value</i> equals the chars.
+		 * </p>
+		 *
+		 * @param value
+		 * @param chars
+		 * @param offset
+		 * @param length
+		 * @return
+		 */
+		private static boolean equals(String value, char[] chars, int offset,
+				int length) {
+			if (value.length() != length) {
+				return false;
+			}
+			for (int i = 0; i < length; i++) {
+				if (value.charAt(i) != chars[offset + i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,234 @@
+package SnomedQuery.JUnitTests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+import SnomedQuery.Collections.LongIntHashMap;
+import SnomedQuery.Collections.LongObjectHashMap;
+
+/**
+ * <p>
+ * Tests of the primitive long keyed hash maps, in particular removal by
+ * backward shift within probe runs that collide and wrap around the end of
+ * the table.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+public class LongHashMapTests {
+	/**
+	 * <p>
+	 * Size of the table of a map created with the default constructor.
+	 * </p>
+	 */
+	private static final int tableSize = 16;
+
+	/**
+	 * <p>
+	 * Return the slot a key hashes to in a table of <i>size</i> slots. Mixes
+	 * the key as LongHash does.
+	 * </p>
+	 *
+	 * @param key
+	 * @param size
+	 * @return
+	 */
+	private static int homeSlot(long key, int size) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32) ^ (h >>> 16)) & (size - 1);
+	}
+
+	/**
+	 * <p>
+	 * Return <i>count</i> keys that hash to <i>slot</i> of a default table.
+	 * </p>
+	 *
+	 * @param slot
+	 * @param count
+	 * @return
+	 */
+	private static long[] collidingKeys(int slot, int count) {
+		long[] retVal = new long[count];
+		int found = 0;
+		for (long key = 1; found < count; key++) {
+			if (homeSlot(key, tableSize) == slot) {
+				retVal[found++] = key;
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Keys whose probe run starts in the last slot and wraps to the first
+	 * slots, followed by keys whose home is one of the wrapped slots.
+	 * </p>
+	 *
+	 * @return
+	 */
+	private static long[] wrappingKeys() {
+		long[] last = collidingKeys(tableSize - 1, 4);
+		long[] first = collidingKeys(1, 2);
+		long[] retVal = Arrays.copyOf(last, last.length + first.length);
+		System.arraycopy(first, 0, retVal, last.length, first.length);
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Remove each wrapping key in turn from LongObjectHashMap; all other
+	 * keys must stay reachable.
+	 * </p>
+	 */
+	@Test
+	public final void objectMapRemoveWrapping() {
+		long[] keys = wrappingKeys();
+		for (int removed = 0; removed < keys.length; removed++) {
+			LongObjectHashMap<String> map = new LongObjectHashMap<String>();
+			for (long key : keys) {
+				assertNull(map.put(key, Long.toString(key)));
+			}
+			assertEquals(Long.toString(keys[removed]),
+					map.remove(keys[removed]));
+			assertNull(map.remove(keys[removed]));
+			assertEquals(keys.length - 1, map.size());
+			for (int i = 0; i < keys.length; i++) {
+				assertEquals(
+						(i == removed) ? null : Long.toString(keys[i]),
+						map.get(keys[i]));
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Remove each wrapping key in turn from LongIntHashMap; all other keys
+	 * must stay reachable.
+	 * </p>
+	 */
+	@Test
+	public final void intMapRemoveWrapping() {
+		long[] keys = wrappingKeys();
+		for (int removed = 0; removed < keys.length; removed++) {
+			LongIntHashMap map = new LongIntHashMap();
+			for (int i = 0; i < keys.length; i++) {
+				map.put(keys[i], i);
+			}
+			assertTrue(map.remove(keys[removed]));
+			assertFalse(map.remove(keys[removed]));
+			assertEquals(keys.length - 1, map.size());
+			for (int i = 0; i < keys.length; i++) {
+				assertEquals((i == removed) ? -1 : i, map.get(keys[i], -1));
+				assertEquals(i != removed, map.containsKey(keys[i]));
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Put replaces the value of a key without adding an entry, and
+	 * putIfAbsent keeps it.
+	 * </p>
+	 */
+	@Test
+	public final void putReplaces() {
+		LongObjectHashMap<String> objectMap = new LongObjectHashMap<String>();
+		assertNull(objectMap.put(404684003L, "a"));
+		assertEquals("a", objectMap.put(404684003L, "b"));
+		assertEquals("b", objectMap.putIfAbsent(404684003L, "c"));
+		assertEquals("b", objectMap.get(404684003L));
+		assertEquals(1, objectMap.size());
+
+		LongIntHashMap intMap = new LongIntHashMap();
+		intMap.put(404684003L, 1);
+		intMap.put(404684003L, 2);
+		assertEquals(2, intMap.get(404684003L, -1));
+		assertEquals(1, intMap.size());
+	}
+
+	/**
+	 * <p>
+	 * Random puts and removes, with keys from a small range so that runs
+	 * collide and the tables grow, checked against java.util.HashMap.
+	 * </p>
+	 */
+	@Test
+	public final void matchesHashMap() {
+		Random random = new Random(138875005);
+		HashMap<Long, Integer> expected = new HashMap<Long, Integer>();
+		LongObjectHashMap<Integer> objectMap = new LongObjectHashMap<Integer>();
+		LongIntHashMap intMap = new LongIntHashMap();
+		for (int step = 0; step < 200000; step++) {
+			// Grow to a few thousand entries, then shrink and grow again.
+			int range = ((step / 50000) % 2 == 0) ? 4096 : 512;
+			long key = random.nextInt(range) - 100;
+			if (random.nextInt(3) == 0) {
+				Integer previous = expected.remove(key);
+				assertEquals(previous, objectMap.remove(key));
+				assertEquals(previous != null, intMap.remove(key));
+			} else {
+				int value = random.nextInt(1000000);
+				assertEquals(expected.put(key, value),
+						objectMap.put(key, value));
+				intMap.put(key, value);
+			}
+			assertEquals(expected.size(), objectMap.size());
+			assertEquals(expected.size(), intMap.size());
+		}
+		for (long key = -100; key < 4096; key++) {
+			Integer value = expected.get(key);
+			assertEquals(value, objectMap.get(key));
+			assertEquals((value == null) ? -1 : value.intValue(),
+					intMap.get(key, -1));
+		}
+		long[] keys = objectMap.keys();
+		Arrays.sort(keys);
+		long[] intKeys = intMap.keys();
+		Arrays.sort(intKeys);
+		long[] expectedKeys = new long[expected.size()];
+		int i = 0;
+		for (long key : expected.keySet()) {
+			expectedKeys[i++] = key;
+		}
+		Arrays.sort(expectedKeys);
+		assertArrayEquals(expectedKeys, keys);
+		assertArrayEquals(expectedKeys, intKeys);
+		ArrayList<Integer> values = new ArrayList<Integer>();
+		for (Integer value : objectMap.values()) {
+			values.add(value);
+		}
+		assertEquals(expected.size(), values.size());
+	}
+
+	/**
+	 * <p>
+	 * Entries survive the table growing, and clear empties the map.
+	 * </p>
+	 */
+	@Test
+	public final void resizeAndClear() {
+		LongObjectHashMap<Long> objectMap = new LongObjectHashMap<Long>();
+		LongIntHashMap intMap = new LongIntHashMap(1);
+		for (long key = 0; key < 100000; key++) {
+			long id = (key * 1000) + 5;
+			objectMap.put(id, key);
+			intMap.put(id, (int) key);
+		}
+		for (long key = 0; key < 100000; key++) {
+			long id = (key * 1000) + 5;
+			assertEquals(Long.valueOf(key), objectMap.get(id));
+			assertEquals(key, intMap.get(id, -1));
+		}
+		objectMap.clear();
+		assertTrue(objectMap.isEmpty());
+		assertNull(objectMap.get(5));
+		objectMap.put(5, 1L);
+		assertEquals(Long.valueOf(1), objectMap.get(5));
+	}
+}
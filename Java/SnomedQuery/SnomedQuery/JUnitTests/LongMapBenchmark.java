@@ -0,0 +1,146 @@
+package SnomedQuery.JUnitTests;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import SnomedQuery.Collections.LongIntHashMap;
+import SnomedQuery.Collections.LongObjectHashMap;
+
+/**
+ * <p>
+ * Compares the primitive long keyed maps with java.util.HashMap for the
+ * access pattern of the parser and model dictionaries: fill once with
+ * Snomed style ids, then look every id up.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+public class LongMapBenchmark {
+	/**
+	 * <p>
+	 * Constructor.
+	 * </p>
+	 */
+	public LongMapBenchmark() {
+	}
+
+	/**
+	 * <p>
+	 * Main method of benchmark.
+	 * </p>
+	 *
+	 * @param args
+	 *            Optional entry count (default 1000000).
+	 */
+	public static void main(final String[] args) {
+		int count = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+		long[] ids = snomedIds(count);
+		Object value = new Object();
+		for (int round = 0; round < 5; round++) {
+			long start = System.nanoTime();
+			HashMap<Long, Object> hashMap = new HashMap<Long, Object>();
+			for (long id : ids) {
+				hashMap.put(id, value);
+			}
+			long filled = System.nanoTime();
+			int found = 0;
+			for (long id : ids) {
+				if (hashMap.get(id) != null) {
+					found += 1;
+				}
+			}
+			long searched = System.nanoTime();
+			report("HashMap<Long, Object>", start, filled, searched, found);
+
+			start = System.nanoTime();
+			LongObjectHashMap<Object> objectMap = new LongObjectHashMap<Object>();
+			for (long id : ids) {
+				objectMap.put(id, value);
+			}
+			filled = System.nanoTime();
+			found = 0;
+			for (long id : ids) {
+				if (objectMap.get(id) != null) {
+					found += 1;
+				}
+			}
+			searched = System.nanoTime();
+			report("LongObjectHashMap", start, filled, searched, found);
+
+			start = System.nanoTime();
+			HashMap<Long, Integer> ordinalHashMap = new HashMap<Long, Integer>();
+			for (int i = 0; i < ids.length; i++) {
+				ordinalHashMap.put(ids[i], i);
+			}
+			filled = System.nanoTime();
+			found = 0;
+			for (long id : ids) {
+				if (ordinalHashMap.get(id) != null) {
+					found += 1;
+				}
+			}
+			searched = System.nanoTime();
+			report("HashMap<Long, Integer>", start, filled, searched, found);
+
+			start = System.nanoTime();
+			LongIntHashMap intMap = new LongIntHashMap();
+			for (int i = 0; i < ids.length; i++) {
+				intMap.put(ids[i], i);
+			}
+			filled = System.nanoTime();
+			found = 0;
+			for (long id : ids) {
+				if (intMap.get(id, -1) >= 0) {
+					found += 1;
+				}
+			}
+			searched = System.nanoTime();
+			report("LongIntHashMap", start, filled, searched, found);
+			System.out.println();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Build <i>count</i> distinct ids shaped like Snomed concept ids: an item
+	 * number, a partition identifier and a check digit.
+	 * </p>
+	 *
+	 * @param count
+	 * @return
+	 */
+	private static long[] snomedIds(int count) {
+		Random random = new Random(116680003);
+		LongIntHashMap seen = new LongIntHashMap(count);
+		long[] ids = new long[count];
+		int i = 0;
+		while (i < count) {
+			long item = 100000 + (long) (random.nextDouble() * 900000000L);
+			long id = (item * 1000) + random.nextInt(10);
+			if (!seen.containsKey(id)) {
+				seen.put(id, i);
+				ids[i++] = id;
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * <p>
+	 * Print the timings of one map.
+	 * </p>
+	 *
+	 * @param name
+	 * @param start
+	 * @param filled
+	 * @param searched
+	 * @param found
+	 */
+	private static void report(String name, long start, long filled,
+			long searched, int found) {
+		System.out.println(String.format(
+				"%1$-24s put %2$6d ms  get %3$6d ms  (%4$d found)", name,
+				(filled - start) / 1000000, (searched - filled) / 1000000,
+				found));
+	}
+}
@@ -0,0 +1,223 @@
+package SnomedQuery.JUnitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import SnomedQuery.Model.MappedSnomedModel;
+import SnomedQuery.Model.SnomedModelManager;
+import SnomedQuery.Model.SnomedQueryConcept;
+
+/**
+ * <p>
+ * Round trip tests of the varint and UTF-8 string encodings of the model
+ * files, through serialize and the loaders. Effective times and the id
+ * steps between preferred terms are written as varints, names and terms
+ * as UTF-8.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+public class ModelCodecTests {
+	/**
+	 * <p>
+	 * Concept ids, in ascending order. The id steps between them include
+	 * negative and ten byte varints.
+	 * </p>
+	 */
+	private static final long[] conceptIds = {Long.MIN_VALUE, -128, -1, 0, 1,
+			127, 128, 16383, 16384, 404684003L, 900000000000207008L,
+			Long.MAX_VALUE};
+
+	/**
+	 * <p>
+	 * Effective times, written as varints; negative values take ten bytes.
+	 * </p>
+	 */
+	private static final int[] effectiveTimes = {0, 1, 127, 128, 16384,
+			20020131, Integer.MAX_VALUE, -1, -128, Integer.MIN_VALUE};
+
+	/**
+	 * <p>
+	 * Strings: empty, ASCII, 2 and 3 byte UTF-8, and 4 byte UTF-8 from
+	 * surrogate pairs, also at the ends of the string.
+	 * </p>
+	 */
+	private static final String[] strings = {"", "a",
+			"Pulmonary valve structure (body structure)",
+			"Maladie de Cr\u00e9utzfeldt-Jakob", "\u00b5g/\u00b0C",
+			"\u7cd6\u5c3f\u75c5", "\u20ac\uffff", "\ud83d\ude00",
+			"x\ud83d\ude00y\ud800\udc00", "\udbff\udfff\u00e9a"};
+
+	/**
+	 * <p>
+	 * Return the concepts of the test model, in id order. Names, synonyms
+	 * and preferred terms cycle through strings.
+	 * </p>
+	 *
+	 * @return
+	 */
+	private static SnomedQueryConcept[] concepts() {
+		SnomedQueryConcept[] retVal = new SnomedQueryConcept[conceptIds.length];
+		for (int i = 0; i < retVal.length; i++) {
+			String[] synonyms = new String[i % 4];
+			for (int j = 0; j < synonyms.length; j++) {
+				synonyms[j] = strings[(i + j + 1) % strings.length];
+			}
+			retVal[i] = new SnomedQueryConcept(conceptIds[i],
+					strings[i % strings.length], synonyms,
+					strings[(i + 2) % strings.length],
+					strings[(i + 3) % strings.length],
+					effectiveTimes[i % effectiveTimes.length]);
+			retVal[i].setConceptPreferredTerm(
+					strings[(i + 4) % strings.length]);
+		}
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Assert that the record of <i>actual</i> is that of <i>expected</i>,
+	 * with unpaired surrogates of <i>expected</i> replaced by '?'.
+	 * </p>
+	 *
+	 * @param expected
+	 * @param actual
+	 */
+	private static void assertRecordEquals(SnomedQueryConcept expected,
+			SnomedQueryConcept actual) {
+		assertNotNull(actual);
+		assertEquals(expected.getConceptId(), actual.getConceptId());
+		assertEquals(encoded(expected.getConceptFullyQualifiedName()),
+				actual.getConceptFullyQualifiedName());
+		String[] synonyms = expected.getConceptSynonyms();
+		assertEquals(synonyms.length, actual.getConceptSynonyms().length);
+		for (int i = 0; i < synonyms.length; i++) {
+			assertEquals(encoded(synonyms[i]), actual.getConceptSynonyms()[i]);
+		}
+		assertEquals(encoded(expected.getConceptModule()),
+				actual.getConceptModule());
+		assertEquals(encoded(expected.getConceptDefinitionStatus()),
+				actual.getConceptDefinitionStatus());
+		assertEquals(expected.getConceptEffectiveDate(),
+				actual.getConceptEffectiveDate());
+	}
+
+	/**
+	 * <p>
+	 * Return <i>value</i> as it reads back from UTF-8, with unpaired
+	 * surrogates replaced by '?' as String.getBytes does.
+	 * </p>
+	 *
+	 * @param value
+	 * @return
+	 */
+	private static String encoded(String value) {
+		StringBuilder retVal = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (Character.isHighSurrogate(c) && (i + 1 < value.length())
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				retVal.append(c).append(value.charAt(++i));
+			} else {
+				retVal.append(Character.isSurrogate(c) ? '?' : c);
+			}
+		}
+		return retVal.toString();
+	}
+
+	/**
+	 * <p>
+	 * Serialize <i>concepts</i> and assert that loadRecords,
+	 * loadRecordsLazily and MappedSnomedModel read them back.
+	 * </p>
+	 *
+	 * @param concepts
+	 * @throws IOException
+	 */
+	private static void assertRoundTrip(SnomedQueryConcept[] concepts)
+			throws IOException {
+		String baseDir = ModelFixture.serialize(concepts);
+		try {
+			SnomedModelManager eager = new SnomedModelManager(baseDir);
+			eager.loadRecords();
+			SnomedModelManager lazy = new SnomedModelManager(baseDir);
+			lazy.loadRecordsLazily(0);
+			MappedSnomedModel mapped = new MappedSnomedModel(baseDir);
+			assertEquals(concepts.length, eager.getConceptCount());
+			assertEquals(concepts.length, lazy.getConceptCount());
+			assertEquals(concepts.length, mapped.getConceptCount());
+			for (int i = 0; i < concepts.length; i++) {
+				long conceptId = concepts[i].getConceptId();
+				SnomedQueryConcept actual = eager.getConceptById(conceptId);
+				assertRecordEquals(concepts[i], actual);
+				assertEquals(encoded(concepts[i].getConceptPreferredTerm()),
+						actual.getConceptPreferredTerm());
+				assertRecordEquals(concepts[i],
+						lazy.getConceptById(conceptId));
+				assertEquals(i, mapped.getOrdinal(conceptId));
+				assertRecordEquals(concepts[i], mapped.getConcept(i));
+			}
+		} finally {
+			ModelFixture.delete(baseDir);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Varint effective times and id steps, and UTF-8 strings, read back as
+	 * written.
+	 * </p>
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public final void roundTrip() throws IOException {
+		assertRoundTrip(concepts());
+	}
+
+	/**
+	 * <p>
+	 * Unpaired surrogates are written as '?', as String.getBytes does.
+	 * </p>
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public final void unpairedSurrogates() throws IOException {
+		String[] values = {"\ud800", "a\udc00b", "\udc00\ud800", "\ud83d"};
+		SnomedQueryConcept[] concepts = new SnomedQueryConcept[values.length];
+		for (int i = 0; i < values.length; i++) {
+			concepts[i] = new SnomedQueryConcept(i, values[i],
+					new String[]{values[(i + 1) % values.length]}, "Module",
+					"Primitive", 20020131);
+			concepts[i].setConceptPreferredTerm(values[i]);
+		}
+		assertEquals("?", encoded("\ud800"));
+		assertRoundTrip(concepts);
+	}
+
+	/**
+	 * <p>
+	 * Strings longer than the 1 MB write buffer are written as they are,
+	 * between values that are buffered: a synonym in a record block and a
+	 * preferred term in the preferred terms file.
+	 * </p>
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public final void longStrings() throws IOException {
+		StringBuilder builder = new StringBuilder();
+		while (builder.length() < (3 << 19)) {
+			builder.append("Structure \u00e9\u7cd6\ud83d\ude00 ");
+		}
+		String value = builder.toString();
+		SnomedQueryConcept[] concepts = concepts();
+		concepts[1].setConceptSynonyms(new String[]{"", value, ""});
+		concepts[2].setConceptPreferredTerm(value);
+		assertRoundTrip(concepts);
+	}
+}
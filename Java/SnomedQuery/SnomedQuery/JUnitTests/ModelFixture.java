@@ -0,0 +1,87 @@
+package SnomedQuery.JUnitTests;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import SnomedQuery.Model.SnomedModelManager;
+import SnomedQuery.Model.SnomedQueryConcept;
+
+/**
+ * <p>
+ * Serialized models in temporary directories, for tests that load them
+ * back. The model files are named relative to the base directory as on
+ * Windows, so on other systems they are created next to it, in the same
+ * temporary directory.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+final class ModelFixture {
+	/**
+	 * <p>
+	 * Not instantiated.
+	 * </p>
+	 */
+	private ModelFixture() {
+	}
+
+	/**
+	 * <p>
+	 * Return the base directory of a model in a new temporary directory,
+	 * with its parsed records directory created.
+	 * </p>
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	static String createBaseDir() throws IOException {
+		File dir = Files.createTempDirectory("SnomedQueryTests").toFile();
+		String retVal = new File(dir, "Data").getPath();
+		new File(new SnomedModelManager(retVal).getParsedRecordsDir())
+				.mkdirs();
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Serialize <i>concepts</i> as a model in a new temporary directory,
+	 * returning the base directory of the model.
+	 * </p>
+	 *
+	 * @param concepts
+	 * @return
+	 * @throws IOException
+	 */
+	static String serialize(SnomedQueryConcept[] concepts)
+			throws IOException {
+		String retVal = createBaseDir();
+		SnomedModelManager model = new SnomedModelManager(retVal);
+		model.addAll(Arrays.asList(concepts));
+		model.serialize();
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Delete the temporary directory of a model made by createBaseDir.
+	 * </p>
+	 *
+	 * @param baseDir
+	 */
+	static void delete(String baseDir) {
+		ArrayList<File> files = new ArrayList<File>();
+		files.add(new File(baseDir).getParentFile());
+		for (int i = 0; i < files.size(); i++) {
+			File[] children = files.get(i).listFiles();
+			if (children != null) {
+				files.addAll(Arrays.asList(children));
+			}
+		}
+		for (int i = files.size() - 1; i >= 0; i--) {
+			files.get(i).delete();
+		}
+	}
+}
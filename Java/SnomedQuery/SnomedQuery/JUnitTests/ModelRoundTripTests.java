@@ -0,0 +1,311 @@
+package SnomedQuery.JUnitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import SnomedQuery.Model.MappedSnomedModel;
+import SnomedQuery.Model.SnomedModelManager;
+import SnomedQuery.Model.SnomedQueryConcept;
+
+/**
+ * <p>
+ * Round trip tests of serialized models: a model is serialized and loaded
+ * again eagerly, lazily and through MappedSnomedModel, and every concept
+ * is compared with the one serialized. The model has enough concepts to
+ * fill many record blocks, and some records longer than a block.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+public class ModelRoundTripTests {
+	/**
+	 * <p>
+	 * Number of concepts of the test model.
+	 * </p>
+	 */
+	private static final int conceptCount = 3000;
+
+	/**
+	 * <p>
+	 * Size of records a block of the concept data file is filled up to.
+	 * </p>
+	 */
+	private static final int blockSize = 4096;
+
+	/**
+	 * <p>
+	 * Return the id of the concept at <i>ordinal</i> of the test model.
+	 * </p>
+	 *
+	 * @param ordinal
+	 * @return
+	 */
+	private static long conceptId(int ordinal) {
+		return 100000000L + (ordinal * 1009L) + (ordinal % 7);
+	}
+
+	/**
+	 * <p>
+	 * Return the concepts of the test model, in id order. Each concept but
+	 * the first has the concept at half its ordinal as parent, and every
+	 * fifth one the first concept too. Every 500th concept has a synonym
+	 * longer than a record block.
+	 * </p>
+	 *
+	 * @return
+	 */
+	private static SnomedQueryConcept[] concepts() {
+		StringBuilder longSynonym = new StringBuilder();
+		while (longSynonym.length() < 3 * blockSize) {
+			longSynonym.append("Structure of pulmonary valve \u00e9\u7cd6 ");
+		}
+		SnomedQueryConcept[] retVal = new SnomedQueryConcept[conceptCount];
+		for (int i = 0; i < conceptCount; i++) {
+			String[] synonyms = new String[i % 4];
+			for (int j = 0; j < synonyms.length; j++) {
+				synonyms[j] = String.format("Synonym %1$s of concept %2$s",
+						j, i);
+			}
+			if (i % 500 == 1) {
+				synonyms = new String[]{longSynonym.toString() + i, ""};
+			}
+			retVal[i] = new SnomedQueryConcept(conceptId(i),
+					String.format("Concept %1$s \ud83d\ude00 (finding)", i),
+					synonyms,
+					(i % 3 == 0) ? "SNOMED CT core module"
+							: "SNOMED CT model component module",
+					(i % 2 == 0) ? "Primitive" : "Defined",
+					20020131 + ((i % 10) * 10000));
+			if (i % 3 == 0) {
+				retVal[i].setConceptPreferredTerm("Preferred " + i);
+			}
+		}
+		ArrayList<ArrayList<SnomedQueryConcept>> children;
+		children = new ArrayList<ArrayList<SnomedQueryConcept>>();
+		for (int i = 0; i < conceptCount; i++) {
+			children.add(new ArrayList<SnomedQueryConcept>());
+		}
+		retVal[0].setIsAParents(new SnomedQueryConcept[0]);
+		for (int i = 1; i < conceptCount; i++) {
+			int parent = (i - 1) / 2;
+			if ((i % 5 == 0) && (parent != 0)) {
+				retVal[i].setIsAParents(
+						new SnomedQueryConcept[]{retVal[parent], retVal[0]});
+				children.get(0).add(retVal[i]);
+			} else {
+				retVal[i].setIsAParents(
+						new SnomedQueryConcept[]{retVal[parent]});
+			}
+			children.get(parent).add(retVal[i]);
+		}
+		for (int i = 0; i < conceptCount; i++) {
+			retVal[i].setIsAChildren(
+					children.get(i).toArray(new SnomedQueryConcept[0]));
+		}
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Return the ids of <i>concepts</i>, in ascending order.
+	 * </p>
+	 *
+	 * @param concepts
+	 * @return
+	 */
+	private static long[] sortedIds(SnomedQueryConcept[] concepts) {
+		long[] retVal = new long[concepts.length];
+		for (int i = 0; i < concepts.length; i++) {
+			retVal[i] = concepts[i].getConceptId();
+		}
+		Arrays.sort(retVal);
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Return the ids of the concepts at <i>ordinals</i> of <i>model</i>, in
+	 * ascending order.
+	 * </p>
+	 *
+	 * @param model
+	 * @param ordinals
+	 * @return
+	 */
+	private static long[] sortedIds(MappedSnomedModel model, int[] ordinals) {
+		long[] retVal = new long[ordinals.length];
+		for (int i = 0; i < ordinals.length; i++) {
+			retVal[i] = model.getConceptId(ordinals[i]);
+		}
+		Arrays.sort(retVal);
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Assert that the record of <i>actual</i> is that of <i>expected</i>.
+	 * </p>
+	 *
+	 * @param expected
+	 * @param actual
+	 */
+	private static void assertRecordEquals(SnomedQueryConcept expected,
+			SnomedQueryConcept actual) {
+		assertNotNull(actual);
+		assertEquals(expected.getConceptId(), actual.getConceptId());
+		assertEquals(expected.getConceptFullyQualifiedName(),
+				actual.getConceptFullyQualifiedName());
+		assertArrayEquals(expected.getConceptSynonyms(),
+				actual.getConceptSynonyms());
+		assertEquals(expected.getConceptModule(), actual.getConceptModule());
+		assertEquals(expected.getConceptDefinitionStatus(),
+				actual.getConceptDefinitionStatus());
+		assertEquals(expected.getConceptEffectiveDate(),
+				actual.getConceptEffectiveDate());
+	}
+
+	/**
+	 * <p>
+	 * Assert that every concept of <i>model</i> is the same as the one of
+	 * <i>expected</i>, with the same parents, children and preferred term.
+	 * </p>
+	 *
+	 * @param expected
+	 * @param model
+	 */
+	private static void assertModelEquals(SnomedQueryConcept[] expected,
+			SnomedModelManager model) {
+		assertEquals(expected.length, model.getConceptCount());
+		for (SnomedQueryConcept concept : expected) {
+			SnomedQueryConcept actual = model
+					.getConceptById(concept.getConceptId());
+			assertRecordEquals(concept, actual);
+			assertEquals(concept.getConceptPreferredTerm(),
+					actual.getConceptPreferredTerm());
+			assertArrayEquals(sortedIds(concept.getIsAParents()),
+					sortedIds(actual.getIsAParents()));
+			assertArrayEquals(sortedIds(concept.getIsAChildren()),
+					sortedIds(actual.getIsAChildren()));
+		}
+	}
+
+	/**
+	 * <p>
+	 * A model loaded by loadRecords is the model serialized.
+	 * </p>
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public final void eagerRoundTrip() throws IOException {
+		SnomedQueryConcept[] concepts = concepts();
+		String baseDir = ModelFixture.serialize(concepts);
+		try {
+			SnomedModelManager model = new SnomedModelManager(baseDir);
+			model.loadRecords();
+			assertModelEquals(concepts, model);
+		} finally {
+			ModelFixture.delete(baseDir);
+		}
+	}
+
+	/**
+	 * <p>
+	 * A model loaded by loadRecordsLazily is the model serialized, with and
+	 * without a cache of decoded names.
+	 * </p>
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public final void lazyRoundTrip() throws IOException {
+		SnomedQueryConcept[] concepts = concepts();
+		String baseDir = ModelFixture.serialize(concepts);
+		try {
+			for (int textCacheSize : new int[]{0, 16}) {
+				SnomedModelManager model = new SnomedModelManager(baseDir);
+				model.loadRecordsLazily(textCacheSize);
+				assertModelEquals(concepts, model);
+			}
+		} finally {
+			ModelFixture.delete(baseDir);
+		}
+	}
+
+	/**
+	 * <p>
+	 * A mapped model answers with the concepts serialized, reading them in
+	 * an order that skips between blocks, through a block cache too small
+	 * to hold them all and through no cache.
+	 * </p>
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public final void mappedRoundTrip() throws IOException {
+		SnomedQueryConcept[] concepts = concepts();
+		String baseDir = ModelFixture.serialize(concepts);
+		try {
+			for (long cacheSize : new long[]{0, 2L * blockSize, 4L << 20}) {
+				MappedSnomedModel model = new MappedSnomedModel(baseDir,
+						cacheSize);
+				assertEquals(conceptCount, model.getConceptCount());
+				for (int step = 0; step < conceptCount; step++) {
+					int i = (int) ((step * 1543L) % conceptCount);
+					SnomedQueryConcept concept = concepts[i];
+					int ordinal = model.getOrdinal(concept.getConceptId());
+					assertEquals(i, ordinal);
+					assertRecordEquals(concept, model.getConcept(ordinal));
+					assertEquals(concept.getConceptFullyQualifiedName(),
+							model.getFullyQualifiedName(ordinal));
+					assertArrayEquals(concept.getConceptSynonyms(),
+							model.getSynonyms(ordinal));
+					assertArrayEquals(sortedIds(concept.getIsAParents()),
+							sortedIds(model, model.getParents(ordinal)));
+					assertArrayEquals(sortedIds(concept.getIsAChildren()),
+							sortedIds(model, model.getChildren(ordinal)));
+				}
+				assertEquals(-1, model.getOrdinal(conceptId(1) + 1));
+				assertEquals(conceptCount - 1,
+						model.findDescendants(conceptId(0)).length);
+			}
+		} finally {
+			ModelFixture.delete(baseDir);
+		}
+	}
+
+	/**
+	 * <p>
+	 * The records fill many blocks, and the block cache stays within its
+	 * bound while records are read in an order that skips between blocks.
+	 * </p>
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public final void blockCacheEviction() throws IOException {
+		SnomedQueryConcept[] concepts = concepts();
+		String baseDir = ModelFixture.serialize(concepts);
+		try {
+			long cacheCapacity = 3L * blockSize;
+			MappedSnomedModel model = new MappedSnomedModel(baseDir,
+					cacheCapacity);
+			assertTrue(model.getRecordBlockCount() > 10);
+			assertEquals(0, model.getBlockCacheSize());
+			for (int step = 0; step < 2 * conceptCount; step++) {
+				int i = (int) ((step * 2557L) % conceptCount);
+				assertEquals(concepts[i].getConceptFullyQualifiedName(),
+						model.getFullyQualifiedName(i));
+				assertTrue(model.getBlockCacheSize() <= cacheCapacity);
+			}
+			assertTrue(model.getBlockCacheSize() > 0);
+		} finally {
+			ModelFixture.delete(baseDir);
+		}
+	}
+}
@@ -0,0 +1,286 @@
+package SnomedQuery.JUnitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import Parser.DescriptionIdMap;
+import Parser.FileReader;
+import Parser.SnomedDeltaParser;
+import SnomedQuery.Model.SnomedModelManager;
+import SnomedQuery.Model.SnomedQueryConcept;
+
+/**
+ * <p>
+ * Tests of SnomedDeltaParser: small Delta files are applied to a model
+ * serialized with its description ids, and the model is loaded again.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+public class SnomedDeltaParserTests {
+	/**
+	 * <p>
+	 * Id of the root concept of the test model.
+	 * </p>
+	 */
+	private static final long rootId = 138875005L;
+
+	/**
+	 * <p>
+	 * Id of the clinical finding concept of the test model.
+	 * </p>
+	 */
+	private static final long findingId = 404684003L;
+
+	/**
+	 * <p>
+	 * Id of the module concept of the test model.
+	 * </p>
+	 */
+	private static final long moduleId = 900000000000207008L;
+
+	/**
+	 * <p>
+	 * Id of the definition status concept of the test model.
+	 * </p>
+	 */
+	private static final long definitionStatusId = 900000000000074008L;
+
+	/**
+	 * <p>
+	 * Module name of the concepts of the test model.
+	 * </p>
+	 */
+	private static final String module = "SNOMED CT core module (core metadata concept)";
+
+	/**
+	 * <p>
+	 * Definition status name of the concepts of the test model.
+	 * </p>
+	 */
+	private static final String definitionStatus = "Primitive (core metadata concept)";
+
+	/**
+	 * <p>
+	 * Header line of the concept file.
+	 * </p>
+	 */
+	private static final String conceptHeader = "id\teffectiveTime\tactive\tmoduleId\tdefinitionStatusId";
+
+	/**
+	 * <p>
+	 * Header line of the description file.
+	 * </p>
+	 */
+	private static final String descriptionHeader = "id\teffectiveTime\tactive\tmoduleId\tconceptId\tlanguageCode\ttypeId\tterm\tcaseSignificanceId";
+
+	/**
+	 * <p>
+	 * Header line of the relationship file.
+	 * </p>
+	 */
+	private static final String relationshipHeader = "id\teffectiveTime\tactive\tmoduleId\tsourceId\tdestinationId\trelationshipGroup\ttypeId\tcharacteristicTypeId\tmodifierId";
+
+	/**
+	 * <p>
+	 * Serialize the test model and its description ids in a new temporary
+	 * directory, returning the base directory of the model. The finding,
+	 * module and definition status concepts are children of the root; each
+	 * concept has the description ids of its fully specified name and of
+	 * its synonyms, the first synonym being preferred.
+	 * </p>
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	private static String serialize() throws IOException {
+		SnomedQueryConcept root = concept(rootId,
+				"SNOMED CT Concept (SNOMED RT+CTV3)", "SNOMED CT Concept");
+		SnomedQueryConcept finding = concept(findingId,
+				"Clinical finding (finding)", "Clinical finding");
+		SnomedQueryConcept moduleConcept = concept(moduleId, module,
+				"SNOMED CT core module");
+		SnomedQueryConcept definitionStatusConcept = concept(
+				definitionStatusId, definitionStatus, "Primitive");
+		SnomedQueryConcept[] children = {finding, definitionStatusConcept,
+				moduleConcept};
+		for (SnomedQueryConcept child : children) {
+			child.setIsAParents(new SnomedQueryConcept[]{root});
+		}
+		root.setIsAChildren(children);
+		SnomedQueryConcept[] concepts = {root, finding, definitionStatusConcept,
+				moduleConcept};
+		String retVal = ModelFixture.serialize(concepts);
+		DescriptionIdMap descriptionIds = new DescriptionIdMap();
+		for (int i = 0; i < concepts.length; i++) {
+			long conceptId = concepts[i].getConceptId();
+			descriptionIds.put(conceptId,
+					new long[]{1000010 + (i * 10), 1000021 + (i * 10)});
+			descriptionIds.setPreferred(conceptId, 1);
+			descriptionIds.setEnglishName(conceptId, true);
+		}
+		descriptionIds.write(FileReader.comboPaths(new String[]{
+				new SnomedModelManager(retVal).getParsedRecordsDir(),
+				DescriptionIdMap.fileName}));
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Return a concept of the test model with one synonym, that is also its
+	 * preferred term.
+	 * </p>
+	 *
+	 * @param conceptId
+	 * @param name
+	 * @param synonym
+	 * @return
+	 */
+	private static SnomedQueryConcept concept(long conceptId, String name,
+			String synonym) {
+		SnomedQueryConcept retVal = new SnomedQueryConcept(conceptId, name,
+				new String[]{synonym}, module, definitionStatus, 20020131);
+		retVal.setConceptPreferredTerm(synonym);
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Write a Delta file with <i>header</i> and <i>rows</i>, returning its
+	 * path.
+	 * </p>
+	 *
+	 * @param baseDir
+	 * @param name
+	 * @param header
+	 * @param rows
+	 * @return
+	 * @throws IOException
+	 */
+	private static String writeDelta(String baseDir, String name,
+			String header, String... rows) throws IOException {
+		File retVal = new File(new File(baseDir).getParentFile(), name);
+		StringBuilder lines = new StringBuilder(header).append('\n');
+		for (String row : rows) {
+			lines.append(row).append('\n');
+		}
+		Files.write(retVal.toPath(),
+				lines.toString().getBytes(StandardCharsets.UTF_8));
+		return retVal.getPath();
+	}
+
+	/**
+	 * <p>
+	 * Apply Delta files with the indicated rows to the model at
+	 * <i>baseDir</i>.
+	 * </p>
+	 *
+	 * @param baseDir
+	 * @param concepts
+	 * @param descriptions
+	 * @param relationships
+	 * @throws IOException
+	 */
+	private static void applyDelta(String baseDir, String[] concepts,
+			String[] descriptions, String[] relationships)
+			throws IOException {
+		new SnomedDeltaParser(baseDir).applyDelta(
+				writeDelta(baseDir, "sct2_Concept_Delta_INT_20170131.txt",
+						conceptHeader, concepts),
+				writeDelta(baseDir, "sct2_Relationship_Delta_INT_20170131.txt",
+						relationshipHeader, relationships),
+				writeDelta(baseDir,
+						"sct2_Description_Delta-en_INT_20170131.txt",
+						descriptionHeader, descriptions));
+	}
+
+	/**
+	 * <p>
+	 * A new concept with its names and IsA link, and a changed preferred
+	 * synonym, are in the model loaded again.
+	 * </p>
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public final void applyDelta() throws IOException {
+		String baseDir = serialize();
+		try {
+			applyDelta(baseDir,
+					new String[]{"2000001\t20170131\t1\t900000000000207008\t900000000000074008"},
+					new String[]{
+							"8000011\t20170131\t1\t900000000000207008\t2000001\ten\t900000000000003001\tBrand new concept (finding)\t900000000000448009",
+							"8000022\t20170131\t1\t900000000000207008\t2000001\ten\t900000000000013009\tBrand new concept\t900000000000448009",
+							"1000031\t20170131\t1\t900000000000207008\t404684003\ten\t900000000000013009\tClinical finding renamed\t900000000000448009"},
+					new String[]{
+							"9000001\t20170131\t1\t900000000000207008\t2000001\t404684003\t0\t116680003\t900000000000011006\t900000000000451002"});
+
+			SnomedModelManager model = new SnomedModelManager(baseDir);
+			model.loadRecords();
+			assertEquals(5, model.getConceptCount());
+			SnomedQueryConcept concept = model.getConceptById(2000001);
+			assertNotNull(concept);
+			assertEquals("Brand new concept (finding)",
+					concept.getConceptFullyQualifiedName());
+			assertArrayEquals(new String[]{"Brand new concept"},
+					concept.getConceptSynonyms());
+			assertEquals(module, concept.getConceptModule());
+			assertEquals(definitionStatus,
+					concept.getConceptDefinitionStatus());
+			assertEquals(20170131, concept.getConceptEffectiveDate());
+			SnomedQueryConcept finding = model.getConceptById(findingId);
+			assertArrayEquals(new SnomedQueryConcept[]{finding},
+					concept.getIsAParents());
+			assertArrayEquals(new SnomedQueryConcept[]{concept},
+					finding.getIsAChildren());
+			assertArrayEquals(new String[]{"Clinical finding renamed"},
+					finding.getConceptSynonyms());
+			assertEquals("Clinical finding renamed",
+					finding.getConceptPreferredTerm());
+			assertEquals(3, model.getConceptById(rootId).getIsAChildren().length);
+		} finally {
+			ModelFixture.delete(baseDir);
+		}
+	}
+
+	/**
+	 * <p>
+	 * A new concept without an active fully specified name is rejected, and
+	 * the model is left as it was.
+	 * </p>
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public final void newConceptWithoutName() throws IOException {
+		String baseDir = serialize();
+		try {
+			try {
+				applyDelta(baseDir,
+						new String[]{"2000001\t20170131\t1\t900000000000207008\t900000000000074008"},
+						new String[]{
+								"8000022\t20170131\t1\t900000000000207008\t2000001\ten\t900000000000013009\tBrand new concept\t900000000000448009"},
+						new String[0]);
+				fail("Delta applied");
+			} catch (RuntimeException e) {
+				assertTrue(e.getMessage(),
+						e.getMessage().endsWith("re-run the full parse"));
+			}
+			SnomedModelManager model = new SnomedModelManager(baseDir);
+			model.loadRecords();
+			assertEquals(4, model.getConceptCount());
+			assertNull(model.getConceptById(2000001));
+			assertEquals(Arrays.asList("Clinical finding"), Arrays.asList(
+					model.getConceptById(findingId).getConceptSynonyms()));
+		} finally {
+			ModelFixture.delete(baseDir);
+		}
+	}
+}
@@ -0,0 +1,625 @@
+package SnomedQuery.Model;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+import SnomedQuery.Collections.LongIntHashMap;
+import SnomedQuery.Collections.RowSort;
+
+/**
+ * <p>
+ * Columnar store of the active attribute (non IsA) relationships of the
+ * model, such as finding site, causative agent and method. Each row is a
+ * typed edge from a source concept to a destination concept with its role
+ * group number.
+ * </p>
+ * <p>
+ * Once indexed, the rows are sorted by source, type and destination, so the
+ * attributes of a source (and of a source and type) are a contiguous range
+ * of rows, and an index array gives the rows ordered by type and
+ * destination. Adding or removing rows drops the index, which is rebuilt
+ * on the next query.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+public class AttributeRelationshipStore {
+	/**
+	 * <p>
+	 * Name of the file the store is serialized to, in the parsed records
+	 * directory.
+	 * </p>
+	 */
+	public static final String fileName = "SnomedQueryConcepts.AttributeRelationships.ser";
+
+	/**
+	 * <p>
+	 * Initial row capacity.
+	 * </p>
+	 */
+	private static final int initialCapacity = 1024;
+
+	/**
+	 * <p>
+	 * Number of rows.
+	 * </p>
+	 */
+	private int size;
+
+	/**
+	 * <p>
+	 * Relationship id column.
+	 * </p>
+	 */
+	private long[] ids = new long[initialCapacity];
+
+	/**
+	 * <p>
+	 * Source concept id column.
+	 * </p>
+	 */
+	private long[] sourceIds = new long[initialCapacity];
+
+	/**
+	 * <p>
+	 * Relationship type concept id column.
+	 * </p>
+	 */
+	private long[] typeIds = new long[initialCapacity];
+
+	/**
+	 * <p>
+	 * Destination concept id column.
+	 * </p>
+	 */
+	private long[] destinationIds = new long[initialCapacity];
+
+	/**
+	 * <p>
+	 * Role group column.
+	 * </p>
+	 */
+	private int[] relationshipGroups = new int[initialCapacity];
+
+	/**
+	 * <p>
+	 * Rows ordered by type and destination. Null until indexed.
+	 * </p>
+	 */
+	private volatile int[] typeDestinationIndex;
+
+	/**
+	 * <p>
+	 * Row of each relationship id. Built on first change and dropped when
+	 * the rows are sorted.
+	 * </p>
+	 */
+	private LongIntHashMap rowById;
+
+	/**
+	 * <p>
+	 * Constructor.
+	 * </p>
+	 */
+	public AttributeRelationshipStore() {
+	}
+
+	/**
+	 * <p>
+	 * Gets the number of rows.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public final int size() {
+		return this.size;
+	}
+
+	/**
+	 * <p>
+	 * Add a relationship, or replace the row of a relationship id that is
+	 * already stored.
+	 * </p>
+	 *
+	 * @param id
+	 * @param sourceId
+	 * @param typeId
+	 * @param destinationId
+	 * @param relationshipGroup
+	 */
+	public final synchronized void put(long id, long sourceId, long typeId,
+			long destinationId, int relationshipGroup) {
+		int row = this.getRowById().get(id, -1);
+		if (row < 0) {
+			if (this.size == this.ids.length) {
+				// Indexing trims the columns to the row count, which may be 0.
+				this.resize(Math.max(2 * this.ids.length, initialCapacity));
+			}
+			row = this.size++;
+			this.rowById.put(id, row);
+		}
+		this.ids[row] = id;
+		this.sourceIds[row] = sourceId;
+		this.typeIds[row] = typeId;
+		this.destinationIds[row] = destinationId;
+		this.relationshipGroups[row] = relationshipGroup;
+		this.typeDestinationIndex = null;
+	}
+
+	/**
+	 * <p>
+	 * Remove the row of a relationship id, if there is one. The last row is
+	 * moved into its place.
+	 * </p>
+	 *
+	 * @param id
+	 * @return True if a row was removed.
+	 */
+	public final synchronized boolean remove(long id) {
+		int row = this.getRowById().get(id, -1);
+		if (row < 0) {
+			return false;
+		}
+		this.removeRow(row);
+		return true;
+	}
+
+	/**
+	 * <p>
+	 * Remove the rows whose source or destination is not a concept, as
+	 * reported by <i>isConcept</i>.
+	 * </p>
+	 *
+	 * @param isConcept
+	 * @return Number of rows removed.
+	 */
+	public final synchronized int retainConcepts(LongPredicate isConcept) {
+		int removed = 0;
+		this.getRowById();
+		// Rows after row are already checked, so moving the last row into
+		// row's place never skips one.
+		for (int row = this.size - 1; row >= 0; row--) {
+			if (!isConcept.test(this.sourceIds[row])
+					|| !isConcept.test(this.destinationIds[row])) {
+				this.removeRow(row);
+				removed += 1;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * <p>
+	 * Remove a row, moving the last row into its place.
+	 * </p>
+	 *
+	 * @param row
+	 */
+	private void removeRow(int row) {
+		int last = this.size - 1;
+		this.rowById.remove(this.ids[row]);
+		if (row != last) {
+			this.ids[row] = this.ids[last];
+			this.sourceIds[row] = this.sourceIds[last];
+			this.typeIds[row] = this.typeIds[last];
+			this.destinationIds[row] = this.destinationIds[last];
+			this.relationshipGroups[row] = this.relationshipGroups[last];
+			this.rowById.put(this.ids[row], row);
+		}
+		this.size = last;
+		this.typeDestinationIndex = null;
+	}
+
+	/**
+	 * <p>
+	 * Gets the row of each relationship id, building it if needed.
+	 * </p>
+	 *
+	 * @return
+	 */
+	private LongIntHashMap getRowById() {
+		if (this.rowById == null) {
+			LongIntHashMap map = new LongIntHashMap(this.size);
+			for (int row = 0; row < this.size; row++) {
+				map.put(this.ids[row], row);
+			}
+			this.rowById = map;
+		}
+		return this.rowById;
+	}
+
+	/**
+	 * <p>
+	 * Resize all columns to <i>capacity</i> rows.
+	 * </p>
+	 *
+	 * @param capacity
+	 */
+	private void resize(int capacity) {
+		this.ids = Arrays.copyOf(this.ids, capacity);
+		this.sourceIds = Arrays.copyOf(this.sourceIds, capacity);
+		this.typeIds = Arrays.copyOf(this.typeIds, capacity);
+		this.destinationIds = Arrays.copyOf(this.destinationIds, capacity);
+		this.relationshipGroups = Arrays.copyOf(this.relationshipGroups,
+				capacity);
+	}
+
+	/**
+	 * <p>
+	 * Sort the rows by source, type and destination and build the type and
+	 * destination index, unless that is already done.
+	 * </p>
+	 */
+	private void index() {
+		if (this.typeDestinationIndex == null) {
+			this.buildIndex();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Build the index if no other thread has built it meanwhile.
+	 * </p>
+	 */
+	private synchronized void buildIndex() {
+		if (this.typeDestinationIndex != null) {
+			return;
+		}
+		int[] order = RowSort.sortRows(this.size, (a, b) -> {
+			int retVal = Long.compare(this.sourceIds[a], this.sourceIds[b]);
+			if (retVal == 0) {
+				retVal = Long.compare(this.typeIds[a], this.typeIds[b]);
+			}
+			if (retVal == 0) {
+				retVal = Long.compare(this.destinationIds[a],
+						this.destinationIds[b]);
+			}
+			if (retVal == 0) {
+				retVal = Integer.compare(this.relationshipGroups[a],
+						this.relationshipGroups[b]);
+			}
+			return retVal;
+		});
+		this.permute(order);
+		this.rowById = null;
+
+		this.typeDestinationIndex = RowSort.sortRows(this.size, (a, b) -> {
+			int retVal = Long.compare(this.typeIds[a], this.typeIds[b]);
+			if (retVal == 0) {
+				retVal = Long.compare(this.destinationIds[a],
+						this.destinationIds[b]);
+			}
+			return retVal;
+		});
+	}
+
+	/**
+	 * <p>
+	 * Reorder all columns so that new row i is old row order[i].
+	 * </p>
+	 *
+	 * @param order
+	 */
+	private void permute(int[] order) {
+		long[] newIds = new long[this.size];
+		long[] newSourceIds = new long[this.size];
+		long[] newTypeIds = new long[this.size];
+		long[] newDestinationIds = new long[this.size];
+		int[] newRelationshipGroups = new int[this.size];
+		for (int i = 0; i < this.size; i++) {
+			int row = order[i];
+			newIds[i] = this.ids[row];
+			newSourceIds[i] = this.sourceIds[row];
+			newTypeIds[i] = this.typeIds[row];
+			newDestinationIds[i] = this.destinationIds[row];
+			newRelationshipGroups[i] = this.relationshipGroups[row];
+		}
+		this.ids = newIds;
+		this.sourceIds = newSourceIds;
+		this.typeIds = newTypeIds;
+		this.destinationIds = newDestinationIds;
+		this.relationshipGroups = newRelationshipGroups;
+	}
+
+	/**
+	 * <p>
+	 * Gets the relationship id of a row. Row numbers are only stable until
+	 * the store is changed.
+	 * </p>
+	 *
+	 * @param row
+	 * @return
+	 */
+	public final long getId(int row) {
+		this.index();
+		return this.ids[row];
+	}
+
+	/**
+	 * <p>
+	 * Gets the source concept id of a row.
+	 * </p>
+	 *
+	 * @param row
+	 * @return
+	 */
+	public final long getSourceId(int row) {
+		this.index();
+		return this.sourceIds[row];
+	}
+
+	/**
+	 * <p>
+	 * Gets the type concept id of a row.
+	 * </p>
+	 *
+	 * @param row
+	 * @return
+	 */
+	public final long getTypeId(int row) {
+		this.index();
+		return this.typeIds[row];
+	}
+
+	/**
+	 * <p>
+	 * Gets the destination concept id of a row.
+	 * </p>
+	 *
+	 * @param row
+	 * @return
+	 */
+	public final long getDestinationId(int row) {
+		this.index();
+		return this.destinationIds[row];
+	}
+
+	/**
+	 * <p>
+	 * Gets the role group of a row. 0 means the attribute is not grouped.
+	 * </p>
+	 *
+	 * @param row
+	 * @return
+	 */
+	public final int getRelationshipGroup(int row) {
+		this.index();
+		return this.relationshipGroups[row];
+	}
+
+	/**
+	 * <p>
+	 * Return first row with source id not less than <i>sourceId</i> and, for
+	 * that source, type id not less than <i>typeId</i>.
+	 * </p>
+	 *
+	 * @param sourceId
+	 * @param typeId
+	 * @return
+	 */
+	public final int findSourceStart(long sourceId, long typeId) {
+		this.index();
+		int low = 0;
+		int high = this.size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if ((this.sourceIds[middle] < sourceId)
+					|| ((this.sourceIds[middle] == sourceId)
+							&& (this.typeIds[middle] < typeId))) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * <p>
+	 * Return first row of the attributes of <i>sourceId</i>.
+	 * </p>
+	 *
+	 * @param sourceId
+	 * @return
+	 */
+	public final int findSourceStart(long sourceId) {
+		return this.findSourceStart(sourceId, Long.MIN_VALUE);
+	}
+
+	/**
+	 * <p>
+	 * Return the row after the last attribute of <i>sourceId</i>.
+	 * </p>
+	 *
+	 * @param sourceId
+	 * @return
+	 */
+	public final int findSourceEnd(long sourceId) {
+		if (sourceId == Long.MAX_VALUE) {
+			return this.size;
+		}
+		return this.findSourceStart(sourceId + 1, Long.MIN_VALUE);
+	}
+
+	/**
+	 * <p>
+	 * Return the row after the last attribute of <i>sourceId</i> with type
+	 * <i>typeId</i>.
+	 * </p>
+	 *
+	 * @param sourceId
+	 * @param typeId
+	 * @return
+	 */
+	public final int findSourceEnd(long sourceId, long typeId) {
+		if (typeId == Long.MAX_VALUE) {
+			return this.findSourceEnd(sourceId);
+		}
+		return this.findSourceStart(sourceId, typeId + 1);
+	}
+
+	/**
+	 * <p>
+	 * Gets the rows ordered by type and destination.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public final int[] getTypeDestinationIndex() {
+		this.index();
+		return this.typeDestinationIndex;
+	}
+
+	/**
+	 * <p>
+	 * Return the position in the type and destination index of the first
+	 * row with type id not less than <i>typeId</i> and, for that type,
+	 * destination id not less than <i>destinationId</i>.
+	 * </p>
+	 *
+	 * @param typeId
+	 * @param destinationId
+	 * @return
+	 */
+	public final int findTypeDestinationStart(long typeId,
+			long destinationId) {
+		int[] index = this.getTypeDestinationIndex();
+		int low = 0;
+		int high = index.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			int row = index[middle];
+			if ((this.typeIds[row] < typeId) || ((this.typeIds[row] == typeId)
+					&& (this.destinationIds[row] < destinationId))) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * <p>
+	 * Return the position in the type and destination index after the last
+	 * row with type <i>typeId</i> and destination <i>destinationId</i>.
+	 * </p>
+	 *
+	 * @param typeId
+	 * @param destinationId
+	 * @return
+	 */
+	public final int findTypeDestinationEnd(long typeId,
+			long destinationId) {
+		if (destinationId == Long.MAX_VALUE) {
+			return (typeId == Long.MAX_VALUE)
+					? this.size
+					: this.findTypeDestinationStart(typeId + 1,
+							Long.MIN_VALUE);
+		}
+		return this.findTypeDestinationStart(typeId, destinationId + 1);
+	}
+
+	/**
+	 * <p>
+	 * Return the destination ids of the <i>typeId</i> attributes of
+	 * <i>sourceId</i>, in destination id order.
+	 * </p>
+	 *
+	 * @param sourceId
+	 * @param typeId
+	 * @return
+	 */
+	public final long[] findDestinations(long sourceId, long typeId) {
+		int start = this.findSourceStart(sourceId, typeId);
+		int end = this.findSourceEnd(sourceId, typeId);
+		return Arrays.copyOfRange(this.destinationIds, start, end);
+	}
+
+	/**
+	 * <p>
+	 * Return the ids of the concepts that have a <i>typeId</i> attribute
+	 * with value <i>destinationId</i>, in source id order.
+	 * </p>
+	 *
+	 * @param typeId
+	 * @param destinationId
+	 * @return
+	 */
+	public final long[] findSources(long typeId, long destinationId) {
+		int[] index = this.getTypeDestinationIndex();
+		int start = this.findTypeDestinationStart(typeId, destinationId);
+		int end = this.findTypeDestinationEnd(typeId, destinationId);
+		long[] retVal = new long[end - start];
+		for (int i = start; i < end; i++) {
+			retVal[i - start] = this.sourceIds[index[i]];
+		}
+		Arrays.sort(retVal);
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Write the store to <i>path</i>, after the model file header. Rows are
+	 * written in source, type and destination order.
+	 * </p>
+	 *
+	 * @param path
+	 * @throws IOException
+	 */
+	public final void write(String path) throws IOException {
+		this.index();
+		try (ModelWriter output = new ModelWriter(path,
+				SnomedModelManager.formatVersion)) {
+			output.putInt(this.size);
+			for (int row = 0; row < this.size; row++) {
+				output.putLong(this.ids[row]);
+				output.putLong(this.sourceIds[row]);
+				output.putLong(this.typeIds[row]);
+				output.putLong(this.destinationIds[row]);
+				output.putInt(this.relationshipGroups[row]);
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Read a store written by <i>write</i> from <i>path</i>. Files without
+	 * the model file header, or of another format version, are rejected.
+	 * </p>
+	 *
+	 * @param path
+	 * @return
+	 */
+	public static AttributeRelationshipStore read(String path) {
+		AttributeRelationshipStore retVal = new AttributeRelationshipStore();
+		try {
+			ByteBuffer buffer = ModelReader.readFile(path);
+			if (ModelReader.readFormatVersion(buffer,
+					path) != SnomedModelManager.formatVersion) {
+				throw new RuntimeException(String.format(
+						"Model file %1$s has no header, re-run the full parse",
+						path));
+			}
+			ModelReader reader = new ModelReader(buffer);
+			int size = reader.getInt();
+			retVal.resize(Math.max(size, initialCapacity));
+			for (int row = 0; row < size; row++) {
+				retVal.ids[row] = reader.getLong();
+				retVal.sourceIds[row] = reader.getLong();
+				retVal.typeIds[row] = reader.getLong();
+				retVal.destinationIds[row] = reader.getLong();
+				retVal.relationshipGroups[row] = reader.getInt();
+			}
+			retVal.size = size;
+		} catch (IOException | BufferUnderflowException e) {
+			throw new RuntimeException(String.format(
+					"Unable to read attribute relationships from %1$s, re-run the full parse",
+					path), e);
+		}
+		return retVal;
+	}
+}
@@ -0,0 +1,357 @@
+package SnomedQuery.Model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * <p>
+ * Concept records of the concept data file, stored as blocks of a few KB
+ * that are deflated independently. Records are addressed by their offset
+ * in the records as if they were not compressed; the block table gives the
+ * record offset each block starts at and where its compressed bytes are,
+ * so the records of one concept are read by inflating one block. Blocks
+ * only start at the start of a record.
+ * </p>
+ * <p>
+ * Inflated blocks can be kept in a cache bounded by their total size,
+ * least recently used first out.
+ * </p>
+ * <p>
+ * Thread safe.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+final class CompressedRecords {
+	/**
+	 * <p>
+	 * Size of records a block is filled up to before it is compressed.
+	 * </p>
+	 */
+	static final int blockSize = 4096;
+
+	/**
+	 * <p>
+	 * Default bound of the inflated block cache, in bytes.
+	 * </p>
+	 */
+	static final long defaultCacheSize = 4L << 20;
+
+	/**
+	 * <p>
+	 * Contents of the concept data file.
+	 * </p>
+	 */
+	private final ByteBuffer buffer;
+
+	/**
+	 * <p>
+	 * Record offset each block starts at, with the length of all records
+	 * at the end.
+	 * </p>
+	 */
+	private final IntBuffer blockStarts;
+
+	/**
+	 * <p>
+	 * Offset of each compressed block from blockPosition, with the length
+	 * of all compressed blocks at the end.
+	 * </p>
+	 */
+	private final IntBuffer blockOffsets;
+
+	/**
+	 * <p>
+	 * Position of the first compressed block in buffer.
+	 * </p>
+	 */
+	private final int blockPosition;
+
+	/**
+	 * <p>
+	 * Inflated blocks by block number. Null if there is no cache.
+	 * </p>
+	 */
+	private final LinkedHashMap<Integer, byte[]> cache;
+
+	/**
+	 * <p>
+	 * Bound of the total size of the cached blocks, in bytes.
+	 * </p>
+	 */
+	private final long cacheCapacity;
+
+	/**
+	 * <p>
+	 * Total size of the cached blocks, in bytes.
+	 * </p>
+	 */
+	private long cacheSize;
+
+	/**
+	 * <p>
+	 * Constructor. Reads the block table at the position of <i>reader</i>
+	 * and leaves it after the compressed blocks.
+	 * </p>
+	 *
+	 * @param buffer
+	 *            Contents of the concept data file.
+	 * @param reader
+	 *            Reader of <i>buffer</i>, positioned at the block table.
+	 * @param cacheCapacity
+	 *            Bound of the inflated block cache in bytes, 0 for no cache.
+	 */
+	CompressedRecords(ByteBuffer buffer, ModelReader reader,
+			long cacheCapacity) {
+		this.buffer = buffer;
+		int blockCount = reader.getInt();
+		this.blockStarts = reader.getIntBuffer(blockCount + 1);
+		this.blockOffsets = reader.getIntBuffer(blockCount + 1);
+		this.blockPosition = reader.position();
+		reader.position(this.blockPosition + this.blockOffsets.get(blockCount));
+		this.cacheCapacity = cacheCapacity;
+		this.cache = (cacheCapacity <= 0) ? null
+				: new LinkedHashMap<Integer, byte[]>(16, 0.75f, true);
+	}
+
+	/**
+	 * <p>
+	 * Gets the number of blocks.
+	 * </p>
+	 *
+	 * @return
+	 */
+	int getBlockCount() {
+		return this.blockOffsets.limit() - 1;
+	}
+
+	/**
+	 * <p>
+	 * Gets the record offset <i>block</i> starts at. The offset of the
+	 * block after the last is the length of all records.
+	 * </p>
+	 *
+	 * @param block
+	 * @return
+	 */
+	int getBlockStart(int block) {
+		return this.blockStarts.get(block);
+	}
+
+	/**
+	 * <p>
+	 * Gets the total size of the cached blocks, in bytes.
+	 * </p>
+	 *
+	 * @return
+	 */
+	long getCacheSize() {
+		if (this.cache == null) {
+			return 0;
+		}
+		synchronized (this.cache) {
+			return this.cacheSize;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Return a reader positioned at the record at <i>recordOffset</i>,
+	 * inflating its block if it is not cached.
+	 * </p>
+	 *
+	 * @param recordOffset
+	 * @return
+	 */
+	ModelReader reader(int recordOffset) {
+		int block = this.findBlock(recordOffset);
+		return new ModelReader(ByteBuffer.wrap(this.getBlock(block)),
+				recordOffset - this.blockStarts.get(block));
+	}
+
+	/**
+	 * <p>
+	 * Return the block holding the record at <i>recordOffset</i>.
+	 * </p>
+	 *
+	 * @param recordOffset
+	 * @return
+	 */
+	private int findBlock(int recordOffset) {
+		int low = 0;
+		int high = this.getBlockCount() - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (this.blockStarts.get(middle) <= recordOffset) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * <p>
+	 * Return <i>block</i> inflated, from the cache if it is there. Blocks
+	 * are inflated outside the cache lock, so two threads may both inflate
+	 * a block that is not cached yet.
+	 * </p>
+	 *
+	 * @param block
+	 * @return
+	 */
+	private byte[] getBlock(int block) {
+		if (this.cache == null) {
+			return this.inflate(block);
+		}
+		synchronized (this.cache) {
+			byte[] retVal = this.cache.get(block);
+			if (retVal != null) {
+				return retVal;
+			}
+		}
+		byte[] retVal = this.inflate(block);
+		synchronized (this.cache) {
+			byte[] previous = this.cache.put(block, retVal);
+			this.cacheSize += retVal.length
+					- ((previous == null) ? 0 : previous.length);
+			Iterator<Map.Entry<Integer, byte[]>> eldest = this.cache
+					.entrySet().iterator();
+			while ((this.cacheSize > this.cacheCapacity) && eldest.hasNext()) {
+				this.cacheSize -= eldest.next().getValue().length;
+				eldest.remove();
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Inflate <i>block</i>, without caching it.
+	 * </p>
+	 *
+	 * @param block
+	 * @return The records of the block.
+	 */
+	byte[] inflate(int block) {
+		int start = this.blockOffsets.get(block);
+		byte[] compressed = new byte[this.blockOffsets.get(block + 1) - start];
+		ByteBuffer input = this.buffer.duplicate();
+		input.position(this.blockPosition + start);
+		input.get(compressed);
+		byte[] retVal = new byte[this.blockStarts.get(block + 1)
+				- this.blockStarts.get(block)];
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(compressed);
+			int count = 0;
+			while (count < retVal.length) {
+				int inflated = inflater.inflate(retVal, count,
+						retVal.length - count);
+				if ((inflated == 0)
+						&& (inflater.finished() || inflater.needsInput())) {
+					throw new DataFormatException("Block ends early");
+				}
+				count += inflated;
+			}
+		} catch (DataFormatException e) {
+			throw new RuntimeException(String.format(
+					"Record block %1$s of the concept data file is corrupt, re-run the parser",
+					block), e);
+		} finally {
+			inflater.end();
+		}
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Split records into blocks of about blockSize bytes.
+	 * </p>
+	 *
+	 * @param recordOffsets
+	 *            Offset of each record, with the length of all records at
+	 *            the end.
+	 * @return Index of the first record of each block, with the record
+	 *         count at the end.
+	 */
+	static int[] split(int[] recordOffsets) {
+		int recordCount = recordOffsets.length - 1;
+		int[] retVal = new int[recordCount + 1];
+		int count = 0;
+		for (int i = 0; i < recordCount; i++) {
+			if ((count == 0) || (recordOffsets[i]
+					- recordOffsets[retVal[count - 1]] >= blockSize)) {
+				retVal[count++] = i;
+			}
+		}
+		retVal[count++] = recordCount;
+		return Arrays.copyOf(retVal, count);
+	}
+
+	/**
+	 * <p>
+	 * Compress the records of a block.
+	 * </p>
+	 *
+	 * @param records
+	 * @return
+	 */
+	static byte[] deflate(byte[] records) {
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+		try {
+			deflater.setInput(records);
+			deflater.finish();
+			byte[] retVal = new byte[records.length + 64];
+			int count = 0;
+			while (!deflater.finished()) {
+				if (count == retVal.length) {
+					retVal = Arrays.copyOf(retVal, retVal.length * 2);
+				}
+				count += deflater.deflate(retVal, count, retVal.length - count);
+			}
+			return Arrays.copyOf(retVal, count);
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Write the block table and the compressed blocks.
+	 * </p>
+	 *
+	 * @param output
+	 * @param blockStarts
+	 *            Record offset each block starts at, with the length of all
+	 *            records at the end.
+	 * @param blocks
+	 *            Compressed blocks.
+	 * @throws IOException
+	 */
+	static void write(ModelWriter output, int[] blockStarts, byte[][] blocks)
+			throws IOException {
+		output.putInt(blocks.length);
+		for (int start : blockStarts) {
+			output.putInt(start);
+		}
+		int offset = 0;
+		output.putInt(offset);
+		for (byte[] block : blocks) {
+			offset += block.length;
+			output.putInt(offset);
+		}
+		for (byte[] block : blocks) {
+			output.putBytes(block);
+		}
+	}
+}
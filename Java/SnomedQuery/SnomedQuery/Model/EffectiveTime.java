@@ -0,0 +1,131 @@
+package SnomedQuery.Model;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+/**
+ * <p>
+ * Conversions for Snomed effective times, which are stored as packed
+ * yyyymmdd ints. Packed values compare in date order, so ordering versions
+ * is a primitive comparison. DateTime instances are only built at the API
+ * edge.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+public final class EffectiveTime {
+	/**
+	 * <p>
+	 * Milliseconds in a day.
+	 * </p>
+	 */
+	private static final long millisPerDay = 24L * 60 * 60 * 1000;
+
+	/**
+	 * <p>
+	 * Constructor. Static methods only.
+	 * </p>
+	 */
+	private EffectiveTime() {
+	}
+
+	/**
+	 * <p>
+	 * Pack a year, month and day into a yyyymmdd int.
+	 * </p>
+	 *
+	 * @param year
+	 * @param month
+	 * @param day
+	 * @return
+	 */
+	public static int pack(int year, int month, int day) {
+		return (year * 10000) + (month * 100) + day;
+	}
+
+	/**
+	 * <p>
+	 * Return today's UTC date as a packed yyyymmdd int.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public static int today() {
+		return fromMillis(System.currentTimeMillis());
+	}
+
+	/**
+	 * <p>
+	 * Build a DateTime at midnight UTC of a packed yyyymmdd date.
+	 * </p>
+	 *
+	 * @param yyyymmdd
+	 * @return
+	 */
+	public static DateTime toDateTime(int yyyymmdd) {
+		return new DateTime(yyyymmdd / 10000, (yyyymmdd / 100) % 100,
+				yyyymmdd % 100, 0, 0, DateTimeZone.UTC);
+	}
+
+	/**
+	 * <p>
+	 * Pack the date of a DateTime into a yyyymmdd int.
+	 * </p>
+	 *
+	 * @param value
+	 * @return
+	 */
+	public static int fromDateTime(DateTime value) {
+		return pack(value.getYear(), value.getMonthOfYear(),
+				value.getDayOfMonth());
+	}
+
+	/**
+	 * <p>
+	 * Pack the UTC date of a millisecond instant into a yyyymmdd int. Computed
+	 * arithmetically, without building a DateTime.
+	 * </p>
+	 *
+	 * @param millis
+	 * @return
+	 */
+	public static int fromMillis(long millis) {
+		long days = Math.floorDiv(millis, millisPerDay) + 719468;
+		long era = Math.floorDiv(days, 146097);
+		long dayOfEra = days - (era * 146097);
+		long yearOfEra = (dayOfEra - (dayOfEra / 1460) + (dayOfEra / 36524)
+				- (dayOfEra / 146096)) / 365;
+		long dayOfYear = dayOfEra
+				- ((365 * yearOfEra) + (yearOfEra / 4) - (yearOfEra / 100));
+		long monthIndex = ((5 * dayOfYear) + 2) / 153;
+		int day = (int) (dayOfYear - (((153 * monthIndex) + 2) / 5) + 1);
+		int month = (int) ((monthIndex < 10) ? monthIndex + 3 : monthIndex - 9);
+		int year = (int) (yearOfEra + (era * 400) + ((month <= 2) ? 1 : 0));
+		return pack(year, month, day);
+	}
+
+	/**
+	 * <p>
+	 * Return the millisecond instant of midnight UTC of a packed yyyymmdd
+	 * date. Computed arithmetically, without building a DateTime.
+	 * </p>
+	 *
+	 * @param yyyymmdd
+	 * @return
+	 */
+	public static long toMillis(int yyyymmdd) {
+		long year = yyyymmdd / 10000;
+		long month = (yyyymmdd / 100) % 100;
+		long day = yyyymmdd % 100;
+		if (month <= 2) {
+			year -= 1;
+		}
+		long era = Math.floorDiv(year, 400);
+		long yearOfEra = year - (era * 400);
+		long dayOfYear = (((153 * ((month > 2) ? month - 3 : month + 9)) + 2)
+				/ 5) + day - 1;
+		long dayOfEra = (yearOfEra * 365) + (yearOfEra / 4) - (yearOfEra / 100)
+				+ dayOfYear;
+		return ((era * 146097) + dayOfEra - 719468) * millisPerDay;
+	}
+}
@@ -0,0 +1,138 @@
+package SnomedQuery.Model;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Fully specified names and synonyms of lazily loaded concepts, kept as the
+ * compressed records of the concept data file and decoded only when a
+ * getter of SnomedQueryConcept asks for them. Decoded names can be kept in
+ * a cache bounded by a number of concepts, least recently used first out.
+ * </p>
+ * <p>
+ * Thread safe.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+final class EncodedConceptText {
+	/**
+	 * <p>
+	 * Records of the concept data file.
+	 * </p>
+	 */
+	private final CompressedRecords records;
+
+	/**
+	 * <p>
+	 * Decoded names by record offset, fully specified name first. Null if
+	 * there is no cache.
+	 * </p>
+	 */
+	private final Map<Integer, String[]> cache;
+
+	/**
+	 * <p>
+	 * Constructor.
+	 * </p>
+	 *
+	 * @param records
+	 *            Records of the concept data file.
+	 * @param cacheSize
+	 *            Number of concepts whose decoded names are cached, 0 for no
+	 *            cache.
+	 */
+	EncodedConceptText(CompressedRecords records, int cacheSize) {
+		this.records = records;
+		this.cache = (cacheSize <= 0) ? null
+				: new LinkedHashMap<Integer, String[]>(16, 0.75f, true) {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected boolean removeEldestEntry(
+							Map.Entry<Integer, String[]> eldest) {
+						return this.size() > cacheSize;
+					}
+				};
+	}
+
+	/**
+	 * <p>
+	 * Return the fully specified name of the record at offset <i>position</i>.
+	 * </p>
+	 *
+	 * @param position
+	 * @return
+	 */
+	String getFullyQualifiedName(int position) {
+		if (this.cache == null) {
+			return this.records.reader(position).getString(null);
+		}
+		return this.getNames(position)[0];
+	}
+
+	/**
+	 * <p>
+	 * Return the synonyms of the record at offset <i>position</i>.
+	 * </p>
+	 *
+	 * @param position
+	 * @return
+	 */
+	String[] getSynonyms(int position) {
+		if (this.cache == null) {
+			ModelReader reader = this.records.reader(position);
+			reader.skipString();
+			return decodeSynonyms(reader);
+		}
+		String[] names = this.getNames(position);
+		return Arrays.copyOfRange(names, 1, names.length);
+	}
+
+	/**
+	 * <p>
+	 * Return the names of the record at offset <i>position</i> from the cache,
+	 * decoding and caching them if they are not in it.
+	 * </p>
+	 *
+	 * @param position
+	 * @return Fully specified name, then synonyms.
+	 */
+	private String[] getNames(int position) {
+		synchronized (this.cache) {
+			String[] retVal = this.cache.get(position);
+			if (retVal != null) {
+				return retVal;
+			}
+		}
+		ModelReader reader = this.records.reader(position);
+		String fullyQualifiedName = reader.getString(null);
+		String[] synonyms = decodeSynonyms(reader);
+		String[] retVal = new String[synonyms.length + 1];
+		retVal[0] = fullyQualifiedName;
+		System.arraycopy(synonyms, 0, retVal, 1, synonyms.length);
+		synchronized (this.cache) {
+			this.cache.put(position, retVal);
+		}
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Decode the synonyms of a record.
+	 * </p>
+	 *
+	 * @param reader
+	 *            Reader positioned after the fully specified name.
+	 * @return
+	 */
+	private static String[] decodeSynonyms(ModelReader reader) {
+		String[] retVal = new String[reader.getVarInt()];
+		for (int i = 0; i < retVal.length; i++) {
+			retVal[i] = reader.getString(null);
+		}
+		return retVal;
+	}
+}
@@ -0,0 +1,273 @@
+package SnomedQuery.Model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * Fingerprint of an input file the model was parsed from: its absolute,
+ * normalized path, size, last modified time and a hash of its contents.
+ * The model data file records the fingerprints of its inputs, so the
+ * parser can tell if it has to run again.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+public final class InputFingerprint {
+	/**
+	 * <p>
+	 * Size of the chunks of a file that are hashed in parallel.
+	 * </p>
+	 */
+	private static final int chunkSize = 8 << 20;
+
+	/**
+	 * <p>
+	 * Path of the file.
+	 * </p>
+	 */
+	private final String path;
+
+	/**
+	 * <p>
+	 * Size of the file in bytes.
+	 * </p>
+	 */
+	private final long size;
+
+	/**
+	 * <p>
+	 * Last modified time of the file, in milliseconds since the epoch.
+	 * </p>
+	 */
+	private final long lastModified;
+
+	/**
+	 * <p>
+	 * Hash of the contents of the file.
+	 * </p>
+	 */
+	private final long contentHash;
+
+	/**
+	 * <p>
+	 * Constructor.
+	 * </p>
+	 *
+	 * @param path
+	 * @param size
+	 * @param lastModified
+	 * @param contentHash
+	 */
+	InputFingerprint(String path, long size, long lastModified,
+			long contentHash) {
+		this.path = path;
+		this.size = size;
+		this.lastModified = lastModified;
+		this.contentHash = contentHash;
+	}
+
+	/**
+	 * <p>
+	 * Return the fingerprints of the files at <i>paths</i>.
+	 * </p>
+	 *
+	 * @param paths
+	 * @return
+	 */
+	public static InputFingerprint[] of(String[] paths) {
+		InputFingerprint[] retVal = new InputFingerprint[paths.length];
+		for (int i = 0; i < paths.length; i++) {
+			File file = new File(paths[i]);
+			retVal[i] = new InputFingerprint(normalize(paths[i]), file.length(),
+					file.lastModified(), hash(paths[i]));
+		}
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Return <i>path</i> made absolute and normalized, so that paths to the
+	 * same file spelled differently compare equal.
+	 * </p>
+	 *
+	 * @param path
+	 * @return
+	 */
+	static String normalize(String path) {
+		return Paths.get(path).toAbsolutePath().normalize().toString();
+	}
+
+	/**
+	 * <p>
+	 * Return a hash of the contents of the file at <i>path</i>. Chunks of
+	 * the file are checksummed in parallel and the checksums are combined
+	 * in file order.
+	 * </p>
+	 *
+	 * @param path
+	 * @return
+	 */
+	static long hash(String path) {
+		try (FileChannel channel = FileChannel.open(Paths.get(path),
+				StandardOpenOption.READ)) {
+			long size = channel.size();
+			int chunkCount = (int) ((size + chunkSize - 1) / chunkSize);
+			long[] checksums = new long[chunkCount];
+			IntStream.range(0, chunkCount).parallel().forEach(chunk -> {
+				long start = (long) chunk * chunkSize;
+				CRC32 checksum = new CRC32();
+				try {
+					checksum.update(channel.map(FileChannel.MapMode.READ_ONLY,
+							start, Math.min(chunkSize, size - start)));
+				} catch (IOException e) {
+					throw new RuntimeException(String.format(
+							"Unable to read input file %1$s", path), e);
+				}
+				checksums[chunk] = checksum.getValue();
+			});
+			long retVal = size;
+			for (long checksum : checksums) {
+				retVal = (retVal * 0x9E3779B97F4A7C15L) + checksum;
+			}
+			return retVal;
+		} catch (IOException e) {
+			throw new RuntimeException(
+					String.format("Unable to read input file %1$s", path), e);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Return true if each fingerprint of <i>fingerprints</i> matches the
+	 * file at the same index of <i>paths</i>.
+	 * </p>
+	 *
+	 * @param fingerprints
+	 * @param paths
+	 * @return
+	 */
+	public static boolean matchAll(InputFingerprint[] fingerprints,
+			String[] paths) {
+		if ((fingerprints == null) || (fingerprints.length != paths.length)) {
+			return false;
+		}
+		return IntStream.range(0, paths.length).parallel()
+				.allMatch(i -> fingerprints[i].matches(paths[i]));
+	}
+
+	/**
+	 * <p>
+	 * Return true if the file at <i>path</i> still has this fingerprint.
+	 * Files of the same size and modified time are taken to be unchanged
+	 * without reading them; otherwise the contents are hashed, so a copy of
+	 * an unchanged file still matches.
+	 * </p>
+	 *
+	 * @param path
+	 * @return
+	 */
+	public boolean matches(String path) {
+		File file = new File(path);
+		if (!normalize(this.path).equals(normalize(path)) || !file.isFile()
+				|| (file.length() != this.size)) {
+			return false;
+		}
+		return (file.lastModified() == this.lastModified)
+				|| (hash(path) == this.contentHash);
+	}
+
+	/**
+	 * <p>
+	 * Gets the path of the file.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public String getPath() {
+		return this.path;
+	}
+
+	/**
+	 * <p>
+	 * Gets the size of the file in bytes.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public long getSize() {
+		return this.size;
+	}
+
+	/**
+	 * <p>
+	 * Gets the last modified time of the file, in milliseconds since the
+	 * epoch.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public long getLastModified() {
+		return this.lastModified;
+	}
+
+	/**
+	 * <p>
+	 * Gets the hash of the contents of the file.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public long getContentHash() {
+		return this.contentHash;
+	}
+
+	/**
+	 * <p>
+	 * Write <i>fingerprints</i> as a varint count followed by the path,
+	 * size, modified time and hash of each.
+	 * </p>
+	 *
+	 * @param output
+	 * @param fingerprints
+	 * @throws IOException
+	 */
+	static void write(ModelWriter output, InputFingerprint[] fingerprints)
+			throws IOException {
+		output.putVarLong(fingerprints.length);
+		for (InputFingerprint fingerprint : fingerprints) {
+			output.putString(fingerprint.path);
+			output.putLong(fingerprint.size);
+			output.putLong(fingerprint.lastModified);
+			output.putLong(fingerprint.contentHash);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Read fingerprints written by write.
+	 * </p>
+	 *
+	 * @param reader
+	 * @return
+	 */
+	static InputFingerprint[] read(ModelReader reader) {
+		InputFingerprint[] retVal = new InputFingerprint[reader.getVarInt()];
+		for (int i = 0; i < retVal.length; i++) {
+			retVal[i] = new InputFingerprint(reader.getString(null),
+					reader.getLong(), reader.getLong(), reader.getLong());
+		}
+		return retVal;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%1$s (%2$s bytes, hash %3$016x)", this.path,
+				this.size, this.contentHash);
+	}
+}
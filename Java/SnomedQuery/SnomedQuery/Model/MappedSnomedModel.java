@@ -0,0 +1,550 @@
+package SnomedQuery.Model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import SnomedQuery.Collections.Csr;
+
+/**
+ * <p>
+ * Read only SNOMED model that answers queries straight from the memory
+ * mapped concept data and IsA relationship files written by
+ * SnomedModelManager.serialize. Nothing is read at open time: concepts are
+ * addressed by int ordinals, their position in the id sorted concept
+ * table, parents are walked in the fixed width CSR tables of the mapping,
+ * and records are only inflated and decoded when asked for, a block at a
+ * time, through a cache of inflated blocks bounded in bytes. The file
+ * holds each IsA edge once, so the child index is built on the heap, by
+ * reversing the parent tables in one linear pass, the first time children
+ * are asked for. Processes that map the same files share their pages
+ * through the page cache.
+ * </p>
+ * <p>
+ * Thread safe.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+public class MappedSnomedModel {
+	/**
+	 * <p>
+	 * Base directory for data files.
+	 * </p>
+	 */
+	private final String baseDir;
+
+	/**
+	 * <p>
+	 * Compressed records of the concept data file mapping.
+	 * </p>
+	 */
+	private final CompressedRecords records;
+
+	/**
+	 * <p>
+	 * Number of concepts.
+	 * </p>
+	 */
+	private final int conceptCount;
+
+	/**
+	 * <p>
+	 * Id table of the mapping.
+	 * </p>
+	 */
+	private final LongBuffer conceptIds;
+
+	/**
+	 * <p>
+	 * Record offset table of the mapping.
+	 * </p>
+	 */
+	private final IntBuffer recordOffsets;
+
+	/**
+	 * <p>
+	 * Parent offset table of the IsA relationship file mapping.
+	 * </p>
+	 */
+	private final IntBuffer parentOffsets;
+
+	/**
+	 * <p>
+	 * Parent ordinal table of the IsA relationship file mapping.
+	 * </p>
+	 */
+	private final IntBuffer parents;
+
+	/**
+	 * <p>
+	 * Child offset and ordinal tables. Built on first use.
+	 * </p>
+	 */
+	private volatile IntBuffer[] childIndex;
+
+	/**
+	 * <p>
+	 * Constructor. Maps the model files of <i>baseDirParam</i>, with the
+	 * default bound of the inflated block cache.
+	 * </p>
+	 *
+	 * @param baseDirParam
+	 *            Base directory of the data files, as for
+	 *            SnomedModelManager.
+	 */
+	public MappedSnomedModel(String baseDirParam) {
+		this(baseDirParam, CompressedRecords.defaultCacheSize);
+	}
+
+	/**
+	 * <p>
+	 * Constructor. Maps the model files of <i>baseDirParam</i>.
+	 * </p>
+	 *
+	 * @param baseDirParam
+	 *            Base directory of the data files, as for
+	 *            SnomedModelManager.
+	 * @param blockCacheSize
+	 *            Bound of the inflated record block cache in bytes, 0 for no
+	 *            cache.
+	 */
+	public MappedSnomedModel(String baseDirParam, long blockCacheSize) {
+		this.baseDir = baseDirParam;
+		String dataPath = this.getParsedRecordsDir() + "\\"
+				+ SnomedModelManager.dataFileName;
+		String relationshipPath = this.getParsedRecordsDir() + "\\"
+				+ SnomedModelManager.isARelationshipFileName;
+		ByteBuffer data = map(dataPath);
+		ByteBuffer relationships = map(relationshipPath);
+
+		InputFingerprint.read(new ModelReader(data));
+		this.conceptCount = data.getInt();
+		this.conceptIds = slice(data, this.conceptCount * Long.BYTES)
+				.asLongBuffer();
+		this.recordOffsets = slice(data,
+				(this.conceptCount + 1) * Integer.BYTES).asIntBuffer();
+		this.records = new CompressedRecords(data, new ModelReader(data),
+				blockCacheSize);
+
+		if (relationships.getInt() != this.conceptCount) {
+			throw new RuntimeException(String.format(
+					"Model file %1$s does not match the concept data file, re-run the parser",
+					relationshipPath));
+		}
+		this.parentOffsets = slice(relationships,
+				(this.conceptCount + 1) * Integer.BYTES).asIntBuffer();
+		this.parents = slice(relationships,
+				this.parentOffsets.get(this.conceptCount) * Integer.BYTES)
+						.asIntBuffer();
+	}
+
+	/**
+	 * <p>
+	 * Return the next <i>length</i> bytes of <i>buffer</i> as a little
+	 * endian buffer of their own, advancing <i>buffer</i> past them.
+	 * </p>
+	 *
+	 * @param buffer
+	 * @param length
+	 * @return
+	 */
+	private static ByteBuffer slice(ByteBuffer buffer, int length) {
+		ByteBuffer retVal = buffer.slice();
+		retVal.limit(length);
+		buffer.position(buffer.position() + length);
+		return retVal.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * <p>
+	 * Map the model file at <i>path</i>, positioned after its header.
+	 * </p>
+	 *
+	 * @param path
+	 * @return
+	 */
+	private static ByteBuffer map(String path) {
+		ByteBuffer retVal;
+		try {
+			retVal = ModelReader.mapFile(path);
+		} catch (IOException e) {
+			throw new RuntimeException(
+					String.format("Unable to map model file %1$s", path), e);
+		}
+		if (ModelReader.readFormatVersion(retVal,
+				path) == SnomedModelManager.legacyFormatVersion) {
+			throw new RuntimeException(String.format(
+					"Model file %1$s is in the legacy format, re-run the parser",
+					path));
+		}
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Constructs a Path to the ParsedData directory.
+	 * </p>
+	 *
+	 * @return The ParsedData sub-directory of baseDir.
+	 */
+	public String getParsedRecordsDir() {
+		return this.baseDir + "\\" + "ParsedRecords";
+	}
+
+	/**
+	 * <p>
+	 * Gets the number of concepts.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public final int getConceptCount() {
+		return this.conceptCount;
+	}
+
+	/**
+	 * <p>
+	 * Gets the number of record blocks of the concept data file.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public final int getRecordBlockCount() {
+		return this.records.getBlockCount();
+	}
+
+	/**
+	 * <p>
+	 * Gets the total size of the inflated blocks in the block cache, in
+	 * bytes.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public final long getBlockCacheSize() {
+		return this.records.getCacheSize();
+	}
+
+	/**
+	 * <p>
+	 * Return the id of the concept at <i>ordinal</i>.
+	 * </p>
+	 *
+	 * @param ordinal
+	 * @return
+	 */
+	public final long getConceptId(int ordinal) {
+		return this.conceptIds.get(ordinal);
+	}
+
+	/**
+	 * <p>
+	 * Return the ordinal of a concept, found by binary search of the id
+	 * table. Return -1 if concept not found.
+	 * </p>
+	 *
+	 * @param conceptId
+	 * @return
+	 */
+	public final int getOrdinal(long conceptId) {
+		int low = 0;
+		int high = this.conceptCount - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			long middleId = this.getConceptId(middle);
+			if (middleId < conceptId) {
+				low = middle + 1;
+			} else if (middleId > conceptId) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * <p>
+	 * Return the ordinal of a concept, throwing if it is not in the model.
+	 * </p>
+	 *
+	 * @param conceptId
+	 * @return
+	 */
+	private int findOrdinal(long conceptId) {
+		int retVal = this.getOrdinal(conceptId);
+		if (retVal < 0) {
+			throw new RuntimeException(String.format(
+					"Concept %1$s not found in dictionary", conceptId));
+		}
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Return a reader positioned at the record of the concept at
+	 * <i>ordinal</i>.
+	 * </p>
+	 *
+	 * @param ordinal
+	 * @return
+	 */
+	private ModelReader record(int ordinal) {
+		return this.records.reader(this.recordOffsets.get(ordinal));
+	}
+
+	/**
+	 * <p>
+	 * Return the fully specified name of the concept at <i>ordinal</i>.
+	 * </p>
+	 *
+	 * @param ordinal
+	 * @return
+	 */
+	public String getFullyQualifiedName(int ordinal) {
+		return this.record(ordinal).getString(null);
+	}
+
+	/**
+	 * <p>
+	 * Return the synonyms of the concept at <i>ordinal</i>.
+	 * </p>
+	 *
+	 * @param ordinal
+	 * @return
+	 */
+	public String[] getSynonyms(int ordinal) {
+		ModelReader reader = this.record(ordinal);
+		reader.skipString();
+		String[] retVal = new String[reader.getVarInt()];
+		for (int i = 0; i < retVal.length; i++) {
+			retVal[i] = reader.getString(null);
+		}
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Return the concept at <i>ordinal</i>, with all of its record decoded.
+	 * Its IsA parents and children are left empty; use getParents and
+	 * getChildren for those.
+	 * </p>
+	 *
+	 * @param ordinal
+	 * @return
+	 */
+	public SnomedQueryConcept getConcept(int ordinal) {
+		ModelReader reader = this.record(ordinal);
+		String conceptFullyQualifiedName = reader.getString(null);
+		String[] conceptSynonyms = new String[reader.getVarInt()];
+		for (int i = 0; i < conceptSynonyms.length; i++) {
+			conceptSynonyms[i] = reader.getString(null);
+		}
+		String conceptModule = reader.getString(null);
+		String conceptDefinitionStatus = reader.getString(null);
+		int conceptEffectiveTime = reader.getVarInt();
+		return new SnomedQueryConcept(this.getConceptId(ordinal),
+				conceptFullyQualifiedName, conceptSynonyms, conceptModule,
+				conceptDefinitionStatus, conceptEffectiveTime);
+	}
+
+	/**
+	 * <p>
+	 * Get concept by its id, as getConcept. Return null if concept not
+	 * found.
+	 * </p>
+	 *
+	 * @param id
+	 *            searched
+	 * @return the queried id. Null if not found.
+	 */
+	public SnomedQueryConcept getConceptById(long id) {
+		int ordinal = this.getOrdinal(id);
+		return (ordinal < 0) ? null : this.getConcept(ordinal);
+	}
+
+	/**
+	 * <p>
+	 * Return the ordinals of the IsA parents of the concept at
+	 * <i>ordinal</i>.
+	 * </p>
+	 *
+	 * @param ordinal
+	 * @return
+	 */
+	public int[] getParents(int ordinal) {
+		return related(this.parentOffsets, this.parents, ordinal);
+	}
+
+	/**
+	 * <p>
+	 * Return the ordinals of the IsA children of the concept at
+	 * <i>ordinal</i>.
+	 * </p>
+	 *
+	 * @param ordinal
+	 * @return
+	 */
+	public int[] getChildren(int ordinal) {
+		IntBuffer[] index = this.childIndex();
+		return related(index[0], index[1], ordinal);
+	}
+
+	/**
+	 * <p>
+	 * Return the child offset and ordinal tables, building them if this is
+	 * the first call.
+	 * </p>
+	 *
+	 * @return
+	 */
+	private IntBuffer[] childIndex() {
+		IntBuffer[] retVal = this.childIndex;
+		return (retVal != null) ? retVal : this.buildChildIndex();
+	}
+
+	/**
+	 * <p>
+	 * Build the child offset and ordinal tables by reversing the parent
+	 * tables.
+	 * </p>
+	 *
+	 * @return
+	 */
+	private synchronized IntBuffer[] buildChildIndex() {
+		if (this.childIndex == null) {
+			int[] parentOffsets = new int[this.conceptCount + 1];
+			this.parentOffsets.duplicate().get(parentOffsets);
+			int[] parents = new int[parentOffsets[this.conceptCount]];
+			this.parents.duplicate().get(parents);
+			int[][] children = Csr.transpose(parentOffsets, parents);
+			this.childIndex = new IntBuffer[]{IntBuffer.wrap(children[0]),
+					IntBuffer.wrap(children[1])};
+		}
+		return this.childIndex;
+	}
+
+	/**
+	 * <p>
+	 * Return the ordinals related to the concept at <i>ordinal</i> by CSR
+	 * tables.
+	 * </p>
+	 *
+	 * @param offsets
+	 * @param targets
+	 * @param ordinal
+	 * @return
+	 */
+	private static int[] related(IntBuffer offsets, IntBuffer targets,
+			int ordinal) {
+		int first = offsets.get(ordinal);
+		int[] retVal = new int[offsets.get(ordinal + 1) - first];
+		for (int i = 0; i < retVal.length; i++) {
+			retVal[i] = targets.get(first + i);
+		}
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Return true if parent is an ancestor of child. Walks up from the
+	 * child, which visits far fewer concepts than walking down from the
+	 * parent.
+	 * </p>
+	 *
+	 * @param parentId
+	 *            Parent Id.
+	 * @param childId
+	 *            Child Id.
+	 * @return True if there is a child ancestor.
+	 */
+	public boolean isChild(long parentId, long childId) {
+		int parent = this.findOrdinal(parentId);
+		BitSet ancestors = this.walk(this.parentOffsets, this.parents,
+				this.findOrdinal(childId));
+		return ancestors.get(parent);
+	}
+
+	/**
+	 * <p>
+	 * Return the ids of all ancestors of a concept, in ascending order.
+	 * </p>
+	 *
+	 * @param conceptId
+	 * @return
+	 */
+	public long[] findAncestors(long conceptId) {
+		return this.toConceptIds(this.walk(this.parentOffsets, this.parents,
+				this.findOrdinal(conceptId)));
+	}
+
+	/**
+	 * <p>
+	 * Return the ids of all descendants of a concept, in ascending order.
+	 * </p>
+	 *
+	 * @param conceptId
+	 * @return
+	 */
+	public long[] findDescendants(long conceptId) {
+		IntBuffer[] index = this.childIndex();
+		return this.toConceptIds(
+				this.walk(index[0], index[1], this.findOrdinal(conceptId)));
+	}
+
+	/**
+	 * <p>
+	 * Return the ordinals reachable from the concept at <i>ordinal</i> by
+	 * one or more steps through CSR tables.
+	 * </p>
+	 *
+	 * @param offsets
+	 * @param targets
+	 * @param ordinal
+	 * @return
+	 */
+	private BitSet walk(IntBuffer offsets, IntBuffer targets, int ordinal) {
+		BitSet retVal = new BitSet(this.conceptCount);
+		int[] stack = new int[64];
+		int count = 0;
+		stack[count++] = ordinal;
+		while (count > 0) {
+			int current = stack[--count];
+			int end = offsets.get(current + 1);
+			for (int i = offsets.get(current); i < end; i++) {
+				int next = targets.get(i);
+				if (!retVal.get(next)) {
+					retVal.set(next);
+					if (count == stack.length) {
+						stack = Arrays.copyOf(stack, count * 2);
+					}
+					stack[count++] = next;
+				}
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Return the ids of the concepts at the ordinals in <i>ordinals</i>.
+	 * </p>
+	 *
+	 * @param ordinals
+	 * @return
+	 */
+	private long[] toConceptIds(BitSet ordinals) {
+		long[] retVal = new long[ordinals.cardinality()];
+		int count = 0;
+		for (int i = ordinals.nextSetBit(0); i >= 0; i = ordinals
+				.nextSetBit(i + 1)) {
+			retVal[count++] = this.getConceptId(i);
+		}
+		return retVal;
+	}
+}
@@ -0,0 +1,318 @@
+package SnomedQuery.Model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import SnomedQuery.Collections.StringPool;
+
+/**
+ * <p>
+ * Reader of the model files written by ModelWriter. Values are decoded from
+ * a little endian buffer, either read onto the heap or memory mapped,
+ * starting at the buffer position.
+ * </p>
+ * <p>
+ * Not thread safe. Readers of a shared buffer each work on their own
+ * duplicate of it.
+ * </p>
+ * <p>
+ * Reading a file, its header and fixed width values is public, so that
+ * the parser reads its own model files with the same header.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+public final class ModelReader {
+	/**
+	 * <p>
+	 * Buffer values are decoded from.
+	 * </p>
+	 */
+	private final ByteBuffer buffer;
+
+	/**
+	 * <p>
+	 * Constructor. Reads <i>buffer</i> from its position, advancing it.
+	 * </p>
+	 *
+	 * @param buffer
+	 */
+	public ModelReader(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	/**
+	 * <p>
+	 * Constructor. Reads a duplicate of <i>buffer</i> from
+	 * <i>position</i>, leaving <i>buffer</i> itself as it is.
+	 * </p>
+	 *
+	 * @param buffer
+	 * @param position
+	 */
+	ModelReader(ByteBuffer buffer, int position) {
+		this.buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		this.buffer.position(position);
+	}
+
+	/**
+	 * <p>
+	 * Read the whole file at <i>path</i> into a little endian heap buffer.
+	 * </p>
+	 *
+	 * @param path
+	 * @return
+	 * @throws IOException
+	 */
+	public static ByteBuffer readFile(String path) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(path),
+				StandardOpenOption.READ)) {
+			ByteBuffer retVal = ByteBuffer.allocate((int) channel.size());
+			while (retVal.hasRemaining()) {
+				if (channel.read(retVal) < 0) {
+					break;
+				}
+			}
+			retVal.flip();
+			return retVal.order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Read up to the first <i>length</i> bytes of the file at <i>path</i>
+	 * into a little endian heap buffer.
+	 * </p>
+	 *
+	 * @param path
+	 * @param length
+	 * @return
+	 * @throws IOException
+	 */
+	static ByteBuffer readFileStart(String path, int length)
+			throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(path),
+				StandardOpenOption.READ)) {
+			ByteBuffer retVal = ByteBuffer
+					.allocate((int) Math.min(length, channel.size()));
+			while (retVal.hasRemaining()) {
+				if (channel.read(retVal) < 0) {
+					break;
+				}
+			}
+			retVal.flip();
+			return retVal.order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Map the whole file at <i>path</i> read only, as a little endian
+	 * buffer. The mapping stays valid after the channel is closed.
+	 * </p>
+	 *
+	 * @param path
+	 * @return
+	 * @throws IOException
+	 */
+	static ByteBuffer mapFile(String path) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(path),
+				StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+					.order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Read the header at the position of <i>buffer</i>. Files that do not
+	 * start with the magic number are in the legacy format, and are left at
+	 * their start.
+	 * </p>
+	 *
+	 * @param buffer
+	 * @param path
+	 *            Path of the file, for the error message.
+	 * @return Format version of the file.
+	 */
+	public static int readFormatVersion(ByteBuffer buffer, String path) {
+		if ((buffer.remaining() < 2 * Integer.BYTES)
+				|| (buffer.getInt(buffer.position()) != ModelWriter.magic)) {
+			return SnomedModelManager.legacyFormatVersion;
+		}
+		buffer.getInt();
+		int version = buffer.getInt();
+		if (version != SnomedModelManager.formatVersion) {
+			throw new RuntimeException(String.format(
+					"Unsupported model format version %1$s in %2$s, re-run the parser",
+					version, path));
+		}
+		return version;
+	}
+
+	/**
+	 * <p>
+	 * Gets the read position.
+	 * </p>
+	 *
+	 * @return
+	 */
+	int position() {
+		return this.buffer.position();
+	}
+
+	/**
+	 * <p>
+	 * Sets the read position.
+	 * </p>
+	 *
+	 * @param position
+	 */
+	void position(int position) {
+		this.buffer.position(position);
+	}
+
+	/**
+	 * <p>
+	 * Read a little endian int.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public int getInt() {
+		return this.buffer.getInt();
+	}
+
+	/**
+	 * <p>
+	 * Read a little endian long.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public long getLong() {
+		return this.buffer.getLong();
+	}
+
+	/**
+	 * <p>
+	 * Read <i>count</i> little endian ints in bulk.
+	 * </p>
+	 *
+	 * @param count
+	 * @return
+	 */
+	int[] getInts(int count) {
+		int[] retVal = new int[count];
+		this.buffer.asIntBuffer().get(retVal);
+		this.buffer.position(this.buffer.position() + (count * Integer.BYTES));
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Return the next <i>count</i> little endian ints as a view of the
+	 * buffer, without copying them.
+	 * </p>
+	 *
+	 * @param count
+	 * @return
+	 */
+	IntBuffer getIntBuffer(int count) {
+		ByteBuffer retVal = this.buffer.slice();
+		retVal.limit(count * Integer.BYTES);
+		this.buffer.position(this.buffer.position() + (count * Integer.BYTES));
+		return retVal.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+	}
+
+	/**
+	 * <p>
+	 * Read <i>count</i> little endian longs in bulk.
+	 * </p>
+	 *
+	 * @param count
+	 * @return
+	 */
+	long[] getLongs(int count) {
+		long[] retVal = new long[count];
+		this.buffer.asLongBuffer().get(retVal);
+		this.buffer.position(this.buffer.position() + (count * Long.BYTES));
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Read an unsigned LEB128 varint.
+	 * </p>
+	 *
+	 * @return
+	 */
+	long getVarLong() {
+		long retVal = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = this.buffer.get();
+			retVal |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Read an unsigned varint that fits an int.
+	 * </p>
+	 *
+	 * @return
+	 */
+	int getVarInt() {
+		return (int) this.getVarLong();
+	}
+
+	/**
+	 * <p>
+	 * Read a string, as its varint UTF-8 byte length and bytes. If
+	 * <i>pool</i> is set, the bytes are only decoded if it has no string
+	 * equal to them.
+	 * </p>
+	 *
+	 * @param pool
+	 *            Pool to intern the string in, or null.
+	 * @return
+	 */
+	String getString(StringPool pool) {
+		int length = this.getVarInt();
+		int offset = this.buffer.position();
+		String retVal;
+		if (pool != null) {
+			retVal = pool.intern(this.buffer, offset, length);
+		} else if (this.buffer.hasArray()) {
+			retVal = new String(this.buffer.array(),
+					this.buffer.arrayOffset() + offset, length,
+					StandardCharsets.UTF_8);
+		} else {
+			byte[] bytes = new byte[length];
+			this.buffer.get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+		this.buffer.position(offset + length);
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Skip a string without decoding it.
+	 * </p>
+	 */
+	void skipString() {
+		int length = this.getVarInt();
+		this.buffer.position(this.buffer.position() + length);
+	}
+}
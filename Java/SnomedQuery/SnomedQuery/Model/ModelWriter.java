@@ -0,0 +1,341 @@
+package SnomedQuery.Model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Writer of the serialized model files. Values are encoded into one
+ * reusable direct buffer, which is written to a file channel whenever it
+ * fills, so no object is allocated per value. Fixed width values are little
+ * endian; counts, lengths, id deltas and dates are unsigned LEB128 varints;
+ * strings are a varint byte length followed by UTF-8 bytes.
+ * </p>
+ * <p>
+ * A writer without a file encodes into a heap buffer that grows as needed,
+ * for sections that are compressed before they are written.
+ * </p>
+ * <p>
+ * The file constructor and fixed width writes are public, so that the
+ * parser writes its own model files with the same header.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+public final class ModelWriter implements Closeable {
+	/**
+	 * <p>
+	 * Magic number at the start of each model file, "SQQM" in file byte
+	 * order. Files written before the format had a header start with a
+	 * concept count instead, which is never this large.
+	 * </p>
+	 */
+	static final int magic = 0x4D515153;
+
+	/**
+	 * <p>
+	 * Size of the write buffer.
+	 * </p>
+	 */
+	private static final int bufferSize = 1 << 20;
+
+	/**
+	 * <p>
+	 * Channel of the file being written. Null if writing to memory.
+	 * </p>
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * <p>
+	 * Buffer values are encoded into before they are written.
+	 * </p>
+	 */
+	private ByteBuffer buffer;
+
+	/**
+	 * <p>
+	 * Constructor. Creates or truncates the file at <i>path</i> and writes
+	 * the header.
+	 * </p>
+	 *
+	 * @param path
+	 * @param version
+	 *            Format version written to the header.
+	 * @throws IOException
+	 */
+	public ModelWriter(String path, int version) throws IOException {
+		this.channel = FileChannel.open(Paths.get(path),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		this.buffer = ByteBuffer.allocateDirect(bufferSize)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		this.putInt(magic);
+		this.putInt(version);
+	}
+
+	/**
+	 * <p>
+	 * Constructor. Writes to memory, without a header; toByteArray returns
+	 * what was written.
+	 * </p>
+	 *
+	 * @param capacity
+	 *            Initial size of the buffer.
+	 */
+	ModelWriter(int capacity) {
+		this.channel = null;
+		this.buffer = ByteBuffer.allocate(Math.max(capacity, 16))
+				.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * <p>
+	 * Make room for <i>count</i> bytes in the buffer, writing out what it
+	 * holds, or growing it when writing to memory, if needed. When writing
+	 * to a file <i>count</i> must not exceed the buffer size.
+	 * </p>
+	 *
+	 * @param count
+	 * @throws IOException
+	 */
+	private void ensure(int count) throws IOException {
+		if (this.buffer.remaining() >= count) {
+			return;
+		}
+		if (this.channel != null) {
+			this.flush();
+			return;
+		}
+		ByteBuffer grown = ByteBuffer
+				.allocate(Math.max(this.buffer.capacity() * 2,
+						this.buffer.position() + count))
+				.order(ByteOrder.LITTLE_ENDIAN);
+		this.buffer.flip();
+		grown.put(this.buffer);
+		this.buffer = grown;
+	}
+
+	/**
+	 * <p>
+	 * Write out the buffered bytes. Does nothing when writing to memory.
+	 * </p>
+	 *
+	 * @throws IOException
+	 */
+	void flush() throws IOException {
+		if (this.channel == null) {
+			return;
+		}
+		this.buffer.flip();
+		while (this.buffer.hasRemaining()) {
+			this.channel.write(this.buffer);
+		}
+		this.buffer.clear();
+	}
+
+	/**
+	 * <p>
+	 * Write a little endian int.
+	 * </p>
+	 *
+	 * @param value
+	 * @throws IOException
+	 */
+	public void putInt(int value) throws IOException {
+		this.ensure(Integer.BYTES);
+		this.buffer.putInt(value);
+	}
+
+	/**
+	 * <p>
+	 * Write a little endian long.
+	 * </p>
+	 *
+	 * @param value
+	 * @throws IOException
+	 */
+	public void putLong(long value) throws IOException {
+		this.ensure(Long.BYTES);
+		this.buffer.putLong(value);
+	}
+
+	/**
+	 * <p>
+	 * Write a non negative value as an unsigned LEB128 varint: seven bits
+	 * per byte, low bits first, high bit set on all but the last byte.
+	 * </p>
+	 *
+	 * @param value
+	 * @throws IOException
+	 */
+	void putVarLong(long value) throws IOException {
+		this.ensure(10);
+		while ((value & ~0x7FL) != 0) {
+			this.buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		this.buffer.put((byte) value);
+	}
+
+	/**
+	 * <p>
+	 * Write a string as its UTF-8 byte length and bytes. The bytes are
+	 * encoded straight into the buffer unless the string is longer than it.
+	 * </p>
+	 *
+	 * @param value
+	 * @throws IOException
+	 */
+	void putString(String value) throws IOException {
+		int length = utf8Length(value);
+		this.putVarLong(length);
+		if (length > bufferSize) {
+			this.putBytes(value.getBytes(StandardCharsets.UTF_8));
+			return;
+		}
+		this.ensure(length);
+		int count = value.length();
+		for (int i = 0; i < count; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				this.buffer.put((byte) c);
+			} else if (c < 0x800) {
+				this.buffer.put((byte) (0xC0 | (c >> 6)));
+				this.buffer.put((byte) (0x80 | (c & 0x3F)));
+			} else if (Character.isHighSurrogate(c) && (i + 1 < count)
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				this.buffer.put((byte) (0xF0 | (codePoint >> 18)));
+				this.buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+				this.buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+				this.buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+			} else if (Character.isSurrogate(c)) {
+				// Unpaired surrogate, encoded as '?' as String.getBytes does.
+				this.buffer.put((byte) '?');
+			} else {
+				this.buffer.put((byte) (0xE0 | (c >> 12)));
+				this.buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+				this.buffer.put((byte) (0x80 | (c & 0x3F)));
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Write <i>bytes</i> as they are.
+	 * </p>
+	 *
+	 * @param bytes
+	 * @throws IOException
+	 */
+	void putBytes(byte[] bytes) throws IOException {
+		if ((this.channel == null) || (bytes.length <= bufferSize)) {
+			this.ensure(bytes.length);
+			this.buffer.put(bytes);
+			return;
+		}
+		ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+		this.flush();
+		while (wrapped.hasRemaining()) {
+			this.channel.write(wrapped);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Return the bytes written to memory.
+	 * </p>
+	 *
+	 * @return
+	 */
+	byte[] toByteArray() {
+		return Arrays.copyOf(this.buffer.array(), this.buffer.position());
+	}
+
+	/**
+	 * <p>
+	 * Return the number of bytes of the UTF-8 encoding of <i>value</i>.
+	 * </p>
+	 *
+	 * @param value
+	 * @return
+	 */
+	static int utf8Length(String value) {
+		int count = value.length();
+		int retVal = count;
+		for (int i = 0; i < count; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				continue;
+			}
+			if (c < 0x800) {
+				retVal += 1;
+			} else if (Character.isHighSurrogate(c) && (i + 1 < count)
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				// Two chars, four bytes.
+				retVal += 2;
+				i += 1;
+			} else if (!Character.isSurrogate(c)) {
+				retVal += 2;
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Return the number of bytes putVarLong writes for <i>value</i>.
+	 * </p>
+	 *
+	 * @param value
+	 * @return
+	 */
+	static int varLongLength(long value) {
+		int retVal = 1;
+		while ((value & ~0x7FL) != 0) {
+			retVal += 1;
+			value >>>= 7;
+		}
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Return the number of bytes putString writes for <i>value</i>.
+	 * </p>
+	 *
+	 * @param value
+	 * @return
+	 */
+	static int stringLength(String value) {
+		int length = utf8Length(value);
+		return varLongLength(length) + length;
+	}
+
+	/**
+	 * <p>
+	 * Write out the buffered bytes and close the file.
+	 * </p>
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.channel == null) {
+			return;
+		}
+		try {
+			this.flush();
+		} finally {
+			this.channel.close();
+		}
+	}
+}
@@ -1,22 +1,28 @@
 package SnomedQuery.Model;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.stream.IntStream;
 import org.joda.time.DateTime;
 
+import SnomedQuery.Collections.Csr;
+import SnomedQuery.Collections.LongIntHashMap;
+import SnomedQuery.Collections.LongObjectHashMap;
+import SnomedQuery.Collections.StringPool;
+
 /**
  * <p>
  * SnomedModelManager class, handles data parsing and queries.
@@ -51,27 +57,72 @@ public class SnomedModelManager {
 
 	/**
 	 * <p>
-	 * java.nio.ByteBuffer wraps a byte array for serializing
-	 * <b>SnomedQueryConcept</b> concepts.
+	 * Version of the model file format written by serialize. Files in other
+	 * versions, apart from the legacy format, are rejected.
+	 * </p>
+	 */
+	public static final int formatVersion = 10;
+
+	/**
+	 * <p>
+	 * Version of the legacy format: files without a header, with fixed
+	 * width values and UTF-16 strings, as first serialized in C#.
+	 * </p>
+	 */
+	public static final int legacyFormatVersion = 1;
+
+	/**
+	 * <p>
+	 * Name of the file the concept data is serialized to.
 	 * </p>
 	 */
-	private ByteArrayOutputStream binaryWriter;
+	public static final String dataFileName = "SnomedQueryConcepts.Data.ser";
 
 	/**
 	 * <p>
-	 * java.nio.ByteBuffer wraps a byte array for serailizing
-	 * <b>SnomedQueryConcept</b> relationships.
+	 * Name of the file the IsA relationships are serialized to.
 	 * </p>
 	 */
-	private ByteArrayOutputStream relationshipWriter;
+	public static final String isARelationshipFileName = "SnomedQueryConcepts.IsARelationships.ser";
 
 	/**
 	 * <p>
-	 * java.util.HashMap for holding a unique set of <b>SnomedQueryConcept</b>
-	 * objects.
+	 * Primitive long keyed map for holding a unique set of
+	 * <b>SnomedQueryConcept</b> objects.
 	 * </p>
 	 */
-	private HashMap<Long, SnomedQueryConcept> snomedConcepts = new HashMap<Long, SnomedQueryConcept>();
+	private LongObjectHashMap<SnomedQueryConcept> snomedConcepts = new LongObjectHashMap<SnomedQueryConcept>();
+
+	/**
+	 * <p>
+	 * Index of the fully specified names and synonyms of all concepts. Built
+	 * on first use and dropped when a concept is added.
+	 * </p>
+	 */
+	private TermIndex termIndex;
+
+	/**
+	 * <p>
+	 * Active attribute (non IsA) relationships between the concepts.
+	 * </p>
+	 */
+	private AttributeRelationshipStore attributeRelationships = new AttributeRelationshipStore();
+
+	/**
+	 * <p>
+	 * Name of the file the preferred terms are serialized to.
+	 * </p>
+	 */
+	public static final String preferredTermFileName = "SnomedQueryConcepts.PreferredTerms.ser";
+
+	/**
+	 * <p>
+	 * Pool of the strings read while deserializing, so that module and
+	 * definition status names and repeated terms are held once. Only set
+	 * during deserialize.
+	 * </p>
+	 */
+	private StringPool stringPool;
 
 	/**
 	 * <p>
@@ -88,6 +139,14 @@ public class SnomedModelManager {
 	 */
 	private ByteBuffer binaryReader;
 
+	/**
+	 * <p>
+	 * Fingerprints of the input files the model was parsed from, recorded
+	 * in the concept data file.
+	 * </p>
+	 */
+	private InputFingerprint[] inputFingerprints = new InputFingerprint[0];
+
 	/**
 	 * <p>
 	 * Constructs a Path to the RawData directory.
@@ -133,52 +192,161 @@ public class SnomedModelManager {
 
 	/**
 	 * <p>
-	 * Deserialize all records serialized in C#.
+	 * Loads the SNOMED Concepts into memory, leaving their fully specified
+	 * names and synonyms encoded until a getter asks for them. Ids,
+	 * relationships, modules, definition statuses and effective times are
+	 * loaded as by loadRecords. Models in the legacy format are loaded in
+	 * full.
+	 * </p>
+	 * <p>
+	 * Modules, definition statuses and effective times follow the names in
+	 * each record, so every record block is still inflated once at load to
+	 * read them; only the decoding of the names is left until they are
+	 * asked for.
+	 * </p>
+	 *
+	 * @param textCacheSize
+	 *            Number of concepts whose decoded names are cached, 0 for no
+	 *            cache.
+	 */
+	public void loadRecordsLazily(int textCacheSize) {
+		this.deserialize(true, textCacheSize);
+	}
+
+	/**
+	 * <p>
+	 * Deserialize all records, from files written by serialize or, in the
+	 * legacy format without a header, serialized in C#.
 	 * </p>
 	 */
 	public void deserialize() {
-		LinkedList<SnomedQueryConcept> list = new LinkedList<>();
+		this.deserialize(false, 0);
+	}
+
+	/**
+	 * <p>
+	 * Deserialize all records.
+	 * </p>
+	 *
+	 * @param lazyText
+	 *            True to leave names and synonyms encoded until they are
+	 *            asked for.
+	 * @param textCacheSize
+	 *            Number of concepts whose decoded names are cached, if
+	 *            lazyText.
+	 */
+	void deserialize(boolean lazyText, int textCacheSize) {
+		SnomedQueryConcept[] concepts = new SnomedQueryConcept[0];
+		int version = legacyFormatVersion;
+		this.stringPool = new StringPool();
 		try {
-			FileInputStream dataReader = new FileInputStream(
-					new File(this.getParsedRecordsDir() + "\\"
-							+ "SnomedQueryConcepts.Data.ser"));
-			this.binaryReader = ByteBuffer
-					.wrap(new byte[(int) dataReader.getChannel().size()]);
-			dataReader.getChannel().read(this.binaryReader);
-			this.binaryReader.position(0);
-			this.binaryReader.order(ByteOrder.LITTLE_ENDIAN);
-			int conceptCount = this.binaryReader.getInt();
-			for (int i = 0; i < conceptCount; i++) {
-				SnomedQueryConcept concept = this.deserializeConceptData();
-				this.add(concept);
-				list.addLast(concept);
+			String path = this.getParsedRecordsDir() + "\\" + dataFileName;
+			ByteBuffer buffer = ModelReader.readFile(path);
+			version = ModelReader.readFormatVersion(buffer, path);
+			if (version == legacyFormatVersion) {
+				this.binaryReader = buffer;
+				concepts = new SnomedQueryConcept[this.binaryReader.getInt()];
+				for (int i = 0; i < concepts.length; i++) {
+					concepts[i] = this.deserializeConceptData();
+				}
+			} else {
+				concepts = this.deserializeConcepts(buffer, lazyText,
+						textCacheSize);
 			}
-			dataReader.close();
+			this.addAll(Arrays.asList(concepts));
 		} catch (IOException e) {
 			e.printStackTrace();
-		} catch (Exception e) {
-			e.printStackTrace();
+		} finally {
+			this.stringPool = null;
 		}
 
 		try {
-			FileInputStream dataReader = new FileInputStream(
-					new File(this.getParsedRecordsDir() + "\\"
-							+ "SnomedQueryConcepts.IsARelationships.ser"));
-			byte[] fileBytes = new byte[(int) dataReader.getChannel().size()];
-			dataReader.read(fileBytes);
-			this.binaryReader = ByteBuffer.wrap(fileBytes)
-					.order(ByteOrder.LITTLE_ENDIAN);
-			for (SnomedQueryConcept concept : list) {
-				this.deserializeConceptRealtionship(concept);
+			String path = this.getParsedRecordsDir() + "\\"
+					+ isARelationshipFileName;
+			ByteBuffer buffer = ModelReader.readFile(path);
+			// Legacy files have no header, and start with a child id that
+			// could happen to equal the magic number.
+			if (version == legacyFormatVersion) {
+				this.binaryReader = buffer;
+				for (SnomedQueryConcept concept : concepts) {
+					this.deserializeConceptRealtionship(concept);
+				}
+			} else {
+				if (ModelReader.readFormatVersion(buffer,
+						path) != formatVersion) {
+					throw new RuntimeException(String.format(
+							"Model file %1$s does not match the concept data file, re-run the parser",
+							path));
+				}
+				this.deserializeRelationships(new ModelReader(buffer),
+						concepts, path);
 			}
-			dataReader.close();
 		} catch (IOException e) {
 			e.printStackTrace();
+		}
+		this.binaryReader = null;
 
-		} catch (Exception e) {
+		// Models parsed before attributes were kept have no attribute file.
+		File attributeFile = new File(this.getParsedRecordsDir() + "\\"
+				+ AttributeRelationshipStore.fileName);
+		this.attributeRelationships = attributeFile.exists()
+				? AttributeRelationshipStore.read(attributeFile.getPath())
+				: new AttributeRelationshipStore();
+
+		File preferredTermFile = new File(
+				this.getParsedRecordsDir() + "\\" + preferredTermFileName);
+		if (preferredTermFile.exists()) {
+			this.deserializePreferredTerms(preferredTermFile,
+					concepts.length);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Read the preferred terms of the concepts, written by
+	 * serializePreferredTerms. The file must have been written with the
+	 * concept data file.
+	 * </p>
+	 *
+	 * @param file
+	 * @param conceptCount
+	 *            Number of concepts in the concept data file.
+	 */
+	void deserializePreferredTerms(File file, int conceptCount) {
+		try {
+			ByteBuffer buffer = ModelReader.readFile(file.getPath());
+			ModelReader reader = new ModelReader(buffer);
+			if ((ModelReader.readFormatVersion(buffer,
+					file.getPath()) != formatVersion)
+					|| (reader.getInt() != conceptCount)) {
+				throw new RuntimeException(String.format(
+						"Model file %1$s does not match the concept data file, re-run the parser",
+						file.getPath()));
+			}
+			int count = reader.getVarInt();
+			long conceptId = 0;
+			for (int i = 0; i < count; i++) {
+				conceptId += reader.getVarLong();
+				this.setPreferredTerm(conceptId, reader.getString(null));
+			}
+		} catch (IOException e) {
 			e.printStackTrace();
 		}
+	}
 
+	/**
+	 * <p>
+	 * Set the preferred term of a concept, if it is in the model.
+	 * </p>
+	 *
+	 * @param conceptId
+	 * @param term
+	 */
+	private void setPreferredTerm(long conceptId, String term) {
+		SnomedQueryConcept concept = this.getConceptById(conceptId);
+		if (concept != null) {
+			concept.setConceptPreferredTerm(term);
+		}
 	}
 
 	/**
@@ -197,15 +365,44 @@ public class SnomedModelManager {
 			System.err.println(
 					String.format("Error adding concept %s to dictionary.`",
 							concept.getConceptId()));
+		this.termIndex = null;
+	}
+
+	/**
+	 * <p>
+	 * Add a batch of SNOMED query concepts to model manager. Same as calling
+	 * add for each concept, but the term index is only dropped once.
+	 * </p>
+	 *
+	 * @param concepts
+	 *            The concepts that will be inserted into
+	 *            <b>snomedConcepts</b>.
+	 */
+	public void addAll(Collection<SnomedQueryConcept> concepts) {
+		for (SnomedQueryConcept concept : concepts) {
+			if (this.snomedConcepts.putIfAbsent(concept.getConceptId(),
+					concept) != null)
+				System.err.println(
+						String.format("Error adding concept %s to dictionary.`",
+								concept.getConceptId()));
+		}
+		this.termIndex = null;
 	}
 
+	/**
+	 * <p>
+	 * Read a concept in the legacy format, without its relationships.
+	 * </p>
+	 *
+	 * @return
+	 */
 	SnomedQueryConcept deserializeConceptData() {
 		long conceptId = this.binaryReader.getLong();
 		String conceptFullyQualifiedName = this.getString();
 		String[] conceptSynonyms = this.getStringArray();
 		String conceptModule = this.getString();
 		String conceptDefinitionStatus = this.getString();
-		DateTime conceptEffectiveTime = this.getDateTime();
+		int conceptEffectiveTime = this.getEffectiveTime();
 
 		SnomedQueryConcept concept = new SnomedQueryConcept(conceptId,
 				conceptFullyQualifiedName, conceptSynonyms, conceptModule,
@@ -217,6 +414,97 @@ public class SnomedModelManager {
 		return concept;
 	}
 
+	/**
+	 * <p>
+	 * Read the concepts of a concept data file written by serialize,
+	 * without their relationships. Each compressed block of records is
+	 * inflated and decoded by its own parallel task.
+	 * </p>
+	 *
+	 * @param buffer
+	 *            Contents of the file, positioned after the header.
+	 * @param lazyText
+	 *            True to leave names and synonyms compressed until they are
+	 *            asked for.
+	 * @param textCacheSize
+	 *            Number of concepts whose decoded names are cached, if
+	 *            lazyText.
+	 * @return The concepts, in file order.
+	 */
+	SnomedQueryConcept[] deserializeConcepts(ByteBuffer buffer,
+			boolean lazyText, int textCacheSize) {
+		ModelReader reader = new ModelReader(buffer);
+		this.inputFingerprints = InputFingerprint.read(reader);
+		int conceptCount = reader.getInt();
+		long[] conceptIds = reader.getLongs(conceptCount);
+		int[] recordOffsets = reader.getInts(conceptCount + 1);
+		CompressedRecords records = new CompressedRecords(buffer, reader,
+				lazyText ? CompressedRecords.defaultCacheSize : 0);
+		EncodedConceptText text = lazyText
+				? new EncodedConceptText(records, textCacheSize)
+				: null;
+		SnomedQueryConcept[] retVal = new SnomedQueryConcept[conceptCount];
+		IntStream.range(0, records.getBlockCount()).parallel().forEach(block -> {
+			// Blocks start at a record, so their starts are in the offsets.
+			int start = Arrays.binarySearch(recordOffsets,
+					records.getBlockStart(block));
+			int end = Arrays.binarySearch(recordOffsets,
+					records.getBlockStart(block + 1));
+			ModelReader blockReader = new ModelReader(
+					ByteBuffer.wrap(records.inflate(block)));
+			for (int i = start; i < end; i++) {
+				retVal[i] = this.deserializeConceptData(blockReader,
+						conceptIds[i], text, recordOffsets[i]);
+			}
+		});
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Read a concept record written by serializeConcept.
+	 * </p>
+	 *
+	 * @param reader
+	 *            Reader positioned at the record.
+	 * @param conceptId
+	 *            Id of the concept, from the id table.
+	 * @param text
+	 *            Encoded names of the file, to leave the names of the
+	 *            concept in. Null to decode them.
+	 * @param recordOffset
+	 *            Offset of the record, for <i>text</i>.
+	 * @return
+	 */
+	SnomedQueryConcept deserializeConceptData(ModelReader reader,
+			long conceptId, EncodedConceptText text, int recordOffset) {
+		String conceptFullyQualifiedName = null;
+		String[] conceptSynonyms = null;
+		if (text == null) {
+			conceptFullyQualifiedName = reader.getString(this.stringPool);
+			conceptSynonyms = new String[reader.getVarInt()];
+			for (int i = 0; i < conceptSynonyms.length; i++) {
+				conceptSynonyms[i] = reader.getString(this.stringPool);
+			}
+		} else {
+			reader.skipString();
+			for (int i = reader.getVarInt(); i > 0; i--) {
+				reader.skipString();
+			}
+		}
+		String conceptModule = reader.getString(this.stringPool);
+		String conceptDefinitionStatus = reader.getString(this.stringPool);
+		int conceptEffectiveTime = reader.getVarInt();
+
+		SnomedQueryConcept concept = new SnomedQueryConcept(conceptId,
+				conceptFullyQualifiedName, conceptSynonyms, conceptModule,
+				conceptDefinitionStatus, conceptEffectiveTime);
+		if (text != null) {
+			concept.setEncodedText(text, recordOffset);
+		}
+		return concept;
+	}
+
 	/**
 	 * <p>
 	 * Gets the length of the char[] to be deserialized first, then deserializes
@@ -233,7 +521,9 @@ public class SnomedModelManager {
 			readChars[i] = this.binaryReader.order(ByteOrder.LITTLE_ENDIAN)
 					.getChar();
 		}
-		retVal = new String(readChars);
+		retVal = (this.stringPool == null)
+				? new String(readChars)
+				: this.stringPool.intern(readChars, 0, length);
 		return retVal;
 
 	}
@@ -268,7 +558,20 @@ public class SnomedModelManager {
 
 	/**
 	 * <p>
-	 * Link up parent/child relationships
+	 * Reads a serialized DateTime out of <b>binaryReader</b> as a packed
+	 * yyyymmdd int, without building a DateTime object.
+	 * </p>
+	 *
+	 * @return Effective date.
+	 */
+	int getEffectiveTime() {
+		return EffectiveTime.fromMillis(this.binaryReader.getLong());
+	}
+
+	/**
+	 * <p>
+	 * Link up parent/child relationships read in the legacy format, finding
+	 * each child by its id.
 	 * </p>
 	 *
 	 * @param concept
@@ -289,207 +592,376 @@ public class SnomedModelManager {
 
 	/**
 	 * <p>
-	 * Serialize concepts and relationships in memory to binary
+	 * Link up parent/child relationships of an IsA relationship file
+	 * written by serialize. Parents are read in bulk as tables of positions
+	 * in the concept data file, so no id is looked up, and children are
+	 * found by reversing them. Each concept is linked on its own, in
+	 * parallel.
+	 * </p>
+	 *
+	 * @param reader
+	 *            Reader positioned after the header.
+	 * @param concepts
+	 *            All concepts, in concept data file order.
+	 * @param path
+	 *            Path of the file, for the error message.
+	 */
+	void deserializeRelationships(ModelReader reader,
+			SnomedQueryConcept[] concepts, String path) {
+		if (reader.getInt() != concepts.length) {
+			throw new RuntimeException(String.format(
+					"Model file %1$s does not match the concept data file, re-run the parser",
+					path));
+		}
+		int[] parentOffsets = reader.getInts(concepts.length + 1);
+		int[] parentOrdinals = reader.getInts(parentOffsets[concepts.length]);
+		int[][] children = Csr.transpose(parentOffsets, parentOrdinals);
+		int[] childOffsets = children[0];
+		int[] childOrdinals = children[1];
+		IntStream.range(0, concepts.length).parallel().forEach(i -> {
+			concepts[i].setIsAParents(
+					related(concepts, parentOffsets, parentOrdinals, i));
+			concepts[i].setIsAChildren(
+					related(concepts, childOffsets, childOrdinals, i));
+		});
+	}
+
+	/**
+	 * <p>
+	 * Return the concepts related to the concept at <i>ordinal</i>, from
+	 * tables in CSR form.
+	 * </p>
+	 *
+	 * @param concepts
+	 *            All concepts, in concept data file order.
+	 * @param offsets
+	 * @param ordinals
+	 * @param ordinal
+	 * @return
+	 */
+	private static SnomedQueryConcept[] related(SnomedQueryConcept[] concepts,
+			int[] offsets, int[] ordinals, int ordinal) {
+		int start = offsets[ordinal];
+		SnomedQueryConcept[] retVal = new SnomedQueryConcept[offsets[ordinal
+				+ 1] - start];
+		for (int i = 0; i < retVal.length; i++) {
+			retVal[i] = concepts[ordinals[start + i]];
+		}
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Serialize concepts and relationships in memory to binary.
+	 * </p>
+	 * <p>
+	 * After the header, the concept data file holds the fingerprints of the
+	 * input files the model was parsed from, the concept count, the
+	 * concept ids in ascending order and the offsets of the concept records,
+	 * one more than there are concepts. The records follow, deflated in
+	 * blocks of a few KB behind a block table, as written by
+	 * CompressedRecords. The IsA relationship file holds the concept count,
+	 * then the parents of each concept in CSR form: offsets, one more than
+	 * there are concepts, into a table of positions in the concept data
+	 * file. Each edge is stored once; children are found by reversing the
+	 * parent table when loading, in ascending id order. All tables are
+	 * fixed width, so that MappedSnomedModel can use the files in place,
+	 * inflating only the record blocks it reads.
+	 * </p>
+	 * <p>
+	 * The concept data file, which holds the fingerprints, is removed first
+	 * and written last, to a temporary file that is renamed into place, so
+	 * that a model whose files are not all written is never taken as
+	 * current.
 	 * </p>
 	 */
 	public void serialize() {
-		this.binaryWriter = new ByteArrayOutputStream();
-		this.relationshipWriter = new ByteArrayOutputStream();
+		SnomedQueryConcept[] concepts = this.getSortedConcepts();
 		try {
-			FileOutputStream dataOutput = new FileOutputStream(
-					new File(this.getParsedRecordsDir() + "\\"
-							+ "SnomedQueryConcepts.Data.ser"));
-			FileOutputStream relOutput = new FileOutputStream(
-					new File(this.getParsedRecordsDir() + "\\"
-							+ "SnomedQueryConcepts.IsARelationships.ser"));
-			this.binaryWriter = this.write(this.binaryWriter,
-					this.snomedConcepts.size());
-			for (SnomedQueryConcept concept : this.snomedConcepts.values()) {
-				this.serializeConcept(concept);
-			}
-
-			dataOutput.write(this.binaryWriter.toByteArray());
-			relOutput.write(this.relationshipWriter.toByteArray());
+			this.invalidate();
+			this.serializeRelationships(concepts);
+			this.attributeRelationships.write(this.getParsedRecordsDir()
+					+ "\\" + AttributeRelationshipStore.fileName);
+			this.serializePreferredTerms(concepts);
+			this.serializeConcepts(concepts);
+		} catch (IOException e) {
+			throw new RuntimeException(String.format(
+					"Unable to serialize the model to %1$s",
+					this.getParsedRecordsDir()), e);
+		}
+	}
 
-			dataOutput.flush();
-			dataOutput.close();
+	/**
+	 * <p>
+	 * Delete the concept data file, so that the serialized model is not
+	 * taken as current while its files are rewritten. The model can not be
+	 * loaded again until serialize has run.
+	 * </p>
+	 */
+	public void invalidate() {
+		String path = this.getParsedRecordsDir() + "\\" + dataFileName;
+		try {
+			Files.deleteIfExists(Paths.get(path));
+		} catch (IOException e) {
+			throw new RuntimeException(
+					String.format("Unable to delete model file %1$s", path),
+					e);
+		}
+	}
 
-			relOutput.flush();
-			relOutput.close();
+	/**
+	 * <p>
+	 * Gets the fingerprints of the input files the model was parsed from.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public InputFingerprint[] getInputFingerprints() {
+		return this.inputFingerprints;
+	}
 
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		} catch (UnsupportedEncodingException e) {
-			e.printStackTrace();
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
+	/**
+	 * <p>
+	 * Sets the fingerprints of the input files, written by serialize. An
+	 * empty array makes the next parse run in full.
+	 * </p>
+	 *
+	 * @param inputFingerprints
+	 */
+	public void setInputFingerprints(InputFingerprint[] inputFingerprints) {
+		this.inputFingerprints = inputFingerprints;
 	}
 
 	/**
 	 * <p>
-	 * Serializes the concept and relationships.
+	 * Read only the input fingerprints of the serialized concept data file,
+	 * without loading the model.
 	 * </p>
-	 * 
-	 * @param concept
-	 * @throws Exception
+	 *
+	 * @return The fingerprints, or null if there is no data file in the
+	 *         current format.
 	 */
-	void serializeConcept(SnomedQueryConcept concept) throws Exception {
-		if (concept.getConceptId() == 45614000)
-			System.out.println("");
-		this.binaryWriter = this.write(this.binaryWriter,
-				concept.getConceptId());
-		this.binaryWriter = this.write(this.binaryWriter,
-				concept.getConceptFullyQualifiedName());
-		this.binaryWriter = this.write(this.binaryWriter,
-				concept.getConceptSynonyms());
-		this.binaryWriter = this.write(this.binaryWriter,
-				concept.getConceptModule());
-		this.binaryWriter = this.write(this.binaryWriter,
-				concept.getConceptDefinitionStatus());
-		this.binaryWriter = this.write(this.binaryWriter,
-				concept.getConceptEffectiveTime().getMillis());
-
-		this.binaryWriter = this.write(this.binaryWriter,
-				concept.getIsAParents().length);
-		this.binaryWriter = this.write(this.binaryWriter,
-				concept.getIsAChildren().length);
-
-		SnomedQueryConcept[] childArray = concept.getIsAChildren();
-		for (int i = 0; i < childArray.length; i++) {
-			SnomedQueryConcept child = childArray[i];
-			this.relationshipWriter = this.write(this.relationshipWriter,
-					child.getConceptId());
-			int reverseIndex = -1;
-			SnomedQueryConcept[] parentArray = child.getIsAParents();
-			for (int j = 0; j < parentArray.length; j++) {
-				if (parentArray[j].getConceptId() == concept.getConceptId()) {
-					reverseIndex = j;
-					break;
+	public InputFingerprint[] readInputFingerprints() {
+		String path = this.getParsedRecordsDir() + "\\" + dataFileName;
+		if (!new File(path).isFile()) {
+			return null;
+		}
+		try {
+			// Read rather than map the start of the file, so that no mapping
+			// keeps it from being replaced by the next serialize.
+			for (int length = 4096;; length *= 2) {
+				ByteBuffer buffer = ModelReader.readFileStart(path, length);
+				if (ModelReader.readFormatVersion(buffer,
+						path) != formatVersion) {
+					return null;
+				}
+				try {
+					return InputFingerprint.read(new ModelReader(buffer));
+				} catch (BufferUnderflowException e) {
+					if (buffer.limit() < length) {
+						return null;
+					}
 				}
 			}
-
-			if (reverseIndex == -1) {
-				throw new Exception("Reverse snomed index not found");
-			}
-			this.relationshipWriter = this.write(this.relationshipWriter,
-					reverseIndex);
+		} catch (IOException | RuntimeException e) {
+			return null;
 		}
 	}
 
 	/**
 	 * <p>
-	 * Serializes an integer value.
+	 * Return all concepts, sorted by id.
 	 * </p>
-	 * 
-	 * @param buffer
-	 * @param value
+	 *
 	 * @return
-	 * @throws IOException
 	 */
-	public ByteArrayOutputStream write(ByteArrayOutputStream buffer, int value)
-			throws IOException {
-		buffer.write(ByteBuffer.allocate(Integer.BYTES)
-				.order(ByteOrder.LITTLE_ENDIAN).putInt(value).array());
-		return buffer;
+	SnomedQueryConcept[] getSortedConcepts() {
+		SnomedQueryConcept[] retVal = new SnomedQueryConcept[this.snomedConcepts
+				.size()];
+		int count = 0;
+		for (SnomedQueryConcept concept : this.snomedConcepts.values()) {
+			retVal[count++] = concept;
+		}
+		Arrays.sort(retVal,
+				(a, b) -> Long.compare(a.getConceptId(), b.getConceptId()));
+		return retVal;
 	}
 
 	/**
 	 * <p>
-	 * Serializes a long value.
+	 * Serializes the concept data file.
 	 * </p>
-	 * 
-	 * @param buffer
-	 * @param value
-	 * @return
+	 *
+	 * @param concepts
+	 *            All concepts, sorted by id.
 	 * @throws IOException
 	 */
-	public ByteArrayOutputStream write(ByteArrayOutputStream buffer, long value)
-			throws IOException {
-		buffer.write(ByteBuffer.allocate(Long.BYTES)
-				.order(ByteOrder.LITTLE_ENDIAN).putLong(value).array());
-		return buffer;
+	void serializeConcepts(SnomedQueryConcept[] concepts) throws IOException {
+		String path = this.getParsedRecordsDir() + "\\" + dataFileName;
+		String temporaryPath = path + ".tmp";
+		try (ModelWriter output = new ModelWriter(temporaryPath,
+				formatVersion)) {
+			InputFingerprint.write(output, this.inputFingerprints);
+			output.putInt(concepts.length);
+			for (SnomedQueryConcept concept : concepts) {
+				output.putLong(concept.getConceptId());
+			}
+			int[] recordOffsets = new int[concepts.length + 1];
+			for (int i = 0; i < concepts.length; i++) {
+				recordOffsets[i + 1] = recordOffsets[i]
+						+ recordLength(concepts[i]);
+			}
+			for (int offset : recordOffsets) {
+				output.putInt(offset);
+			}
+			int[] blockFirsts = CompressedRecords.split(recordOffsets);
+			int[] blockStarts = new int[blockFirsts.length];
+			byte[][] blocks = new byte[blockFirsts.length - 1][];
+			for (int i = 0; i < blockFirsts.length; i++) {
+				blockStarts[i] = recordOffsets[blockFirsts[i]];
+			}
+			IntStream.range(0, blocks.length).parallel().forEach(block -> {
+				ModelWriter records = new ModelWriter(
+						blockStarts[block + 1] - blockStarts[block]);
+				try {
+					for (int i = blockFirsts[block]; i < blockFirsts[block
+							+ 1]; i++) {
+						this.serializeConcept(records, concepts[i]);
+					}
+				} catch (IOException e) {
+					// Writes to memory do not fail.
+					throw new RuntimeException(e);
+				}
+				blocks[block] = CompressedRecords.deflate(records.toByteArray());
+			});
+			CompressedRecords.write(output, blockStarts, blocks);
+		}
+		Files.move(Paths.get(temporaryPath), Paths.get(path),
+				StandardCopyOption.REPLACE_EXISTING);
 	}
 
 	/**
 	 * <p>
-	 * Serializes a long value.
+	 * Serializes the IsA relationship file: the parents of all concepts in
+	 * CSR form, as offsets and positions in the concept data file.
 	 * </p>
-	 * 
-	 * @param buffer
-	 * @param value
-	 * @return
+	 *
+	 * @param concepts
+	 *            All concepts, sorted by id.
 	 * @throws IOException
 	 */
-	public ByteArrayOutputStream write(ByteArrayOutputStream buffer,
-			DateTime value) throws IOException {
-		buffer.write(
-				ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN)
-						.putLong(value.getMillis()).array());
-		return buffer;
+	void serializeRelationships(SnomedQueryConcept[] concepts)
+			throws IOException {
+		LongIntHashMap ordinals = new LongIntHashMap(concepts.length);
+		for (int i = 0; i < concepts.length; i++) {
+			ordinals.put(concepts[i].getConceptId(), i);
+		}
+		try (ModelWriter output = new ModelWriter(
+				this.getParsedRecordsDir() + "\\" + isARelationshipFileName,
+				formatVersion)) {
+			output.putInt(concepts.length);
+			int offset = 0;
+			output.putInt(offset);
+			for (SnomedQueryConcept concept : concepts) {
+				offset += concept.getIsAParents().length;
+				output.putInt(offset);
+			}
+			for (SnomedQueryConcept concept : concepts) {
+				for (SnomedQueryConcept parent : concept.getIsAParents()) {
+					int ordinal = ordinals.get(parent.getConceptId(), -1);
+					if (ordinal < 0) {
+						throw new RuntimeException(String.format(
+								"Concept %1$s not found in dictionary",
+								parent.getConceptId()));
+					}
+					output.putInt(ordinal);
+				}
+			}
+		}
 	}
 
 	/**
 	 * <p>
-	 * Serializes a String value.
+	 * Serializes the preferred terms of the concepts that have one, as id
+	 * and term pairs, after the number of concepts in the concept data file.
 	 * </p>
-	 * 
-	 * @param buffer
-	 * @param value
-	 * @return
+	 *
+	 * @param concepts
+	 *            All concepts, sorted by id.
 	 * @throws IOException
 	 */
-	public ByteArrayOutputStream write(ByteArrayOutputStream buffer,
-			String value) throws IOException {
-		buffer.write(ByteBuffer.allocate(Integer.BYTES)
-				.order(ByteOrder.LITTLE_ENDIAN).putInt(value.length()).array());
-		for (int i = 0; i < value.length(); i++) {
-			buffer.write(ByteBuffer.allocate(Character.BYTES)
-					.order(ByteOrder.LITTLE_ENDIAN)
-					.putChar(value.toCharArray()[i]).array());
+	void serializePreferredTerms(SnomedQueryConcept[] concepts)
+			throws IOException {
+		int count = 0;
+		for (SnomedQueryConcept concept : concepts) {
+			if (!concept.getConceptPreferredTerm().isEmpty()) {
+				count += 1;
+			}
+		}
+		try (ModelWriter output = new ModelWriter(
+				this.getParsedRecordsDir() + "\\" + preferredTermFileName,
+				formatVersion)) {
+			output.putInt(concepts.length);
+			output.putVarLong(count);
+			long previousConceptId = 0;
+			for (SnomedQueryConcept concept : concepts) {
+				if (!concept.getConceptPreferredTerm().isEmpty()) {
+					output.putVarLong(
+							concept.getConceptId() - previousConceptId);
+					output.putString(concept.getConceptPreferredTerm());
+					previousConceptId = concept.getConceptId();
+				}
+			}
 		}
-		return buffer;
 	}
 
 	/**
 	 * <p>
-	 * Serializes a long array value.
+	 * Serializes the record of a concept: its names, module, definition
+	 * status and effective time. Its id is in the id table.
 	 * </p>
 	 * 
-	 * @param buffer
-	 * @param value
-	 * @return
+	 * @param output
+	 *            Writer of the concept data file.
+	 * @param concept
 	 * @throws IOException
 	 */
-	public ByteArrayOutputStream write(ByteArrayOutputStream buffer,
-			long[] value) throws IOException {
-		buffer.write(ByteBuffer.allocate(Integer.BYTES)
-				.order(ByteOrder.LITTLE_ENDIAN).putInt(value.length).array());
-		for (long l : value) {
-			buffer.write(ByteBuffer.allocate(Long.BYTES)
-					.order(ByteOrder.LITTLE_ENDIAN).putLong(l).array());
+	void serializeConcept(ModelWriter output, SnomedQueryConcept concept)
+			throws IOException {
+		output.putString(concept.getConceptFullyQualifiedName());
+		String[] synonyms = concept.getConceptSynonyms();
+		output.putVarLong(synonyms.length);
+		for (String synonym : synonyms) {
+			output.putString(synonym);
 		}
-		return buffer;
+		output.putString(concept.getConceptModule());
+		output.putString(concept.getConceptDefinitionStatus());
+		output.putVarLong(concept.getConceptEffectiveDate());
 	}
 
 	/**
 	 * <p>
-	 * Serializes a string array value.
+	 * Return the number of bytes serializeConcept writes for
+	 * <i>concept</i>.
 	 * </p>
-	 * 
-	 * @param buffer
-	 * @param value
+	 *
+	 * @param concept
 	 * @return
-	 * @throws IOException
 	 */
-	public ByteArrayOutputStream write(ByteArrayOutputStream buffer,
-			String[] value) throws IOException {
-		buffer.write(ByteBuffer.allocate(Integer.BYTES)
-				.order(ByteOrder.LITTLE_ENDIAN).putInt(value.length).array());
-		for (int i = 0; i < value.length; i++) {
-			buffer = this.write(buffer, value[i]);
+	static int recordLength(SnomedQueryConcept concept) {
+		int retVal = ModelWriter
+				.stringLength(concept.getConceptFullyQualifiedName());
+		String[] synonyms = concept.getConceptSynonyms();
+		retVal += ModelWriter.varLongLength(synonyms.length);
+		for (String synonym : synonyms) {
+			retVal += ModelWriter.stringLength(synonym);
 		}
-		return buffer;
+		retVal += ModelWriter.stringLength(concept.getConceptModule());
+		retVal += ModelWriter
+				.stringLength(concept.getConceptDefinitionStatus());
+		retVal += ModelWriter
+				.varLongLength(concept.getConceptEffectiveDate());
+		return retVal;
 	}
 
 	/**
@@ -507,6 +979,220 @@ public class SnomedModelManager {
 		return retVal;
 	}
 
+	/**
+	 * <p>
+	 * Remove SNOMED query concept from model manager, unlinking it from its
+	 * IsA parents and children.
+	 * </p>
+	 *
+	 * @param conceptId
+	 *            Id of the concept to remove.
+	 * @return The removed concept, null if there was none.
+	 */
+	public SnomedQueryConcept remove(long conceptId) {
+		SnomedQueryConcept concept = this.snomedConcepts.remove(conceptId);
+		if (concept == null) {
+			return null;
+		}
+		for (SnomedQueryConcept parent : concept.getIsAParents()) {
+			parent.setIsAChildren(without(parent.getIsAChildren(), concept));
+		}
+		for (SnomedQueryConcept child : concept.getIsAChildren()) {
+			child.setIsAParents(without(child.getIsAParents(), concept));
+		}
+		concept.setIsAParents(new SnomedQueryConcept[0]);
+		concept.setIsAChildren(new SnomedQueryConcept[0]);
+		this.termIndex = null;
+		return concept;
+	}
+
+	/**
+	 * <p>
+	 * Return <i>items</i> without <i>item</i>.
+	 * </p>
+	 *
+	 * @param items
+	 * @param item
+	 * @return
+	 */
+	private static SnomedQueryConcept[] without(SnomedQueryConcept[] items,
+			SnomedQueryConcept item) {
+		int count = 0;
+		SnomedQueryConcept[] retVal = new SnomedQueryConcept[items.length];
+		for (SnomedQueryConcept other : items) {
+			if (other != item) {
+				retVal[count++] = other;
+			}
+		}
+		return (count == items.length)
+				? items
+				: Arrays.copyOf(retVal, count);
+	}
+
+	/**
+	 * <p>
+	 * Gets all concepts of the model.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public Iterable<SnomedQueryConcept> getConcepts() {
+		return this.snomedConcepts.values();
+	}
+
+	/**
+	 * <p>
+	 * Gets the attribute (non IsA) relationships of the model.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public AttributeRelationshipStore getAttributeRelationships() {
+		return this.attributeRelationships;
+	}
+
+	/**
+	 * <p>
+	 * Find the values of one attribute of a concept.
+	 * </p>
+	 *
+	 * @param conceptId
+	 *            Id of the concept the attribute belongs to.
+	 * @param typeId
+	 *            Id of the attribute type, e.g. finding site.
+	 * @return The value concepts, in concept id order.
+	 */
+	public SnomedQueryConcept[] findAttributeValues(long conceptId,
+			long typeId) {
+		return this.toConcepts(this.attributeRelationships
+				.findDestinations(conceptId, typeId));
+	}
+
+	/**
+	 * <p>
+	 * Find the concepts that have an attribute of type <i>typeId</i> whose
+	 * value is <i>valueId</i> or one of its descendants, e.g. everything
+	 * with a finding site in some body structure.
+	 * </p>
+	 *
+	 * @param typeId
+	 *            Id of the attribute type.
+	 * @param valueId
+	 *            Id of the value concept.
+	 * @return The matching concepts, each once.
+	 */
+	public SnomedQueryConcept[] findConceptsWithAttribute(long typeId,
+			long valueId) {
+		SnomedQueryConcept value = this.getConceptById(valueId);
+		if (value == null) {
+			return new SnomedQueryConcept[0];
+		}
+		HashMap<Long, SnomedQueryConcept> values = new HashMap<>();
+		values.put(valueId, value);
+		this.findDecendents(values, value);
+		LongObjectHashMap<SnomedQueryConcept> found = new LongObjectHashMap<SnomedQueryConcept>();
+		for (long id : values.keySet()) {
+			for (long sourceId : this.attributeRelationships.findSources(typeId,
+					id)) {
+				SnomedQueryConcept source = this.getConceptById(sourceId);
+				if (source != null) {
+					found.put(sourceId, source);
+				}
+			}
+		}
+		SnomedQueryConcept[] retVal = new SnomedQueryConcept[found.size()];
+		int i = 0;
+		for (SnomedQueryConcept qc : found.values()) {
+			retVal[i] = qc;
+			i++;
+		}
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * Return the concepts of <i>conceptIds</i> that are in the model.
+	 * </p>
+	 *
+	 * @param conceptIds
+	 * @return
+	 */
+	private SnomedQueryConcept[] toConcepts(long[] conceptIds) {
+		SnomedQueryConcept[] retVal = new SnomedQueryConcept[conceptIds.length];
+		int count = 0;
+		for (long conceptId : conceptIds) {
+			SnomedQueryConcept concept = this.getConceptById(conceptId);
+			if (concept != null) {
+				retVal[count++] = concept;
+			}
+		}
+		return (count == retVal.length)
+				? retVal
+				: Arrays.copyOf(retVal, count);
+	}
+
+	/**
+	 * <p>
+	 * Gets the number of concepts in the model.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public int getConceptCount() {
+		return this.snomedConcepts.size();
+	}
+
+	/**
+	 * <p>
+	 * Drop indexes derived from the concepts, after concepts have been
+	 * changed in place.
+	 * </p>
+	 */
+	public synchronized void conceptsChanged() {
+		this.termIndex = null;
+	}
+
+	/**
+	 * <p>
+	 * Gets the index of concept terms, building it if needed.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public synchronized TermIndex getTermIndex() {
+		if (this.termIndex == null) {
+			TermIndex index = new TermIndex(this.snomedConcepts.size() * 2);
+			for (SnomedQueryConcept concept : this.snomedConcepts.values()) {
+				index.add(concept.getConceptFullyQualifiedName(),
+						concept.getConceptId());
+				for (String synonym : concept.getConceptSynonyms()) {
+					index.add(synonym, concept.getConceptId());
+				}
+			}
+			this.termIndex = index;
+		}
+		return this.termIndex;
+	}
+
+	/**
+	 * <p>
+	 * Return all concepts with a fully specified name or synonym matching
+	 * <i>term</i>, ignoring case and surrounding white space.
+	 * </p>
+	 *
+	 * @param term
+	 *            the queried term.
+	 * @return The array of matching concepts, empty if none.
+	 */
+	public SnomedQueryConcept[] findConceptsByTerm(String term) {
+		long[] conceptIds = this.getTermIndex().find(term);
+		SnomedQueryConcept[] retVal = new SnomedQueryConcept[conceptIds.length];
+		for (int i = 0; i < conceptIds.length; i++) {
+			retVal[i] = this.getConceptById(conceptIds[i]);
+		}
+		return retVal;
+	}
+
 	/**
 	 * <p>
 	 * Return true if concept with child id is a child of parent.
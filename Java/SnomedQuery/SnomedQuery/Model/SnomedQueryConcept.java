@@ -38,13 +38,63 @@ public class SnomedQueryConcept {
 
 	/**
 	 * <p>
-	 * returns <b>conceptFullyQualifiedName</b>
+	 * returns <b>conceptFullyQualifiedName</b>, decoding it if the concept
+	 * was loaded lazily.
 	 * </p>
 	 * 
 	 * @return conceptFullyQualifiedName value
 	 */
 	public final String getConceptFullyQualifiedName() {
-		return this.conceptFullyQualifiedName;
+		String retVal = this.conceptFullyQualifiedName;
+		if ((retVal == null) && (this.encodedText != null)) {
+			retVal = this.encodedText.getFullyQualifiedName(this.textPosition);
+		}
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * sets <b>conceptFullyQualifiedName</b>
+	 * </p>
+	 * 
+	 * @param conceptFullyQualifiedName
+	 *            setting conceptFullyQualifiedName
+	 */
+	public final void setConceptFullyQualifiedName(
+			final String conceptFullyQualifiedName) {
+		this.conceptFullyQualifiedName = conceptFullyQualifiedName;
+	}
+
+	/**
+	 * <p>
+	 * SNOMED preferred term in the language refset the model was parsed
+	 * with. Empty if the concept has none.
+	 * </p>
+	 */
+	private String conceptPreferredTerm = "";
+
+	/**
+	 * <p>
+	 * returns <b>conceptPreferredTerm</b>
+	 * </p>
+	 *
+	 * @return conceptPreferredTerm value
+	 */
+	public final String getConceptPreferredTerm() {
+		return this.conceptPreferredTerm;
+	}
+
+	/**
+	 * <p>
+	 * sets <b>conceptPreferredTerm</b>
+	 * </p>
+	 *
+	 * @param conceptPreferredTerm
+	 *            setting conceptPreferredTerm
+	 */
+	public final void setConceptPreferredTerm(
+			final String conceptPreferredTerm) {
+		this.conceptPreferredTerm = conceptPreferredTerm;
 	}
 
 	/**
@@ -56,13 +106,66 @@ public class SnomedQueryConcept {
 
 	/**
 	 * <p>
-	 * returns <b>conceptSynonyms</b>
+	 * returns <b>conceptSynonyms</b>, decoding them if the concept was
+	 * loaded lazily.
+	 * </p>
+	 * <p>
+	 * The array must not be written to. For a lazily loaded concept it is
+	 * decoded again, or copied from the cache, on every call, so writes to
+	 * it are lost; use setConceptSynonyms to change the synonyms.
 	 * </p>
 	 * 
 	 * @return conceptSynonyms array.
 	 */
 	public final String[] getConceptSynonyms() {
-		return this.conceptSynonyms;
+		String[] retVal = this.conceptSynonyms;
+		if ((retVal == null) && (this.encodedText != null)) {
+			retVal = this.encodedText.getSynonyms(this.textPosition);
+		}
+		return retVal;
+	}
+
+	/**
+	 * <p>
+	 * sets <b>conceptSynonyms</b>
+	 * </p>
+	 * 
+	 * @param conceptSynonyms
+	 *            setting conceptSynonyms
+	 */
+	public final void setConceptSynonyms(final String[] conceptSynonyms) {
+		this.conceptSynonyms = conceptSynonyms;
+	}
+
+	/**
+	 * <p>
+	 * Encoded names of a lazily loaded concept, decoded by the getters while
+	 * <b>conceptFullyQualifiedName</b> or <b>conceptSynonyms</b> are null.
+	 * Null if the concept was not loaded lazily.
+	 * </p>
+	 */
+	private EncodedConceptText encodedText;
+
+	/**
+	 * <p>
+	 * Position of the concept record in <b>encodedText</b>.
+	 * </p>
+	 */
+	private int textPosition;
+
+	/**
+	 * <p>
+	 * sets the encoded names of a lazily loaded concept.
+	 * </p>
+	 *
+	 * @param encodedText
+	 * @param textPosition
+	 *            Position of the concept record in encodedText.
+	 */
+	final void setEncodedText(final EncodedConceptText encodedText,
+			final int textPosition) {
+		this.encodedText = encodedText;
+		this.textPosition = textPosition;
 	}
 
 	/**
@@ -83,6 +186,18 @@ public class SnomedQueryConcept {
 		return this.conceptModule;
 	}
 
+	/**
+	 * <p>
+	 * sets <b>conceptModule</b>
+	 * </p>
+	 * 
+	 * @param conceptModule
+	 *            setting conceptModule
+	 */
+	public final void setConceptModule(final String conceptModule) {
+		this.conceptModule = conceptModule;
+	}
+
 	/**
 	 * <p>
 	 * SNOMED Definition Status
@@ -103,22 +218,59 @@ public class SnomedQueryConcept {
 
 	/**
 	 * <p>
-	 * SNOMED concept Effective Time
+	 * sets <b>conceptDefinitionStatus</b>
+	 * </p>
+	 * 
+	 * @param conceptDefinitionStatus
+	 *            setting conceptDefinitionStatus
+	 */
+	public final void setConceptDefinitionStatus(
+			final String conceptDefinitionStatus) {
+		this.conceptDefinitionStatus = conceptDefinitionStatus;
+	}
+
+	/**
+	 * <p>
+	 * SNOMED concept Effective Time, as a packed yyyymmdd int.
 	 * </p>
 	 */
-	private DateTime conceptEffectiveTime;
+	private int conceptEffectiveTime;
 
 	/**
 	 * <p>
-	 * returns <b>conceptEffectiveTime</b>
+	 * returns <b>conceptEffectiveTime</b> as a DateTime at midnight UTC,
+	 * built on each call.
 	 * </p>
 	 * 
 	 * @return conceptEffectiveTime value
 	 */
 	public final DateTime getConceptEffectiveTime() {
+		return EffectiveTime.toDateTime(this.conceptEffectiveTime);
+	}
+
+	/**
+	 * <p>
+	 * returns <b>conceptEffectiveTime</b> as a packed yyyymmdd int.
+	 * </p>
+	 * 
+	 * @return conceptEffectiveTime value
+	 */
+	public final int getConceptEffectiveDate() {
 		return this.conceptEffectiveTime;
 	}
 
+	/**
+	 * <p>
+	 * sets <b>conceptEffectiveTime</b>
+	 * </p>
+	 * 
+	 * @param conceptEffectiveTime
+	 *            setting conceptEffectiveTime, as a packed yyyymmdd int
+	 */
+	public final void setConceptEffectiveDate(final int conceptEffectiveTime) {
+		this.conceptEffectiveTime = conceptEffectiveTime;
+	}
+
 	/**
 	 * <p>
 	 * SNOMED IsA concept parents
@@ -202,6 +354,34 @@ public class SnomedQueryConcept {
 			final String[] conceptSynonyms, final String conceptModule,
 			final String conceptDefinitionStatus,
 			final DateTime conceptEffectiveTime) {
+		this(conceptId, conceptFullyQualifiedName, conceptSynonyms,
+				conceptModule, conceptDefinitionStatus,
+				EffectiveTime.fromDateTime(conceptEffectiveTime));
+	}
+
+	/**
+	 * <p>
+	 * Class SnomedQueryConcept constructor
+	 * </p>
+	 * 
+	 * @param conceptId
+	 *            to set conceptId
+	 * @param conceptFullyQualifiedName
+	 *            to set conceptFullyQualifiedName
+	 * @param conceptSynonyms
+	 *            to set conceptSynonyms
+	 * @param conceptModule
+	 *            to set conceptModule
+	 * @param conceptDefinitionStatus
+	 *            to set conceptDefinitionSatus
+	 * @param conceptEffectiveTime
+	 *            to set conceptEffectiveTime, as a packed yyyymmdd int
+	 */
+	public SnomedQueryConcept(final long conceptId,
+			final String conceptFullyQualifiedName,
+			final String[] conceptSynonyms, final String conceptModule,
+			final String conceptDefinitionStatus,
+			final int conceptEffectiveTime) {
 		this.conceptId = conceptId;
 		this.conceptFullyQualifiedName = conceptFullyQualifiedName;
 		this.conceptSynonyms = conceptSynonyms;
@@ -0,0 +1,139 @@
+package SnomedQuery.Model;
+
+import java.util.HashMap;
+
+/**
+ * <p>
+ * Index from normalized (trimmed, upper case) description terms to the ids
+ * of the concepts that have a description with that term. Lookups cost one
+ * hash probe instead of a scan over every description.
+ * </p>
+ *
+ * @author Travis Lukach
+ */
+public class TermIndex {
+	/**
+	 * <p>
+	 * Shared result of lookups that find nothing.
+	 * </p>
+	 */
+	private static final long[] noConcepts = new long[0];
+
+	/**
+	 * <p>
+	 * Concept ids of each normalized term, without duplicates. Nearly every
+	 * term belongs to a single concept, so arrays are grown one id at a time.
+	 * </p>
+	 */
+	private final HashMap<String, long[]> conceptIds;
+
+	/**
+	 * <p>
+	 * Constructor.
+	 * </p>
+	 */
+	public TermIndex() {
+		this(16);
+	}
+
+	/**
+	 * <p>
+	 * Constructor.
+	 * </p>
+	 *
+	 * @param expectedSize
+	 *            Number of distinct terms expected.
+	 */
+	public TermIndex(int expectedSize) {
+		this.conceptIds = new HashMap<String, long[]>(
+				Math.max(16, (int) (expectedSize / 0.75f) + 1));
+	}
+
+	/**
+	 * <p>
+	 * Return <i>term</i> in the form it is indexed under.
+	 * </p>
+	 *
+	 * @param term
+	 * @return
+	 */
+	public static String normalize(String term) {
+		return term.trim().toUpperCase();
+	}
+
+	/**
+	 * <p>
+	 * Gets the number of distinct terms.
+	 * </p>
+	 *
+	 * @return
+	 */
+	public final int size() {
+		return this.conceptIds.size();
+	}
+
+	/**
+	 * <p>
+	 * Index <i>term</i> as a term of concept <i>conceptId</i>.
+	 * </p>
+	 *
+	 * @param term
+	 * @param conceptId
+	 */
+	public final void add(String term, long conceptId) {
+		String key = normalize(term);
+		long[] ids = this.conceptIds.get(key);
+		if (ids == null) {
+			this.conceptIds.put(key, new long[]{conceptId});
+			return;
+		}
+		for (long id : ids) {
+			if (id == conceptId) {
+				return;
+			}
+		}
+		long[] temp = new long[ids.length + 1];
+		System.arraycopy(ids, 0, temp, 0, ids.length);
+		temp[ids.length] = conceptId;
+		this.conceptIds.put(key, temp);
+	}
+
+	/**
+	 * <p>
+	 * Return ids of all concepts with a description matching <i>term</i>,
+	 * ignoring case and surrounding white space. The array must not be
+	 * modified.
+	 * </p>
+	 *
+	 * @param term
+	 * @return Concept ids in the order they were indexed, empty if none.
+	 */
+	public final long[] find(String term) {
+		long[] ids = this.conceptIds.get(normalize(term));
+		return (ids == null) ? noConcepts : ids;
+	}
+
+	/**
+	 * <p>
+	 * Return id of the single concept with a description matching
+	 * <i>term</i>.
+	 * </p>
+	 *
+	 * @param term
+	 * @return
+	 * @throws RuntimeException
+	 *             No concept or more than one concept matches.
+	 */
+	public final long findSingle(String term) {
+		long[] ids = this.find(term);
+		if (ids.length == 0) {
+			throw new RuntimeException(String
+					.format("No concept found with term '%1$s'", term));
+		}
+		if (ids.length > 1) {
+			throw new RuntimeException(String.format(
+					"Multiple concepts found with term '%1$s'", term));
+		}
+		return ids[0];
+	}
+}